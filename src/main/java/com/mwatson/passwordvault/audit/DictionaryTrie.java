@@ -0,0 +1,153 @@
+package com.mwatson.passwordvault.audit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Word list packed into a trie of parallel arrays. The children of a node are stored next to
+ * each other sorted by character, so the whole dictionary is four arrays and finding every
+ * word starting at one position of a password is a walk with a binary search per character.
+ */
+final class DictionaryTrie {
+  private final char[] labels;
+  private final int[] firstChild;
+  private final int[] childEnd;
+  // Frequency rank of the word ending at a node, 1 is the most common, 0 for no word
+  private final int[] ranks;
+
+  private DictionaryTrie(char[] labels, int[] firstChild, int[] childEnd, int[] ranks) {
+    this.labels = labels;
+    this.firstChild = firstChild;
+    this.childEnd = childEnd;
+    this.ranks = ranks;
+  }
+
+  /**
+   * Reads a word list, one word per line, most common first. Blank lines and lines starting
+   * with # are skipped, a repeated word keeps its first rank.
+   *
+   * @param input UTF-8 word list, closed by this method
+   * @return trie over the lower cased words
+   * @throws IOException if the list can't be read
+   */
+  static DictionaryTrie load(InputStream input) throws IOException {
+    List<String> words = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && line.charAt(0) != '#') {
+          words.add(line.toLowerCase(Locale.ROOT));
+        }
+      }
+    }
+    return build(words);
+  }
+
+  /**
+   * Packs words, ranked by the order they first appear in, into a trie.
+   *
+   * @param words most common first
+   * @return packed trie
+   */
+  static DictionaryTrie build(List<String> words) {
+    BuildNode root = new BuildNode();
+    int count = 1;
+    int distinct = 0;
+    for (String word : words) {
+      BuildNode node = root;
+      for (char c : word.toCharArray()) {
+        BuildNode child = node.children.get(c);
+        if (child == null) {
+          child = new BuildNode();
+          node.children.put(c, child);
+          count++;
+        }
+        node = child;
+      }
+      if (node.rank == 0) {
+        node.rank = ++distinct;
+      }
+    }
+
+    // Breadth first, so each node's children get consecutive slots
+    char[] labels = new char[count];
+    int[] firstChild = new int[count];
+    int[] childEnd = new int[count];
+    int[] ranks = new int[count];
+    Deque<BuildNode> queue = new ArrayDeque<>();
+    queue.add(root);
+    int next = 1;
+    for (int slot = 0; slot < count; slot++) {
+      BuildNode node = queue.remove();
+      ranks[slot] = node.rank;
+      firstChild[slot] = next;
+      for (Map.Entry<Character, BuildNode> child : node.children.entrySet()) {
+        labels[next++] = child.getKey();
+        queue.add(child.getValue());
+      }
+      childEnd[slot] = next;
+    }
+    return new DictionaryTrie(labels, firstChild, childEnd, ranks);
+  }
+
+  /**
+   * Finds every word that starts at a position of the text.
+   *
+   * @param text lower cased text
+   * @param start position words must start at
+   * @param consumer told the end (exclusive) and rank of each word found, shortest first
+   */
+  void findWords(char[] text, int start, WordConsumer consumer) {
+    int node = 0;
+    for (int i = start; i < text.length; i++) {
+      node = child(node, text[i]);
+      if (node < 0) {
+        return;
+      }
+      if (ranks[node] != 0) {
+        consumer.accept(i + 1, ranks[node]);
+      }
+    }
+  }
+
+  private int child(int node, char c) {
+    int low = firstChild[node];
+    int high = childEnd[node] - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (labels[mid] < c) {
+        low = mid + 1;
+      } else if (labels[mid] > c) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Receives the words found by {@link #findWords(char[], int, WordConsumer)}.
+   */
+  @FunctionalInterface
+  interface WordConsumer {
+    void accept(int end, int rank);
+  }
+
+  private static final class BuildNode {
+    private final Map<Character, BuildNode> children = new TreeMap<>();
+    private int rank;
+  }
+}
@@ -0,0 +1,74 @@
+package com.mwatson.passwordvault.audit;
+
+import com.mwatson.passwordvault.model.PasswordEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Per entry cache of a value computed from the entry's password, valid until the password
+ * revision changes. Safe to fill from several threads at once. Passwords are read through
+ * {@link PasswordEntry#copyPassword()} and wiped once the value is computed, so an audit
+ * leaves sealed entries sealed and never takes the vault's write lock.
+ *
+ * @param <T> cached value
+ */
+final class PasswordCache<T> {
+  private final Map<PasswordEntry, Slot<T>> slots = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cached value, computing it again if the password was set since.
+   *
+   * @param entry to look up
+   * @param compute derives the value from the password, which may be null and is cleared
+   *     afterwards
+   * @return cached or new value
+   */
+  T get(PasswordEntry entry, Function<char[], T> compute) {
+    int revision = entry.getPasswordRevision();
+    Slot<T> slot = slots.get(entry);
+    if (slot != null && slot.revision == revision) {
+      return slot.value;
+    }
+    char[] password = entry.copyPassword();
+    T value;
+    try {
+      value = compute.apply(password);
+    } finally {
+      if (password != null) {
+        Arrays.fill(password, '\0');
+      }
+    }
+    slots.put(entry, new Slot<>(revision, value));
+    return value;
+  }
+
+  /**
+   * Forgets entries that have left the vault.
+   *
+   * @param entries still in the vault
+   */
+  void retainOnly(PasswordEntry[] entries) {
+    Set<PasswordEntry> present = Collections.newSetFromMap(new IdentityHashMap<>());
+    present.addAll(Arrays.asList(entries));
+    slots.keySet().retainAll(present);
+  }
+
+  int size() {
+    return slots.size();
+  }
+
+  private static final class Slot<T> {
+    private final int revision;
+    private final T value;
+
+    Slot(int revision, T value) {
+      this.revision = revision;
+      this.value = value;
+    }
+  }
+}
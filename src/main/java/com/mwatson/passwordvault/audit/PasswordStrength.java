@@ -0,0 +1,49 @@
+package com.mwatson.passwordvault.audit;
+
+/**
+ * Estimated strength of one password.
+ */
+public final class PasswordStrength {
+  /** Scores below this are reported as weak. */
+  public static final int GOOD_SCORE = 3;
+
+  private final int score;
+  private final double guessesLog10;
+
+  PasswordStrength(int score, double guessesLog10) {
+    this.score = score;
+    this.guessesLog10 = guessesLog10;
+  }
+
+  /**
+   * Score from 0 (guessed almost at once) to 4 (beyond a realistic offline attack).
+   *
+   * @return score
+   */
+  public int getScore() {
+    return score;
+  }
+
+  /**
+   * Base 10 log of the guesses an attacker trying likely passwords first would need.
+   *
+   * @return log10 of the estimated guesses
+   */
+  public double getGuessesLog10() {
+    return guessesLog10;
+  }
+
+  /**
+   * Whether the password should be changed.
+   *
+   * @return true below {@link #GOOD_SCORE}
+   */
+  public boolean isWeak() {
+    return score < GOOD_SCORE;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("score %d (10^%.1f guesses)", score, guessesLog10);
+  }
+}
@@ -0,0 +1,135 @@
+package com.mwatson.passwordvault.audit;
+
+import com.mwatson.passwordvault.crypto.EncryptionService.EncryptionException;
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Finds passwords used by more than one entry without comparing plaintexts.
+ *
+ * <p>Every password is hashed once with HMAC-SHA256 under a key derived from the vault key,
+ * and entries are grouped on the hash, so an audit is one O(n) pass that runs in parallel for
+ * large vaults. Hashes are cached per entry along with its password revision, so re-running
+ * the audit after a few edits only hashes the entries whose password changed.
+ */
+public class ReuseAuditor {
+  /** Label the audit key is derived under, changing it changes every hash. */
+  static final String KEY_PURPOSE = "password-vault reuse audit v1";
+  // Below this many entries hashing on one thread is quicker than splitting the work
+  static final int PARALLEL_THRESHOLD = 256;
+
+  private final ThreadLocal<Mac> macs;
+  private final PasswordCache<Fingerprint> cache = new PasswordCache<>();
+
+  /**
+   * Creates an auditor hashing under the given key.
+   *
+   * @param key HmacSHA256 key, normally from {@link #forVault(Vault)}
+   */
+  public ReuseAuditor(SecretKey key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key can't be null");
+    }
+    this.macs = ThreadLocal.withInitial(() -> newMac(key));
+  }
+
+  /**
+   * Creates an auditor keyed from a saved or loaded vault.
+   *
+   * @param vault to audit
+   * @return auditor for the vault
+   */
+  public static ReuseAuditor forVault(Vault vault) {
+    return new ReuseAuditor(vault.deriveKey(KEY_PURPOSE));
+  }
+
+  /**
+   * Groups the entries of a vault that share a password. Entries without a password are
+   * left out.
+   *
+   * @param vault to audit
+   * @return groups of two or more entries, each in vault order, ordered by their first entry
+   */
+  public List<List<PasswordEntry>> findReused(Vault vault) {
+    PasswordEntry[] entries = vault.snapshot().toArray(new PasswordEntry[0]);
+    cache.retainOnly(entries);
+
+    Fingerprint[] prints = new Fingerprint[entries.length];
+    IntStream indices = IntStream.range(0, entries.length);
+    if (entries.length >= PARALLEL_THRESHOLD) {
+      indices = indices.parallel();
+    }
+    indices.forEach(i -> prints[i] = cache.get(entries[i], this::fingerprint));
+
+    Map<Fingerprint, List<PasswordEntry>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < entries.length; i++) {
+      if (prints[i] != null) {
+        groups.computeIfAbsent(prints[i], print -> new ArrayList<>()).add(entries[i]);
+      }
+    }
+    List<List<PasswordEntry>> reused = new ArrayList<>();
+    for (List<PasswordEntry> group : groups.values()) {
+      if (group.size() > 1) {
+        reused.add(group);
+      }
+    }
+    return reused;
+  }
+
+  /**
+   * Keyed hash of a password, null for a missing or empty one.
+   */
+  private Fingerprint fingerprint(char[] password) {
+    if (password == null || password.length == 0) {
+      return null;
+    }
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+    Mac mac = macs.get();
+    mac.update(bytes);
+    Arrays.fill(bytes.array(), (byte) 0);
+    return new Fingerprint(mac.doFinal());
+  }
+
+  private static Mac newMac(SecretKey key) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new EncryptionException("Failed to create audit MAC", e);
+    }
+  }
+
+  /**
+   * Keyed hash of one password, equal for equal passwords.
+   */
+  private static final class Fingerprint {
+    private final byte[] digest;
+
+    Fingerprint(byte[] digest) {
+      this.digest = digest;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Fingerprint && Arrays.equals(digest, ((Fingerprint) other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(digest);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.mwatson.passwordvault.audit;
+
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Scores the password of every entry in a vault and reports the weak ones.
+ *
+ * <p>Estimating is the expensive part, so large vaults are scored in parallel on the common
+ * ForkJoin pool and each score is cached with the entry's password revision. Re-running the
+ * audit after a few edits only scores the passwords that were set since.
+ */
+public class StrengthAuditor {
+  // Below this many entries scoring on one thread is quicker than splitting the work
+  static final int PARALLEL_THRESHOLD = 32;
+
+  private final StrengthEstimator estimator;
+  private final PasswordCache<PasswordStrength> cache = new PasswordCache<>();
+
+  /**
+   * Creates an auditor using the bundled dictionary.
+   */
+  public StrengthAuditor() {
+    this(StrengthEstimator.getDefault());
+  }
+
+  /**
+   * Creates an auditor using the given estimator.
+   *
+   * @param estimator to score passwords with
+   */
+  public StrengthAuditor(StrengthEstimator estimator) {
+    if (estimator == null) {
+      throw new IllegalArgumentException("Estimator can't be null");
+    }
+    this.estimator = estimator;
+  }
+
+  /**
+   * Strength of one entry's password, cached until the password is set again.
+   *
+   * @param entry to score
+   * @return estimated strength
+   */
+  public PasswordStrength getStrength(PasswordEntry entry) {
+    return cache.get(entry, estimator::estimate);
+  }
+
+  /**
+   * Scores every entry of a vault.
+   *
+   * @param vault to audit
+   * @return strength per entry, in vault order
+   */
+  public Map<PasswordEntry, PasswordStrength> audit(Vault vault) {
+    PasswordEntry[] entries = vault.snapshot().toArray(new PasswordEntry[0]);
+    cache.retainOnly(entries);
+    PasswordStrength[] strengths = new PasswordStrength[entries.length];
+    IntStream indices = IntStream.range(0, entries.length);
+    if (entries.length >= PARALLEL_THRESHOLD) {
+      indices = indices.parallel();
+    }
+    indices.forEach(i -> strengths[i] = getStrength(entries[i]));
+
+    Map<PasswordEntry, PasswordStrength> report = new LinkedHashMap<>();
+    for (int i = 0; i < entries.length; i++) {
+      report.put(entries[i], strengths[i]);
+    }
+    return report;
+  }
+
+  /**
+   * Entries whose password should be changed.
+   *
+   * @param vault to audit
+   * @return weak entries, weakest first
+   */
+  public List<PasswordEntry> findWeak(Vault vault) {
+    Map<PasswordEntry, PasswordStrength> report = audit(vault);
+    List<PasswordEntry> weak = new ArrayList<>();
+    for (Map.Entry<PasswordEntry, PasswordStrength> scored : report.entrySet()) {
+      if (scored.getValue().isWeak()) {
+        weak.add(scored.getKey());
+      }
+    }
+    weak.sort(Comparator.comparingDouble(entry -> report.get(entry).getGuessesLog10()));
+    return weak;
+  }
+}
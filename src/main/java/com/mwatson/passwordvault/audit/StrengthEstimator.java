@@ -0,0 +1,306 @@
+package com.mwatson.passwordvault.audit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Estimates how many guesses a password would take, in the style of zxcvbn.
+ *
+ * <p>The password is split into the cheapest sequence of pieces an attacker would try:
+ * dictionary words (also with common l33t substitutions), runs like "abcd" or "4321",
+ * repeated characters or blocks, keyboard rows, recent years, and otherwise single
+ * characters guessed by brute force. Guesses for each piece multiply, so the estimate is
+ * the smallest sum of their logs, found with a dynamic programme over the positions.
+ * Immutable, so one estimator can score passwords on several threads.
+ */
+public final class StrengthEstimator {
+  private static final String DICTIONARY = "common-passwords.txt";
+  private static final String[] KEYBOARD_ROWS = {
+      "1234567890", "qwertyuiop", "asdfghjkl", "zxcvbnm", "qwertzuiop", "azertyuiop"};
+  private static final int MIN_RUN = 3;
+  private static final int MIN_KEYBOARD_RUN = 4;
+  // Choosing to try a pattern at all doubles its guesses
+  private static final double PIECE_LOG10 = Math.log10(2);
+  private static final int FIRST_YEAR = 1900;
+  private static final int LAST_YEAR = 2039;
+  // Score thresholds on log10 guesses, from zxcvbn
+  private static final double[] SCORE_LOG10 = {3, 6, 8, 10};
+
+  private final DictionaryTrie dictionary;
+
+  StrengthEstimator(DictionaryTrie dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Estimator using the bundled list of common passwords and words, loaded once.
+   *
+   * @return shared estimator
+   */
+  public static StrengthEstimator getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  /**
+   * Estimates the strength of a password, the array isn't modified or kept.
+   *
+   * @param password to score, may be null
+   * @return estimate, score 0 for a missing or empty password
+   */
+  public PasswordStrength estimate(char[] password) {
+    if (password == null || password.length == 0) {
+      return new PasswordStrength(0, 0);
+    }
+    double log10 = guessesLog10(password);
+    int score = 0;
+    while (score < SCORE_LOG10.length && log10 >= SCORE_LOG10[score]) {
+      score++;
+    }
+    return new PasswordStrength(score, log10);
+  }
+
+  private double guessesLog10(char[] password) {
+    int length = password.length;
+    char[] lower = new char[length];
+    char[] unleet = new char[length];
+    boolean leet = false;
+    for (int i = 0; i < length; i++) {
+      lower[i] = Character.toLowerCase(password[i]);
+      unleet[i] = unleet(lower[i]);
+      leet |= unleet[i] != lower[i];
+    }
+    double bruteforce = Math.log10(cardinality(password));
+    double[] best = new double[length + 1];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    best[0] = 0;
+
+    for (int i = 0; i < length; i++) {
+      final int start = i;
+      final double before = best[i];
+      relax(best, i + 1, before + bruteforce);
+      dictionary.findWords(lower, i, (end, rank) -> relax(best, end,
+          before + piece(rank * upperVariations(password, start, end))));
+      if (leet) {
+        dictionary.findWords(unleet, i, (end, rank) -> relax(best, end, before
+            + piece(2.0 * rank * upperVariations(password, start, end))));
+      }
+      matchRuns(lower, i, best);
+      matchRepeatedBlocks(password, i, best);
+      matchKeyboard(lower, i, best);
+      matchYear(password, i, best);
+    }
+    Arrays.fill(lower, '\0');
+    Arrays.fill(unleet, '\0');
+    return best[length];
+  }
+
+  /**
+   * Sequences such as "abcd" or "9876", and repeats of one character such as "aaaa".
+   */
+  private static void matchRuns(char[] lower, int start, double[] best) {
+    if (start + MIN_RUN > lower.length) {
+      return;
+    }
+    int delta = lower[start + 1] - lower[start];
+    if (delta < -1 || delta > 1) {
+      return;
+    }
+    int end = start + 2;
+    while (end < lower.length && lower[end] - lower[end - 1] == delta) {
+      end++;
+    }
+    for (int stop = start + MIN_RUN; stop <= end; stop++) {
+      int runLength = stop - start;
+      double guesses;
+      if (delta == 0) {
+        guesses = cardinality(lower, start, start + 1) * runLength;
+      } else {
+        char first = lower[start];
+        // Runs from an obvious starting point are tried first
+        int base = first == 'a' || first == 'z' || first == '0' || first == '1' || first == '9'
+            ? 4 : Character.isDigit(first) ? 10 : 26;
+        guesses = base * runLength * (delta < 0 ? 2 : 1);
+      }
+      relax(best, stop, best[start] + piece(guesses));
+    }
+  }
+
+  /**
+   * A block repeated back to back such as "abcabc", costing the block's own guesses times
+   * the repeat count.
+   */
+  private void matchRepeatedBlocks(char[] password, int start, double[] best) {
+    for (int block = 2; start + 2 * block <= password.length; block++) {
+      int end = start + block;
+      while (end + block <= password.length
+          && Arrays.equals(password, start, start + block, password, end, end + block)) {
+        end += block;
+      }
+      int repeats = (end - start) / block;
+      if (repeats > 1) {
+        char[] copy = Arrays.copyOfRange(password, start, start + block);
+        double blockLog10 = guessesLog10(copy) + Math.log10(repeats);
+        Arrays.fill(copy, '\0');
+        relax(best, end, best[start] + blockLog10 + PIECE_LOG10);
+      }
+    }
+  }
+
+  /**
+   * Adjacent keys along one keyboard row, forwards or backwards.
+   */
+  private static void matchKeyboard(char[] lower, int start, double[] best) {
+    for (String row : KEYBOARD_ROWS) {
+      for (int direction = -1; direction <= 1; direction += 2) {
+        int position = row.indexOf(lower[start]);
+        if (position < 0) {
+          break;
+        }
+        int end = start + 1;
+        while (end < lower.length) {
+          position += direction;
+          if (position < 0 || position >= row.length() || row.charAt(position) != lower[end]) {
+            break;
+          }
+          end++;
+        }
+        for (int stop = start + MIN_KEYBOARD_RUN; stop <= end; stop++) {
+          relax(best, stop, best[start] + piece(KEYBOARD_ROWS.length * 2.0 * (stop - start)));
+        }
+      }
+    }
+  }
+
+  private static void matchYear(char[] password, int start, double[] best) {
+    if (start + 4 > password.length) {
+      return;
+    }
+    int year = 0;
+    for (int i = start; i < start + 4; i++) {
+      if (!Character.isDigit(password[i])) {
+        return;
+      }
+      year = year * 10 + Character.digit(password[i], 10);
+    }
+    if (year >= FIRST_YEAR && year <= LAST_YEAR) {
+      relax(best, start + 4, best[start] + piece(LAST_YEAR - FIRST_YEAR + 1));
+    }
+  }
+
+  private static void relax(double[] best, int end, double log10) {
+    if (log10 < best[end]) {
+      best[end] = log10;
+    }
+  }
+
+  private static double piece(double guesses) {
+    return Math.log10(guesses) + PIECE_LOG10;
+  }
+
+  /**
+   * Ways to capitalise a word with as many upper case letters as this one has, 1 if all
+   * lower case, 2 for the common first or last letter or all caps patterns.
+   */
+  static double upperVariations(char[] password, int start, int end) {
+    int upper = 0;
+    int lowerCount = 0;
+    for (int i = start; i < end; i++) {
+      if (Character.isUpperCase(password[i])) {
+        upper++;
+      } else if (Character.isLowerCase(password[i])) {
+        lowerCount++;
+      }
+    }
+    if (upper == 0) {
+      return 1;
+    }
+    boolean firstOnly = upper == 1 && Character.isUpperCase(password[start]);
+    boolean lastOnly = upper == 1 && Character.isUpperCase(password[end - 1]);
+    if (lowerCount == 0 || firstOnly || lastOnly) {
+      return 2;
+    }
+    double variations = 0;
+    for (int i = 1; i <= Math.min(upper, lowerCount); i++) {
+      variations += binomial(upper + lowerCount, i);
+    }
+    return variations;
+  }
+
+  private static double binomial(int n, int k) {
+    double result = 1;
+    for (int i = 1; i <= k; i++) {
+      result = result * (n - k + i) / i;
+    }
+    return result;
+  }
+
+  private static int cardinality(char[] password) {
+    return cardinality(password, 0, password.length);
+  }
+
+  /**
+   * Size of the smallest alphabet of common character classes covering the text.
+   */
+  private static int cardinality(char[] text, int start, int end) {
+    boolean lowerCase = false;
+    boolean upperCase = false;
+    boolean digits = false;
+    boolean symbols = false;
+    for (int i = start; i < end; i++) {
+      char c = text[i];
+      if (c >= 'a' && c <= 'z') {
+        lowerCase = true;
+      } else if (c >= 'A' && c <= 'Z') {
+        upperCase = true;
+      } else if (c >= '0' && c <= '9') {
+        digits = true;
+      } else {
+        symbols = true;
+      }
+    }
+    return (lowerCase ? 26 : 0) + (upperCase ? 26 : 0) + (digits ? 10 : 0) + (symbols ? 33 : 0);
+  }
+
+  private static char unleet(char c) {
+    switch (c) {
+      case '4':
+      case '@':
+        return 'a';
+      case '3':
+        return 'e';
+      case '1':
+      case '!':
+        return 'i';
+      case '0':
+        return 'o';
+      case '5':
+      case '$':
+        return 's';
+      case '7':
+        return 't';
+      default:
+        return c;
+    }
+  }
+
+  /**
+   * Loads the bundled dictionary the first time the default estimator is asked for.
+   */
+  private static final class DefaultHolder {
+    private static final StrengthEstimator INSTANCE = load();
+
+    private static StrengthEstimator load() {
+      InputStream input = StrengthEstimator.class.getResourceAsStream(DICTIONARY);
+      if (input == null) {
+        throw new IllegalStateException("Missing dictionary resource " + DICTIONARY);
+      }
+      try {
+        return new StrengthEstimator(DictionaryTrie.load(input));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to load dictionary", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.mwatson.passwordvault.breach;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bloom filter over SHA-1 hashes. The hashes are already uniformly random, so the bit
+ * positions come straight from their first 16 bytes by double hashing instead of hashing
+ * again. A miss means the hash is definitely absent, a hit has to be confirmed.
+ */
+final class BloomFilter {
+  private static final int MAGIC = 0x50564246; // "PVBF"
+
+  private final long[] words;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * Creates an empty filter.
+   *
+   * @param bitCount number of bits, rounded up to a multiple of 64
+   * @param hashCount bits set per hash
+   */
+  BloomFilter(long bitCount, int hashCount) {
+    if (bitCount <= 0 || hashCount <= 0) {
+      throw new IllegalArgumentException("Bit and hash counts must be positive");
+    }
+    long wordCount = (bitCount - 1) / Long.SIZE + 1;
+    if (wordCount > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Bloom filter too large: " + bitCount + " bits");
+    }
+    this.words = new long[(int) wordCount];
+    this.bitCount = wordCount * Long.SIZE;
+    this.hashCount = hashCount;
+  }
+
+  /**
+   * Sizes a filter for a number of hashes.
+   *
+   * @param expected hashes that will be added
+   * @param bitsPerHash bits to spend per hash, 10 gives about 1% false positives
+   * @return empty filter
+   */
+  static BloomFilter forCount(long expected, int bitsPerHash) {
+    // k = ln 2 * bits per entry is optimal
+    int hashes = Math.max(1, (int) Math.round(bitsPerHash * Math.log(2)));
+    return new BloomFilter(Math.max(Long.SIZE, expected * bitsPerHash), hashes);
+  }
+
+  /**
+   * Adds a hash.
+   *
+   * @param hash SHA-1 of at least 16 bytes
+   */
+  void add(byte[] hash) {
+    long first = ByteBuffer.wrap(hash, 0, 8).getLong();
+    long step = ByteBuffer.wrap(hash, 8, 8).getLong() | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Long.remainderUnsigned(first + i * step, bitCount);
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Checks a hash, false is certain, true may be a false positive.
+   *
+   * @param hash SHA-1 of at least 16 bytes
+   * @return whether the hash may have been added
+   */
+  boolean mightContain(byte[] hash) {
+    long first = ByteBuffer.wrap(hash, 0, 8).getLong();
+    long step = ByteBuffer.wrap(hash, 8, 8).getLong() | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Long.remainderUnsigned(first + i * step, bitCount);
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the filter to a file.
+   *
+   * @param file to write, replaced if it exists
+   * @throws IOException if the file can't be written
+   */
+  void writeTo(Path file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(hashCount);
+      out.writeInt(words.length);
+      for (long word : words) {
+        out.writeLong(word);
+      }
+    }
+  }
+
+  /**
+   * Reads a filter written by {@link #writeTo(Path)}.
+   *
+   * @param file to read
+   * @return the filter
+   * @throws IOException if the file can't be read or isn't a filter
+   */
+  static BloomFilter readFrom(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a bloom filter: " + file);
+      }
+      int hashes = in.readInt();
+      int wordCount = in.readInt();
+      if (hashes <= 0 || wordCount <= 0) {
+        throw new IOException("Corrupt bloom filter: " + file);
+      }
+      BloomFilter filter = new BloomFilter((long) wordCount * Long.SIZE, hashes);
+      for (int i = 0; i < wordCount; i++) {
+        filter.words[i] = in.readLong();
+      }
+      return filter;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.mwatson.passwordvault.breach;
+
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks passwords against a local copy of a breached password list, without any network
+ * access and without reading the whole list.
+ *
+ * <p>The list is the binary file written by {@link BreachListConverter}: a 20 byte header
+ * and then the SHA-1 of every breached password, sorted. The file is memory mapped, so the
+ * operating system only pages in the few records a lookup touches. A lookup first asks the
+ * Bloom filter sidecar, which rules out almost every unbreached password from memory, then
+ * confirms a hit with an interpolation search. SHA-1 hashes are uniform, so that search
+ * lands within a record or two of the target in a few probes rather than log2(n).
+ */
+public final class BreachChecker implements Closeable {
+  static final byte[] MAGIC = "PVBREACH".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final int HEADER_LENGTH = 20;
+  static final int HASH_LENGTH = 20;
+  static final String BLOOM_SUFFIX = ".bloom";
+  // A MappedByteBuffer is limited to 2 GB, so large lists are mapped in chunks
+  static final int RECORDS_PER_CHUNK = 1 << 26;
+  // Probes before interpolation gives way to bisection, guarding against skewed files
+  private static final int INTERPOLATION_PROBES = 16;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] chunks;
+  private final int recordsPerChunk;
+  private final long count;
+  private final BloomFilter bloom;
+  private final ThreadLocal<MessageDigest> sha1 =
+      ThreadLocal.withInitial(BreachChecker::newDigest);
+
+  private BreachChecker(FileChannel channel, MappedByteBuffer[] chunks, int recordsPerChunk,
+      long count, BloomFilter bloom) {
+    this.channel = channel;
+    this.chunks = chunks;
+    this.recordsPerChunk = recordsPerChunk;
+    this.count = count;
+    this.bloom = bloom;
+  }
+
+  /**
+   * Opens a converted list, with its Bloom filter if the sidecar file exists.
+   *
+   * @param file binary list written by {@link BreachListConverter}
+   * @return checker, close it to release the file
+   * @throws IOException if the file can't be read or isn't a converted list
+   */
+  public static BreachChecker open(Path file) throws IOException {
+    return open(file, RECORDS_PER_CHUNK);
+  }
+
+  static BreachChecker open(Path file, int recordsPerChunk) throws IOException {
+    Path bloomFile = bloomFileFor(file);
+    BloomFilter bloom = Files.exists(bloomFile) ? BloomFilter.readFrom(bloomFile) : null;
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          throw new IOException("Not a converted breach list: " + file);
+        }
+      }
+      header.flip();
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if (!Arrays.equals(MAGIC, magic) || header.getInt() != VERSION) {
+        throw new IOException("Not a converted breach list: " + file);
+      }
+      long count = header.getLong();
+      if (count < 0 || channel.size() != HEADER_LENGTH + count * HASH_LENGTH) {
+        throw new IOException("Truncated breach list: " + file);
+      }
+      int chunkCount = (int) ((count + recordsPerChunk - 1) / recordsPerChunk);
+      MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long first = (long) i * recordsPerChunk;
+        long records = Math.min(recordsPerChunk, count - first);
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+            HEADER_LENGTH + first * HASH_LENGTH, records * HASH_LENGTH);
+      }
+      return new BreachChecker(channel, chunks, recordsPerChunk, count, bloom);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  static Path bloomFileFor(Path file) {
+    return file.resolveSibling(file.getFileName() + BLOOM_SUFFIX);
+  }
+
+  /**
+   * Number of breached password hashes in the list.
+   *
+   * @return hash count
+   */
+  public long size() {
+    return count;
+  }
+
+  /**
+   * Checks whether a password appears in the list.
+   *
+   * @param password to check, not modified
+   * @return true if the password has been seen in a breach
+   */
+  public boolean isBreached(char[] password) {
+    if (password == null) {
+      return false;
+    }
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+    MessageDigest digest = sha1.get();
+    digest.update(bytes);
+    Arrays.fill(bytes.array(), (byte) 0);
+    return contains(digest.digest());
+  }
+
+  /**
+   * Entries of a vault whose password appears in the list. Each password is read into a
+   * copy that is wiped after the lookup, so sealed entries stay sealed.
+   *
+   * @param vault to check
+   * @return breached entries in vault order
+   */
+  public List<PasswordEntry> findBreached(Vault vault) {
+    List<PasswordEntry> breached = new ArrayList<>();
+    for (PasswordEntry entry : vault.snapshot()) {
+      char[] password = entry.copyPassword();
+      if (password == null) {
+        continue;
+      }
+      try {
+        if (password.length > 0 && isBreached(password)) {
+          breached.add(entry);
+        }
+      } finally {
+        Arrays.fill(password, '\0');
+      }
+    }
+    return breached;
+  }
+
+  /**
+   * Looks up a SHA-1 hash.
+   *
+   * @param hash 20 byte SHA-1
+   * @return true if the hash is in the list
+   */
+  boolean contains(byte[] hash) {
+    if (count == 0 || bloom != null && !bloom.mightContain(hash)) {
+      return false;
+    }
+    long key = ByteBuffer.wrap(hash).getLong();
+    long low = 0;
+    long high = count - 1;
+    int probes = 0;
+    while (low <= high) {
+      long lowKey = prefixAt(low);
+      long highKey = prefixAt(high);
+      if (Long.compareUnsigned(key, lowKey) < 0 || Long.compareUnsigned(key, highKey) > 0) {
+        return false;
+      }
+      long mid;
+      if (probes++ < INTERPOLATION_PROBES && lowKey != highKey) {
+        // Where the key would sit if the hashes between low and high were evenly spread
+        double fraction = (unsigned(key) - unsigned(lowKey)) / (unsigned(highKey)
+            - unsigned(lowKey));
+        mid = low + (long) (fraction * (high - low));
+        mid = Math.max(low, Math.min(high, mid));
+      } else {
+        mid = (low + high) >>> 1;
+      }
+      int order = compareAt(mid, hash);
+      if (order == 0) {
+        return true;
+      } else if (order < 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return false;
+  }
+
+  private long prefixAt(long record) {
+    return chunks[(int) (record / recordsPerChunk)]
+        .getLong((int) (record % recordsPerChunk) * HASH_LENGTH);
+  }
+
+  /**
+   * Compares the hash stored at a record with the one looked up, unsigned byte by byte.
+   */
+  private int compareAt(long record, byte[] hash) {
+    MappedByteBuffer chunk = chunks[(int) (record / recordsPerChunk)];
+    int offset = (int) (record % recordsPerChunk) * HASH_LENGTH;
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int order = Integer.compare(chunk.get(offset + i) & 0xff, hash[i] & 0xff);
+      if (order != 0) {
+        return order;
+      }
+    }
+    return 0;
+  }
+
+  private static double unsigned(long value) {
+    return (value >>> 1) * 2.0 + (value & 1);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 unavailable", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
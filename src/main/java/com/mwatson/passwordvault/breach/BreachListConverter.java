@@ -0,0 +1,123 @@
+package com.mwatson.passwordvault.breach;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Converts the text form of the Pwned Passwords SHA-1 list, {@code HASH:COUNT} per line,
+ * into the binary file read by {@link BreachChecker}, plus its Bloom filter sidecar.
+ *
+ * <p>The input must be the list ordered by hash, as the official downloader produces it,
+ * so conversion is one streaming pass with no sort. Counts are dropped and each hash is
+ * stored as its 20 raw bytes, less than half the size of the text.
+ *
+ * <p>Run as {@code java -cp password-vault.jar
+ * com.mwatson.passwordvault.breach.BreachListConverter <input.txt> <output.bin>}.
+ */
+public final class BreachListConverter {
+  // Bloom filter bits per hash, about 1% false positives
+  static final int BLOOM_BITS_PER_HASH = 10;
+  // Shortest possible line, 40 hex digits and a line break, for sizing the filter up front
+  private static final int MIN_LINE_LENGTH = 41;
+  private static final int HEX_LENGTH = BreachChecker.HASH_LENGTH * 2;
+
+  private BreachListConverter() {
+  }
+
+  /**
+   * Converts a text list to a binary list and writes the Bloom filter next to it.
+   *
+   * @param textFile hash ordered list, one {@code HASH} or {@code HASH:COUNT} per line
+   * @param binaryFile to write, replaced if it exists
+   * @return number of distinct hashes written
+   * @throws IOException if a file can't be read or written, or the input is malformed or
+   *     not ordered by hash
+   */
+  public static long convert(Path textFile, Path binaryFile) throws IOException {
+    BloomFilter bloom = BloomFilter.forCount(
+        Math.max(1, Files.size(textFile) / MIN_LINE_LENGTH), BLOOM_BITS_PER_HASH);
+    long count = 0;
+    try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.US_ASCII);
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(binaryFile), 1 << 16))) {
+      out.write(BreachChecker.MAGIC);
+      out.writeInt(BreachChecker.VERSION);
+      out.writeLong(0); // Count, filled in once known
+      byte[] previous = null;
+      String line;
+      long lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        byte[] hash = parseHash(line.trim(), lineNumber);
+        if (previous != null) {
+          int order = Arrays.compareUnsigned(previous, hash);
+          if (order == 0) {
+            continue;
+          }
+          if (order > 0) {
+            throw new IOException("Input isn't ordered by hash at line " + lineNumber);
+          }
+        }
+        out.write(hash);
+        bloom.add(hash);
+        previous = hash;
+        count++;
+      }
+    }
+    try (FileChannel channel = FileChannel.open(binaryFile, StandardOpenOption.WRITE)) {
+      ByteBuffer countBytes = ByteBuffer.allocate(Long.BYTES).putLong(count);
+      countBytes.flip();
+      channel.write(countBytes, BreachChecker.MAGIC.length + Integer.BYTES);
+    }
+    bloom.writeTo(BreachChecker.bloomFileFor(binaryFile));
+    return count;
+  }
+
+  private static byte[] parseHash(String line, long lineNumber) throws IOException {
+    int end = line.indexOf(':');
+    if (end < 0) {
+      end = line.length();
+    }
+    if (end != HEX_LENGTH) {
+      throw new IOException("Expected a SHA-1 hash at line " + lineNumber);
+    }
+    byte[] hash = new byte[BreachChecker.HASH_LENGTH];
+    for (int i = 0; i < hash.length; i++) {
+      int high = Character.digit(line.charAt(2 * i), 16);
+      int low = Character.digit(line.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IOException("Invalid hex at line " + lineNumber);
+      }
+      hash[i] = (byte) (high << 4 | low);
+    }
+    return hash;
+  }
+
+  /**
+   * Command line entry point.
+   *
+   * @param args input text file and output binary file
+   * @throws IOException if conversion fails
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: BreachListConverter <pwned-passwords.txt> <output.bin>");
+      return;
+    }
+    long count = convert(Paths.get(args[0]), Paths.get(args[1]));
+    System.out.println("Wrote " + count + " hashes to " + args[1]);
+  }
+}
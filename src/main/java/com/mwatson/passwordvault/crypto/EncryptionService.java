@@ -1,6 +1,8 @@
 package com.mwatson.passwordvault.crypto;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
@@ -8,6 +10,7 @@ import java.security.spec.KeySpec;
 import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
@@ -28,6 +31,7 @@ public class EncryptionService {
   private static final int GCM_TAG_LENGTH = 128; // bits
   private static final int GCM_IV_LENGTH = 12; // bytes
   private static final int ITERATION_COUNT = 100_000; // PBKDF2 iterations
+  private static final String SUBKEY_ALGORITHM = "HmacSHA256";
 
   private final SecureRandom secureRandom;
 
@@ -74,6 +78,34 @@ public class EncryptionService {
 
   }
 
+  /**
+   * Encrypts raw bytes with an already derived key, so callers sealing many small values
+   * only pay for PBKDF2 once.
+   *
+   * @param data the plaintext bytes to encrypt
+   * @param secretKey key from {@link #deriveKey(char[], byte[])}
+   * @return encrypted data concatenated with IV: IV + encrypted data
+   */
+  public byte[] encrypt(byte[] data, SecretKey secretKey) {
+    if (data == null || secretKey == null) {
+      throw new IllegalArgumentException("Data and key can't be null");
+    }
+
+    try {
+      byte[] iv = new byte[GCM_IV_LENGTH];
+      secureRandom.nextBytes(iv);
+
+      Cipher cipher = Cipher.getInstance(ALGORITHM);
+      cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+
+      byte[] encryptedData = cipher.doFinal(data);
+      return ByteBuffer.allocate(iv.length + encryptedData.length).put(iv).put(encryptedData)
+          .array();
+    } catch (Exception e) {
+      throw new EncryptionException("Failed to encrypt data", e);
+    }
+  }
+
   /**
    * Decrypts AES-GCM encrypted data.
    *
@@ -116,6 +148,35 @@ public class EncryptionService {
     }
   }
 
+  /**
+   * Decrypts AES-GCM encrypted data with an already derived key.
+   *
+   * @param encryptedDataWithIv encrypted data with IV added
+   * @param secretKey key from {@link #deriveKey(char[], byte[])}
+   * @return decrypted plaintext bytes, caller should clear them after use
+   */
+  public byte[] decrypt(byte[] encryptedDataWithIv, SecretKey secretKey) {
+    if (encryptedDataWithIv == null || secretKey == null) {
+      throw new IllegalArgumentException("Encrypted Data and key can't be null");
+    }
+
+    if (encryptedDataWithIv.length < GCM_IV_LENGTH) {
+      throw new IllegalArgumentException("Encrypted data is too short to contain IV");
+    }
+
+    try {
+      Cipher cipher = Cipher.getInstance(ALGORITHM);
+      GCMParameterSpec gcmParameterSpec =
+          new GCMParameterSpec(GCM_TAG_LENGTH, encryptedDataWithIv, 0, GCM_IV_LENGTH);
+      cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
+
+      return cipher.doFinal(encryptedDataWithIv, GCM_IV_LENGTH,
+          encryptedDataWithIv.length - GCM_IV_LENGTH);
+    } catch (Exception e) {
+      throw new EncryptionException("Failed to decrypt data", e);
+    }
+  }
+
   /**
    * Derives an AES key from a password and salt using PBKDF2.
    *
@@ -123,7 +184,11 @@ public class EncryptionService {
    * @param salt the salt
    * @return derived AES key
    */
-  private SecretKey deriveKey(char[] password, byte[] salt) {
+  public SecretKey deriveKey(char[] password, byte[] salt) {
+    if (password == null || salt == null) {
+      throw new IllegalArgumentException("Password and salt can't be null");
+    }
+
     try {
       SecretKeyFactory factory = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM);
 
@@ -135,6 +200,34 @@ public class EncryptionService {
     }
   }
 
+  /**
+   * Derives a separate HMAC-SHA256 key for one purpose from a vault key, so keyed hashes
+   * never use the encryption key itself.
+   *
+   * @param key the vault key
+   * @param purpose label naming what the subkey is for
+   * @return HmacSHA256 key
+   */
+  public SecretKey deriveSubkey(SecretKey key, String purpose) {
+    if (key == null || purpose == null) {
+      throw new IllegalArgumentException("Key and purpose can't be null");
+    }
+
+    byte[] material = key.getEncoded();
+    try {
+      Mac mac = Mac.getInstance(SUBKEY_ALGORITHM);
+      mac.init(new SecretKeySpec(material, SUBKEY_ALGORITHM));
+      byte[] subkey = mac.doFinal(purpose.getBytes(StandardCharsets.UTF_8));
+      SecretKey result = new SecretKeySpec(subkey, SUBKEY_ALGORITHM);
+      Arrays.fill(subkey, (byte) 0);
+      return result;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new EncryptionException("Failed to derive subkey", e);
+    } finally {
+      Arrays.fill(material, (byte) 0);
+    }
+  }
+
   /**
    * Generates a random salt for key derivation.
    *
@@ -0,0 +1,372 @@
+package com.mwatson.passwordvault.crypto;
+
+import com.mwatson.passwordvault.crypto.PasswordPolicy.CharClass;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Generates passwords and passphrases to a {@link PasswordPolicy}.
+ *
+ * <p>Every thread draws from its own SecureRandom through a byte buffer, so generating many
+ * passwords neither contends on one generator nor pays a provider call per character. Each
+ * choice is made by rejection sampling, keeping every character equally likely, and passwords
+ * are written straight into char arrays without passing through a String.
+ */
+public final class PasswordGenerator {
+  /** Batches at least this large are generated in parallel. */
+  static final int PARALLEL_THRESHOLD = 1024;
+  private static final String WORD_LIST = "diceware-words.txt";
+  private static final int BUFFER_SIZE = 4096;
+  private static final ThreadLocal<RandomBytes> RANDOM = ThreadLocal.withInitial(RandomBytes::new);
+
+  private final char[][] words;
+  private final int longestWord;
+
+  /**
+   * Creates a generator using the bundled diceware word list.
+   */
+  public PasswordGenerator() {
+    this(null);
+  }
+
+  /**
+   * Creates a generator with its own diceware words.
+   *
+   * @param words lower case words, null to load the bundled list when first needed
+   */
+  PasswordGenerator(char[][] words) {
+    this.words = words;
+    int longest = 0;
+    if (words != null) {
+      for (char[] word : words) {
+        longest = Math.max(longest, word.length);
+      }
+    }
+    this.longestWord = longest;
+  }
+
+  /**
+   * Generates one password.
+   *
+   * @param policy what to generate
+   * @return new password, caller should clear it after use
+   */
+  public char[] generate(PasswordPolicy policy) {
+    char[] buffer = new char[maxLength(policy)];
+    int length = generate(policy, buffer);
+    if (length == buffer.length) {
+      return buffer;
+    }
+    char[] password = Arrays.copyOf(buffer, length);
+    Arrays.fill(buffer, '\0');
+    return password;
+  }
+
+  /**
+   * Generates one password into a buffer the caller reuses.
+   *
+   * @param policy what to generate
+   * @param into buffer at least {@link #maxLength(PasswordPolicy)} long
+   * @return number of characters written from the start of the buffer
+   */
+  public int generate(PasswordPolicy policy, char[] into) {
+    if (policy == null || into == null) {
+      throw new IllegalArgumentException("Policy and buffer can't be null");
+    }
+    if (into.length < maxLength(policy)) {
+      throw new IllegalArgumentException("Buffer is shorter than " + maxLength(policy));
+    }
+    RandomBytes random = RANDOM.get();
+    switch (policy.getMode()) {
+      case PRONOUNCEABLE:
+        return pronounceable(policy, into, random);
+      case DICEWARE:
+        return diceware(policy, into, random);
+      default:
+        return random(policy, into, random);
+    }
+  }
+
+  /**
+   * Generates many passwords, in parallel for large batches.
+   *
+   * @param policy what to generate
+   * @param count number of passwords
+   * @return new passwords, caller should clear them after use
+   */
+  public char[][] generateBatch(PasswordPolicy policy, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count can't be negative");
+    }
+    char[][] passwords = new char[count][];
+    IntStream indexes = IntStream.range(0, count);
+    if (count >= PARALLEL_THRESHOLD) {
+      indexes = indexes.parallel();
+    }
+    indexes.forEach(i -> passwords[i] = generate(policy));
+    return passwords;
+  }
+
+  /**
+   * Longest password a policy can produce, the buffer size {@link #generate(PasswordPolicy,
+   * char[])} needs.
+   *
+   * @param policy what to generate
+   * @return characters
+   */
+  public int maxLength(PasswordPolicy policy) {
+    if (policy.getMode() != PasswordPolicy.Mode.DICEWARE) {
+      return policy.getLength();
+    }
+    // Words and separators, plus room for an added upper case letter, digit and symbol
+    return policy.getLength() * (longestWord() + 1) - 1 + policy.extraClasses();
+  }
+
+  private static int random(PasswordPolicy policy, char[] into, RandomBytes random) {
+    int length = policy.getLength();
+    int start = 0;
+    if (policy.isRequireEachClass()) {
+      // One from each class, then shuffle them in among the rest
+      for (CharClass charClass : policy.getClasses()) {
+        char[] chars = policy.alphabet(charClass);
+        into[start++] = chars[random.nextInt(chars.length)];
+      }
+    }
+    char[] alphabet = policy.alphabet();
+    for (int i = start; i < length; i++) {
+      into[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+    if (start > 0) {
+      for (int i = length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        char swap = into[i];
+        into[i] = into[j];
+        into[j] = swap;
+      }
+    }
+    return length;
+  }
+
+  private static int pronounceable(PasswordPolicy policy, char[] into, RandomBytes random) {
+    int length = policy.getLength();
+    char[] consonants = policy.consonants();
+    char[] vowels = policy.vowels();
+    boolean consonant = random.nextInt(2) == 0;
+    for (int i = 0; i < length; i++) {
+      char[] letters = consonant ? consonants : vowels;
+      into[i] = letters[random.nextInt(letters.length)];
+      consonant = !consonant;
+    }
+    if (policy.isRequireEachClass()) {
+      // Swap distinct letters for one of each other class
+      int[] used = new int[CharClass.values().length];
+      int usedCount = 0;
+      for (CharClass charClass : policy.getClasses()) {
+        if (charClass == CharClass.LOWER) {
+          continue;
+        }
+        int position;
+        do {
+          position = random.nextInt(length);
+        } while (contains(used, usedCount, position));
+        used[usedCount++] = position;
+        into[position] = extra(policy, charClass, into[position], random);
+      }
+    }
+    return length;
+  }
+
+  private int diceware(PasswordPolicy policy, char[] into, RandomBytes random) {
+    char[][] list = words();
+    int count = policy.getLength();
+    boolean extras = policy.isRequireEachClass();
+    int upperWord = extras && policy.getClasses().contains(CharClass.UPPER)
+        ? random.nextInt(count) : -1;
+    int digitWord = extras && policy.getClasses().contains(CharClass.DIGIT)
+        ? random.nextInt(count) : -1;
+    int symbolWord = extras && policy.getClasses().contains(CharClass.SYMBOL)
+        ? random.nextInt(count) : -1;
+    int length = 0;
+    for (int w = 0; w < count; w++) {
+      if (w > 0) {
+        into[length++] = policy.separator();
+      }
+      char[] word = list[random.nextInt(list.length)];
+      System.arraycopy(word, 0, into, length, word.length);
+      if (w == upperWord) {
+        char upper = Character.toUpperCase(word[0]);
+        if (policy.isAllowed(upper)) {
+          into[length] = upper;
+        } else {
+          char[] uppers = policy.alphabet(CharClass.UPPER);
+          into[length + word.length] = uppers[random.nextInt(uppers.length)];
+          length++;
+        }
+      }
+      length += word.length;
+      if (w == digitWord) {
+        into[length++] = extra(policy, CharClass.DIGIT, '\0', random);
+      }
+      if (w == symbolWord) {
+        into[length++] = symbolBesides(policy, policy.separator(), random);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Picks a character of a class to add to a pronounceable or diceware password, upper case
+   * keeps the letter it replaces where the policy allows.
+   */
+  private static char extra(PasswordPolicy policy, CharClass charClass, char letter,
+      RandomBytes random) {
+    if (charClass == CharClass.UPPER) {
+      char upper = Character.toUpperCase(letter);
+      if (upper != letter && policy.isAllowed(upper)) {
+        return upper;
+      }
+    }
+    char[] chars = policy.alphabet(charClass);
+    return chars[random.nextInt(chars.length)];
+  }
+
+  /**
+   * Picks a symbol other than the separator, so a passphrase still splits into its words.
+   */
+  private static char symbolBesides(PasswordPolicy policy, char separator, RandomBytes random) {
+    char[] symbols = policy.alphabet(CharClass.SYMBOL);
+    int skip = -1;
+    for (int i = 0; i < symbols.length; i++) {
+      if (symbols[i] == separator) {
+        skip = i;
+      }
+    }
+    if (skip < 0) {
+      return symbols[random.nextInt(symbols.length)];
+    }
+    int pick = random.nextInt(symbols.length - 1);
+    return symbols[pick < skip ? pick : pick + 1];
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private char[][] words() {
+    return words != null ? words : WordsHolder.WORDS;
+  }
+
+  private int longestWord() {
+    return words != null ? longestWord : WordsHolder.LONGEST;
+  }
+
+  /**
+   * Reads words one per line, skipping blank lines and lines starting with #.
+   *
+   * @param input word list, closed by this method
+   * @return words as char arrays
+   * @throws IOException if the list can't be read
+   */
+  static char[][] loadWords(InputStream input) throws IOException {
+    List<char[]> words = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(input, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && line.charAt(0) != '#') {
+          words.add(line.toCharArray());
+        }
+      }
+    }
+    if (words.isEmpty()) {
+      throw new IOException("Word list is empty");
+    }
+    return words.toArray(new char[0][]);
+  }
+
+  /**
+   * Loads the bundled word list the first time a diceware passphrase is asked for.
+   */
+  private static final class WordsHolder {
+    private static final char[][] WORDS = load();
+    private static final int LONGEST = Arrays.stream(WORDS).mapToInt(w -> w.length).max()
+        .orElse(0);
+
+    private static char[][] load() {
+      InputStream input = PasswordGenerator.class.getResourceAsStream(WORD_LIST);
+      if (input == null) {
+        throw new IllegalStateException("Missing word list resource " + WORD_LIST);
+      }
+      try {
+        return loadWords(input);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to load word list", e);
+      }
+    }
+  }
+
+  /**
+   * One thread's SecureRandom behind a byte buffer. Bytes are cleared as they are used, so the
+   * buffer never holds randomness that has already gone into a password.
+   */
+  private static final class RandomBytes {
+    private final SecureRandom random = newSecureRandom();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = BUFFER_SIZE;
+
+    int nextByte() {
+      if (position == BUFFER_SIZE) {
+        random.nextBytes(buffer);
+        position = 0;
+      }
+      int value = buffer[position] & 0xff;
+      buffer[position++] = 0;
+      return value;
+    }
+
+    /**
+     * Uniform value below a bound of at most 2^24, redrawing values that would favour the low
+     * end.
+     */
+    int nextInt(int bound) {
+      if (bound <= 256) {
+        int limit = 256 - 256 % bound;
+        int value;
+        do {
+          value = nextByte();
+        } while (value >= limit);
+        return value % bound;
+      }
+      int limit = (1 << 24) - (1 << 24) % bound;
+      int value;
+      do {
+        value = nextByte() << 16 | nextByte() << 8 | nextByte();
+      } while (value >= limit);
+      return value % bound;
+    }
+
+    private static SecureRandom newSecureRandom() {
+      try {
+        return SecureRandom.getInstance("DRBG");
+      } catch (NoSuchAlgorithmException e) {
+        return new SecureRandom();
+      }
+    }
+  }
+}
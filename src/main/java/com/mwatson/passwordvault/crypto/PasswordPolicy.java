@@ -0,0 +1,340 @@
+package com.mwatson.passwordvault.crypto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Immutable description of the passwords a {@link PasswordGenerator} should make.
+ * Each {@code with} method returns a changed copy, so policies compose from
+ * {@link #defaults()} and can be shared between threads.
+ *
+ * <p>In random mode the length counts characters drawn from the allowed classes. Pronounceable
+ * passwords alternate lower case consonants and vowels. Diceware passphrases join whole words,
+ * there the length counts words. In the last two modes the other classes only add one
+ * character each when every class is required, and exclusions only apply to those characters
+ * and the separator.
+ */
+public final class PasswordPolicy {
+  /** Longest password or passphrase, in characters or words, a policy allows. */
+  public static final int MAX_LENGTH = 1024;
+  /** Characters that are easy to mistake for one another when read or typed. */
+  static final String AMBIGUOUS = "Il1|O0o`'\"";
+
+  /**
+   * How a password is put together.
+   */
+  public enum Mode {
+    RANDOM, PRONOUNCEABLE, DICEWARE
+  }
+
+  /**
+   * A class of characters a password may draw from.
+   */
+  public enum CharClass {
+    LOWER("abcdefghijklmnopqrstuvwxyz"),
+    UPPER("ABCDEFGHIJKLMNOPQRSTUVWXYZ"),
+    DIGIT("0123456789"),
+    SYMBOL("!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~");
+
+    private final String chars;
+
+    CharClass(String chars) {
+      this.chars = chars;
+    }
+
+    /**
+     * Characters in this class.
+     *
+     * @return printable ASCII characters
+     */
+    public String getChars() {
+      return chars;
+    }
+  }
+
+  private static final String CONSONANTS = "bcdfghjklmnprstvwxz";
+  private static final String VOWELS = "aeiou";
+
+  private final Mode mode;
+  private final int length;
+  private final Set<CharClass> classes;
+  private final boolean requireEachClass;
+  private final boolean excludeAmbiguous;
+  private final char[] excluded;
+  private final char separator;
+
+  // Derived once so generation is only table lookups
+  private final char[] alphabet;
+  private final char[][] classAlphabets;
+  private final char[] consonants;
+  private final char[] vowels;
+
+  private PasswordPolicy(Mode mode, int length, Set<CharClass> classes, boolean requireEachClass,
+      boolean excludeAmbiguous, char[] excluded, char separator) {
+    this.mode = mode;
+    this.length = length;
+    this.classes = classes;
+    this.requireEachClass = requireEachClass;
+    this.excludeAmbiguous = excludeAmbiguous;
+    this.excluded = excluded;
+    this.separator = separator;
+
+    StringBuilder all = new StringBuilder();
+    int required = 0;
+    classAlphabets = new char[CharClass.values().length][];
+    for (CharClass charClass : classes) {
+      char[] allowed = allowed(charClass.chars);
+      classAlphabets[charClass.ordinal()] = allowed;
+      all.append(allowed);
+      if (allowed.length > 0) {
+        required++;
+      }
+    }
+    alphabet = all.toString().toCharArray();
+    consonants = allowed(CONSONANTS);
+    vowels = allowed(VOWELS);
+    validate(required);
+  }
+
+  /**
+   * Policy for 20 random characters using every class at least once, a sensible default for
+   * site passwords.
+   *
+   * @return default policy
+   */
+  public static PasswordPolicy defaults() {
+    return new PasswordPolicy(Mode.RANDOM, 20, EnumSet.allOf(CharClass.class), true, false,
+        new char[0], '-');
+  }
+
+  /**
+   * Changes the length.
+   *
+   * @param length characters, or words in diceware mode
+   * @return changed copy
+   */
+  public PasswordPolicy withLength(int length) {
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        excluded, separator);
+  }
+
+  /**
+   * Changes the character classes passwords draw from.
+   *
+   * @param first class to allow
+   * @param rest more classes to allow
+   * @return changed copy
+   */
+  public PasswordPolicy withClasses(CharClass first, CharClass... rest) {
+    return new PasswordPolicy(mode, length, EnumSet.of(first, rest), requireEachClass,
+        excludeAmbiguous, excluded, separator);
+  }
+
+  /**
+   * Changes whether every allowed class must appear at least once.
+   *
+   * @param requireEachClass true to require one character from every class
+   * @return changed copy
+   */
+  public PasswordPolicy withRequireEachClass(boolean requireEachClass) {
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        excluded, separator);
+  }
+
+  /**
+   * Leaves out characters that are easily confused, such as l, 1 and I.
+   *
+   * @param excludeAmbiguous true to leave them out
+   * @return changed copy
+   */
+  public PasswordPolicy withExcludeAmbiguous(boolean excludeAmbiguous) {
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        excluded, separator);
+  }
+
+  /**
+   * Leaves out specific characters, for sites that reject them.
+   *
+   * @param chars characters never to use, replacing any given before
+   * @return changed copy
+   */
+  public PasswordPolicy withExcluded(char... chars) {
+    char[] sorted = chars.clone();
+    Arrays.sort(sorted);
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        sorted, separator);
+  }
+
+  /**
+   * Changes the mode.
+   *
+   * @param mode how passwords are put together
+   * @return changed copy
+   */
+  public PasswordPolicy withMode(Mode mode) {
+    if (mode == null) {
+      throw new IllegalArgumentException("Mode can't be null");
+    }
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        excluded, separator);
+  }
+
+  /**
+   * Changes the character put between diceware words.
+   *
+   * @param separator word separator
+   * @return changed copy
+   */
+  public PasswordPolicy withSeparator(char separator) {
+    return new PasswordPolicy(mode, length, classes, requireEachClass, excludeAmbiguous,
+        excluded, separator);
+  }
+
+  /**
+   * How passwords are put together.
+   *
+   * @return mode
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Length in characters, or in words for diceware.
+   *
+   * @return length
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Classes passwords draw from.
+   *
+   * @return unmodifiable set of classes
+   */
+  public Set<CharClass> getClasses() {
+    return Collections.unmodifiableSet(classes);
+  }
+
+  /**
+   * Whether every allowed class must appear at least once.
+   *
+   * @return true if each class is required
+   */
+  public boolean isRequireEachClass() {
+    return requireEachClass;
+  }
+
+  /**
+   * Whether easily confused characters are left out.
+   *
+   * @return true if ambiguous characters are excluded
+   */
+  public boolean isExcludeAmbiguous() {
+    return excludeAmbiguous;
+  }
+
+  /**
+   * Checks whether a character may appear in a generated password.
+   *
+   * @param c character
+   * @return false if excluded by name or as ambiguous
+   */
+  public boolean isAllowed(char c) {
+    return Arrays.binarySearch(excluded, c) < 0
+        && !(excludeAmbiguous && AMBIGUOUS.indexOf(c) >= 0);
+  }
+
+  char[] alphabet() {
+    return alphabet;
+  }
+
+  /**
+   * Allowed characters of one class.
+   *
+   * @param charClass class
+   * @return characters, null if the class isn't in the policy
+   */
+  char[] alphabet(CharClass charClass) {
+    return classAlphabets[charClass.ordinal()];
+  }
+
+  char[] consonants() {
+    return consonants;
+  }
+
+  char[] vowels() {
+    return vowels;
+  }
+
+  char separator() {
+    return separator;
+  }
+
+  private char[] allowed(String chars) {
+    char[] out = new char[chars.length()];
+    int count = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (isAllowed(c)) {
+        out[count++] = c;
+      }
+    }
+    return Arrays.copyOf(out, count);
+  }
+
+  private void validate(int usableClasses) {
+    if (length < 1 || length > MAX_LENGTH) {
+      throw new IllegalArgumentException("Length must be between 1 and " + MAX_LENGTH);
+    }
+    switch (mode) {
+      case RANDOM:
+        if (alphabet.length == 0) {
+          throw new IllegalArgumentException("Policy leaves no characters to choose from");
+        }
+        if (requireEachClass && usableClasses != classes.size()) {
+          throw new IllegalArgumentException("Exclusions remove every character of a class");
+        }
+        if (requireEachClass && length < usableClasses) {
+          throw new IllegalArgumentException("Length is too short to use every class");
+        }
+        break;
+      case PRONOUNCEABLE:
+        if (consonants.length == 0 || vowels.length == 0) {
+          throw new IllegalArgumentException("Exclusions remove every consonant or vowel");
+        }
+        if (requireEachClass && length < extraClasses() + 1) {
+          throw new IllegalArgumentException("Length is too short to use every class");
+        }
+        break;
+      default:
+        if (!isAllowed(separator)) {
+          throw new IllegalArgumentException("Separator is excluded");
+        }
+        if (requireEachClass && classes.contains(CharClass.SYMBOL)
+            && Arrays.equals(alphabet(CharClass.SYMBOL), new char[] {separator})) {
+          throw new IllegalArgumentException("Exclusions leave no symbol besides the separator");
+        }
+        break;
+    }
+    if (requireEachClass && mode != Mode.RANDOM) {
+      for (CharClass charClass : classes) {
+        if (charClass != CharClass.LOWER && alphabet(charClass).length == 0) {
+          throw new IllegalArgumentException("Exclusions remove every character of a class");
+        }
+      }
+    }
+  }
+
+  /**
+   * Number of classes besides lower case that pronounceable and diceware passwords add.
+   *
+   * @return 0 to 3
+   */
+  int extraClasses() {
+    return classes.contains(CharClass.LOWER) ? classes.size() - 1 : classes.size();
+  }
+}
@@ -0,0 +1,60 @@
+package com.mwatson.passwordvault.crypto;
+
+import java.util.Base64;
+import javax.crypto.SecretKey;
+
+/**
+ * Seals and opens small secret values (entry passwords and notes) with a key derived once
+ * at unlock. Each sealed value has its own IV, so entries can be opened one at a time.
+ */
+public class SecretSealer {
+  private final EncryptionService encryptionService;
+  private final SecretKey secretKey;
+
+  /**
+   * Creates a sealer for an unlocked vault.
+   *
+   * @param encryptionService used for the AES-GCM operations
+   * @param secretKey key derived from the master password and vault salt
+   */
+  public SecretSealer(EncryptionService encryptionService, SecretKey secretKey) {
+    if (encryptionService == null || secretKey == null) {
+      throw new IllegalArgumentException("Encryption service and key can't be null");
+    }
+    this.encryptionService = encryptionService;
+    this.secretKey = secretKey;
+  }
+
+  /**
+   * Encrypts plaintext bytes and encodes them as Base64.
+   *
+   * @param plaintext bytes to seal, not cleared by this method
+   * @return Base64 encoded IV + ciphertext
+   */
+  public String seal(byte[] plaintext) {
+    return Base64.getEncoder().encodeToString(encryptionService.encrypt(plaintext, secretKey));
+  }
+
+  /**
+   * Derives a key for keyed hashing from the vault key.
+   *
+   * @param purpose label naming what the key is for
+   * @return HmacSHA256 key
+   */
+  public SecretKey deriveSubkey(String purpose) {
+    return encryptionService.deriveSubkey(secretKey, purpose);
+  }
+
+  /**
+   * Opens a value sealed by {@link #seal(byte[])}.
+   *
+   * @param sealed Base64 encoded IV + ciphertext
+   * @return plaintext bytes, caller should clear them after use
+   */
+  public byte[] open(String sealed) {
+    if (sealed == null) {
+      throw new IllegalArgumentException("Sealed data can't be null");
+    }
+    return encryptionService.decrypt(Base64.getDecoder().decode(sealed), secretKey);
+  }
+}
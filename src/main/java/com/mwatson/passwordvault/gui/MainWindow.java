@@ -1,7 +1,12 @@
 package com.mwatson.passwordvault.gui;
 
+import com.mwatson.passwordvault.crypto.PasswordGenerator;
+import com.mwatson.passwordvault.crypto.PasswordPolicy;
 import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.SearchQuery;
 import com.mwatson.passwordvault.model.Vault;
+import com.mwatson.passwordvault.model.VaultEvent;
+import com.mwatson.passwordvault.model.VaultListener;
 import com.mwatson.passwordvault.storage.VaultStorage;
 import java.awt.BorderLayout;
 import java.awt.Component;
@@ -29,11 +34,13 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPasswordField;
+import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 
@@ -42,13 +49,20 @@ import javax.swing.table.DefaultTableCellRenderer;
  */
 public class MainWindow extends JFrame {
   private static final long serialVersionUID = 1L;
+  private static final int FREQUENT_ROWS = 10;
   private final Vault vault;
   private JTable passwordTable;
   private PasswordTableModel tableModel;
   private JTextField searchField;
+  private final JPopupMenu suggestions = new JPopupMenu();
+  private Vault.SearchSession searchSession;
+  // True while the table lists the most used entries rather than the vault or a search
+  private boolean showingFrequent;
   private final VaultStorage vaultStorage;
   private final char[] masterPassword;
   private JLabel vaultLabel;
+  private final VaultListener vaultListener = this::vaultChanged;
+  private final PasswordGenerator passwordGenerator = new PasswordGenerator();
 
   /**
    * Saves vault to a field, builds the window, fills the table with entries.
@@ -59,9 +73,11 @@ public class MainWindow extends JFrame {
     this.vault = vault;
     this.vaultStorage = vaultStorage;
     this.masterPassword = masterPassword;
+    this.searchSession = vault.newSearchSession();
 
     setUpUi();
     loadPasswordEntries();
+    vault.addListener(vaultListener);
     setVisible(true);
   }
 
@@ -110,9 +126,17 @@ public class MainWindow extends JFrame {
     JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
     searchPanel.add(new JLabel("Search:"));
     searchField = new JTextField(20);
+    searchField.setToolTipText("Text, or fields like category:work url:*.example.com "
+        + "-tag:legacy updated<90d");
+    suggestions.setFocusable(false);
     searchField.addKeyListener(new KeyAdapter() {
       public void keyReleased(KeyEvent e) {
         filterTable(searchField.getText());
+        if (e.getKeyCode() == KeyEvent.VK_ESCAPE || e.getKeyCode() == KeyEvent.VK_ENTER) {
+          suggestions.setVisible(false);
+        } else {
+          showSuggestions(searchField.getText());
+        }
       }
     });
     searchPanel.add(searchField);
@@ -174,6 +198,10 @@ public class MainWindow extends JFrame {
     JButton copyButton = new JButton("Copy Password");
     copyButton.addActionListener(e -> copyPasswordToClipboard());
 
+    JButton frequentButton = new JButton("Frequent");
+    frequentButton.setToolTipText("Entries copied or edited most lately");
+    frequentButton.addActionListener(e -> showFrequentEntries());
+
     JButton refreshButton = new JButton("Refresh");
     refreshButton.addActionListener(e -> loadPasswordEntries());
 
@@ -183,6 +211,7 @@ public class MainWindow extends JFrame {
     buttonPanel.add(editButton);
     buttonPanel.add(deleteButton);
     buttonPanel.add(copyButton);
+    buttonPanel.add(frequentButton);
     buttonPanel.add(refreshButton);
 
     return buttonPanel;
@@ -212,6 +241,7 @@ public class MainWindow extends JFrame {
 
     JMenu toolsMenu = new JMenu("Tools");
     JMenuItem generateItem = new JMenuItem("Generate Password");
+    generateItem.addActionListener(e -> copyGeneratedPassword());
 
     toolsMenu.add(generateItem);
     toolsMenu.addSeparator();
@@ -235,14 +265,23 @@ public class MainWindow extends JFrame {
     return menuBar;
   }
 
-  // Controls what data appears in the table
+  // Controls what data appears in the table, only metadata so listing never opens secrets
   class PasswordTableModel extends AbstractTableModel {
     private static final long serialVersionUID = 1L;
-    private final String[] columnNames = { "Website", "Username", "Category", "Password", "Notes" };
+    private final String[] columnNames = { "Website", "Username", "Category", "Password" };
     private List<PasswordEntry> entries;
+    // True while the rows are the whole vault in order, so vault events map onto rows
+    private boolean showingAll = true;
+    // Last change the rows show while they are the whole vault
+    private long shown = -1;
+    // Newest change delivered so far, deliveries that are no newer are stale
+    private long latest = -1;
 
     public PasswordTableModel() {
-      entries = vault.getAllEntries();
+      VaultEvent current = vault.latestChange();
+      entries = current.getSnapshot();
+      shown = current.getSequence();
+      latest = shown;
     }
 
     public int getRowCount() {
@@ -268,8 +307,6 @@ public class MainWindow extends JFrame {
           return entry.getCategory();
         case 3:
           return "••••••••"; // Masked password
-        case 4:
-          return entry.getNotes();
         default:
           return null;
       }
@@ -292,8 +329,82 @@ public class MainWindow extends JFrame {
      */
     public void updateEntries(List<PasswordEntry> newEntries) {
       this.entries = newEntries;
+      this.showingAll = false;
+      fireTableDataChanged();
+    }
+
+    /**
+     * Show every entry in the vault, later deliveries then apply row by row.
+     *
+     * @param current vault snapshot with the last change it includes
+     */
+    public void showAll(VaultEvent current) {
+      this.entries = current.getSnapshot();
+      this.showingAll = true;
+      this.shown = current.getSequence();
+      this.latest = Math.max(latest, shown);
       fireTableDataChanged();
     }
+
+    /**
+     * Whether the rows are the whole vault, rather than search results.
+     *
+     * @return true when showing all entries
+     */
+    public boolean isShowingAll() {
+      return showingAll;
+    }
+
+    /**
+     * Notes a delivery of vault changes, writes on other threads can deliver out of order.
+     *
+     * @param events from the vault
+     * @return false if a later delivery already covered every change in it
+     */
+    public boolean isNewer(List<VaultEvent> events) {
+      long last = events.get(events.size() - 1).getSequence();
+      if (last <= latest) {
+        return false;
+      }
+      latest = last;
+      return true;
+    }
+
+    /**
+     * Applies vault changes row by row, each event's snapshot is the data after that change.
+     * When they don't follow straight on from what the rows show, reloads from the last
+     * snapshot instead.
+     *
+     * @param events from the vault, in order
+     */
+    public void applyEvents(List<VaultEvent> events) {
+      VaultEvent last = events.get(events.size() - 1);
+      boolean follows = VaultEvent.follows(events, shown);
+      shown = last.getSequence();
+      if (!follows) {
+        entries = last.getSnapshot();
+        fireTableDataChanged();
+        return;
+      }
+      for (VaultEvent event : events) {
+        entries = event.getSnapshot();
+        int row = event.getIndex();
+        switch (event.getType()) {
+          case ADDED:
+            fireTableRowsInserted(row, row);
+            break;
+          case UPDATED:
+            fireTableRowsUpdated(row, row);
+            break;
+          case REMOVED:
+            fireTableRowsDeleted(row, row);
+            break;
+          default:
+            fireTableDataChanged();
+            break;
+        }
+      }
+    }
   }
 
   /**
@@ -322,21 +433,101 @@ public class MainWindow extends JFrame {
    * title.
    */
   private void loadPasswordEntries() {
-    tableModel.updateEntries(vault.getAllEntries());
+    showingFrequent = false;
+    tableModel.showAll(vault.latestChange());
     updateTitle();
     updateHeaderLabel();
   }
 
   /**
-   * Filter entries using the vault's search method.
+   * Updates only the affected rows after the vault changes, search results are re-run
+   * instead since their rows don't line up with the vault's.
+   *
+   * @param events from the vault
+   */
+  private void vaultChanged(List<VaultEvent> events) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> vaultChanged(events));
+      return;
+    }
+    if (!tableModel.isNewer(events)) {
+      return;
+    }
+    if (tableModel.isShowingAll()) {
+      tableModel.applyEvents(events);
+    } else if (showingFrequent) {
+      tableModel.updateEntries(vault.getFrequentEntries(FREQUENT_ROWS));
+    } else {
+      filterTable(searchField.getText());
+    }
+    updateTitle();
+    updateHeaderLabel();
+  }
+
+  /**
+   * Filter entries using the vault's search session, each keystroke refines the last results.
+   * Queries with fields, times or operators are run through the vault's query planner.
    *
    * @param searchText being searched
    */
   private void filterTable(String searchText) {
-    List<PasswordEntry> filtered = vault.search(searchText);
+    showingFrequent = false;
+    if (searchText.trim().isEmpty()) {
+      tableModel.showAll(vault.latestChange());
+      return;
+    }
+    List<PasswordEntry> filtered = null;
+    try {
+      SearchQuery query = SearchQuery.parse(searchText);
+      if (!query.isPlainText()) {
+        filtered = vault.find(query);
+      }
+    } catch (IllegalArgumentException e) {
+      // Half typed query, searched as plain text until it parses
+    }
+    if (filtered == null) {
+      filtered = searchSession.search(searchText);
+    }
     tableModel.updateEntries(filtered);
   }
 
+  /**
+   * Offers completions of the search text under the search box, picking one searches for it.
+   *
+   * @param searchText typed so far
+   */
+  private void showSuggestions(String searchText) {
+    suggestions.setVisible(false);
+    suggestions.removeAll();
+    if (searchText.trim().isEmpty() || searchText.contains(":")) {
+      return;
+    }
+    List<String> completions = vault.complete(searchText, 8);
+    if (completions.isEmpty()
+        || completions.size() == 1 && completions.get(0).equalsIgnoreCase(searchText.trim())) {
+      return;
+    }
+    for (String completion : completions) {
+      JMenuItem item = new JMenuItem(completion);
+      item.addActionListener(e -> {
+        searchField.setText(completion);
+        filterTable(completion);
+      });
+      suggestions.add(item);
+    }
+    suggestions.show(searchField, 0, searchField.getHeight());
+  }
+
+  /**
+   * Lists the entries copied or edited most lately, most used first.
+   */
+  private void showFrequentEntries() {
+    searchField.setText("");
+    suggestions.setVisible(false);
+    showingFrequent = true;
+    tableModel.updateEntries(vault.getFrequentEntries(FREQUENT_ROWS));
+  }
+
   /**
    * Place holder for add entry.
    */
@@ -347,7 +538,6 @@ public class MainWindow extends JFrame {
     if (dialog.isSaved()) {
       PasswordEntry newEntry = dialog.getPasswordEntry();
       vault.addEntry(newEntry);
-      loadPasswordEntries();
 
       JOptionPane.showMessageDialog(this, "Entry added successfully for: " + newEntry.getUrl(),
           "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -372,14 +562,16 @@ public class MainWindow extends JFrame {
     dialog.setVisible(true);
 
     if (dialog.isSaved()) {
-      PasswordEntry updatedEntry = dialog.getPasswordEntry();
-
-      loadPasswordEntries();
+      // One row update for the whole edit rather than one per field
+      vault.batch(dialog::getPasswordEntry);
+      vault.recordUse(originalEntry);
 
       JOptionPane.showMessageDialog(this,
-          "Entry updated successfully for: " + updatedEntry.getUrl(),
+          "Entry updated successfully for: " + originalEntry.getUrl(),
           "Success", JOptionPane.INFORMATION_MESSAGE);
     }
+    // The dialog has copied the secrets into its fields, or saved new ones
+    originalEntry.closeSecrets();
   }
 
   /**
@@ -394,7 +586,6 @@ public class MainWindow extends JFrame {
 
       if (confirm == JOptionPane.YES_OPTION) {
         vault.removeEntry(entry.getId());
-        loadPasswordEntries();
       }
     }
   }
@@ -407,13 +598,28 @@ public class MainWindow extends JFrame {
     if (selectedRow >= 0) {
       PasswordEntry entry = tableModel.getEntryAt(selectedRow);
       StringSelection stringSelection = new StringSelection(new String(entry.getPassword()));
+      entry.closeSecrets();
       Toolkit.getDefaultToolkit().getSystemClipboard().setContents(stringSelection, null);
+      vault.recordUse(entry);
 
       JOptionPane.showMessageDialog(this, "Password copied to clipboard", "Success",
           JOptionPane.INFORMATION_MESSAGE);
     }
   }
 
+  /**
+   * Generates a password with the default policy and copies it to the clipboard.
+   */
+  private void copyGeneratedPassword() {
+    char[] password = passwordGenerator.generate(PasswordPolicy.defaults());
+    StringSelection stringSelection = new StringSelection(new String(password));
+    Arrays.fill(password, '\0');
+    Toolkit.getDefaultToolkit().getSystemClipboard().setContents(stringSelection, null);
+
+    JOptionPane.showMessageDialog(this, "Generated password copied to clipboard", "Success",
+        JOptionPane.INFORMATION_MESSAGE);
+  }
+
   /**
    * Saves vault to the file.
    */
@@ -449,6 +655,8 @@ public class MainWindow extends JFrame {
         "Lock Vault", JOptionPane.YES_NO_OPTION);
 
     if (confirm == JOptionPane.YES_OPTION) {
+      vault.removeListener(vaultListener);
+      vault.closeSecrets();
       dispose();
       new LoginScreen();
     }
@@ -478,6 +686,7 @@ public class MainWindow extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JTextField categoryField;
+    private JTextField tagsField;
     private JTextArea notesArea;
     private JButton saveButton;
     private JButton cancelButton;
@@ -488,7 +697,7 @@ public class MainWindow extends JFrame {
       super(parent, title, true);
       this.entry = existingEntry;
 
-      setSize(500, 400);
+      setSize(500, 440);
       setLocationRelativeTo(parent);
       setLayout(new BorderLayout(10, 10));
 
@@ -531,6 +740,13 @@ public class MainWindow extends JFrame {
       JPanel passwordPanel = new JPanel(new BorderLayout(5, 0));
       passwordField = new JPasswordField(20);
       passwordPanel.add(passwordField, BorderLayout.CENTER);
+      JButton generateButton = new JButton("Generate");
+      generateButton.addActionListener(e -> {
+        char[] generated = passwordGenerator.generate(PasswordPolicy.defaults());
+        passwordField.setText(new String(generated));
+        Arrays.fill(generated, '\0');
+      });
+      passwordPanel.add(generateButton, BorderLayout.EAST);
 
       formPanel.add(passwordPanel, gbc);
 
@@ -545,14 +761,26 @@ public class MainWindow extends JFrame {
       categoryField = new JTextField(30);
       formPanel.add(categoryField, gbc);
 
-      // Notes
+      // Tags
       gbc.gridx = 0;
       gbc.gridy = 4;
       gbc.weightx = 0;
+      formPanel.add(new JLabel("Tags:"), gbc);
+
+      gbc.gridx = 1;
+      gbc.weightx = 1.0;
+      tagsField = new JTextField(30);
+      tagsField.setToolTipText("Comma separated, such as env:prod, team:payments");
+      formPanel.add(tagsField, gbc);
+
+      // Notes
+      gbc.gridx = 0;
+      gbc.gridy = 5;
+      gbc.weightx = 0;
       formPanel.add(new JLabel("Notes:"), gbc);
 
       gbc.gridx = 1;
-      gbc.gridy = 4;
+      gbc.gridy = 5;
       gbc.weightx = 1.0;
       gbc.weighty = 1.0;
       gbc.fill = GridBagConstraints.BOTH;
@@ -590,6 +818,7 @@ public class MainWindow extends JFrame {
         usernameField.setText(existingEntry.getUsername());
         passwordField.setText(new String(existingEntry.getPassword()));
         categoryField.setText(existingEntry.getCategory());
+        tagsField.setText(String.join(", ", existingEntry.getTags()));
         notesArea.setText(existingEntry.getNotes());
       }
 
@@ -647,12 +876,14 @@ public class MainWindow extends JFrame {
         entry = new PasswordEntry(urlField.getText().trim(),
             usernameField.getText().trim(), passwordField.getPassword(), urlField.getText().trim(),
             notesArea.getText().trim(), categoryField.getText().trim());
+        entry.setTags(Arrays.asList(tagsField.getText().split(",")));
       } else {
         // Update existing entry
         entry.setUrl(urlField.getText().trim());
         entry.setUsername(usernameField.getText().trim());
         entry.setPassword(passwordField.getPassword());
         entry.setCategory(categoryField.getText().trim());
+        entry.setTags(Arrays.asList(tagsField.getText().split(",")));
         entry.setNotes(notesArea.getText().trim());
       }
       return entry;
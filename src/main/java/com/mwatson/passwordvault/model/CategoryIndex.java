@@ -0,0 +1,152 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Sorted index from category to the entries filed under it, in vault order, with a count per
+ * category. Listing categories or one category's entries costs the size of the answer rather
+ * than a scan of the vault. Backed by skip lists, so a lazy query stream can keep walking a
+ * category after the vault's read lock is released while a writer changes it.
+ */
+class CategoryIndex implements EntryIndex {
+  private final ConcurrentSkipListMap<String, Bucket> byCategory = new ConcurrentSkipListMap<>();
+  // Entries with a null category, kept apart since skip lists don't take null keys
+  private final Bucket uncategorized = new Bucket();
+  // The category each entry was filed under, its field may have moved on since
+  private final Map<PasswordEntry, String> filed = new IdentityHashMap<>();
+
+  @Override
+  public void add(PasswordEntry entry) {
+    String category = entry.getCategory();
+    filed.put(entry, category);
+    Bucket bucket = category == null ? uncategorized
+        : byCategory.computeIfAbsent(category, key -> new Bucket());
+    bucket.add(entry);
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    if (!filed.containsKey(entry)) {
+      return;
+    }
+    String category = filed.remove(entry);
+    Bucket bucket = bucket(category);
+    if (bucket != null) {
+      bucket.remove(entry);
+      if (category != null && bucket.size == 0) {
+        byCategory.remove(category, bucket);
+      }
+    }
+  }
+
+  @Override
+  public void update(PasswordEntry entry) {
+    // Most edits leave the category alone
+    if (!filed.containsKey(entry) || !Objects.equals(filed.get(entry), entry.getCategory())) {
+      remove(entry);
+      add(entry);
+    }
+  }
+
+  @Override
+  public void clear() {
+    filed.clear();
+    byCategory.clear();
+    uncategorized.clear();
+  }
+
+  /**
+   * Categories in use, sorted.
+   *
+   * @return category names, without null
+   */
+  List<String> categories() {
+    return new ArrayList<>(byCategory.keySet());
+  }
+
+  /**
+   * Number of entries in each category in use.
+   *
+   * @return counts keyed by category, sorted
+   */
+  Map<String, Integer> counts() {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    for (Map.Entry<String, Bucket> category : byCategory.entrySet()) {
+      counts.put(category.getKey(), category.getValue().size);
+    }
+    return counts;
+  }
+
+  /**
+   * Entries in one category.
+   *
+   * @param category to list, null for entries without one
+   * @return entries in vault order
+   */
+  List<PasswordEntry> entries(String category) {
+    Bucket bucket = bucket(category);
+    return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.entries.values());
+  }
+
+  /**
+   * Lazily walks the entries in one category. The walk sees a change made while it runs or
+   * not, but never fails because of one.
+   *
+   * @param category to walk, null for entries without one
+   * @return entries in vault order
+   */
+  Stream<PasswordEntry> stream(String category) {
+    Bucket bucket = bucket(category);
+    return bucket == null ? Stream.empty() : bucket.entries.values().stream();
+  }
+
+  /**
+   * Number of entries in one category.
+   *
+   * @param category to count, null for entries without one
+   * @return entry count
+   */
+  int count(String category) {
+    Bucket bucket = bucket(category);
+    return bucket == null ? 0 : bucket.size;
+  }
+
+  private Bucket bucket(String category) {
+    return category == null ? uncategorized : byCategory.get(category);
+  }
+
+  /**
+   * Entries of one category keyed by vault position, with a count kept alongside since a
+   * skip list's size is O(n).
+   */
+  private static final class Bucket {
+    private final ConcurrentSkipListMap<Long, PasswordEntry> entries =
+        new ConcurrentSkipListMap<>();
+    // Only written under the vault's write lock
+    private volatile int size;
+
+    void add(PasswordEntry entry) {
+      if (entries.put(entry.getSequence(), entry) == null) {
+        size = size + 1;
+      }
+    }
+
+    void remove(PasswordEntry entry) {
+      if (entries.remove(entry.getSequence(), entry)) {
+        size = size - 1;
+      }
+    }
+
+    void clear() {
+      entries.clear();
+      size = 0;
+    }
+  }
+}
@@ -0,0 +1,378 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix completions for the search box, from entry titles, usernames and url hosts with
+ * the domains above them. Terms live in a radix trie on their case folded text, and every
+ * node keeps the best {@value #CACHED} terms below it, ranked by how many entries use them.
+ * The vault puts terms of lately used entries ahead of these, from its usage sketch.
+ * Completing a prefix walks one node per edge of the prefix and reads the answer off that
+ * node, so it costs microseconds however large the vault is. Adding an entry updates the
+ * kept terms along each of its terms' paths in O(length * {@value #CACHED}).
+ *
+ * <p>Nodes are changed in place, so the vault only reads the trie under its read lock.
+ */
+class CompletionIndex implements EntryIndex {
+  // Completions kept on each node, longer requests walk the subtree
+  static final int CACHED = 10;
+  private static final Terminal[] NONE = new Terminal[0];
+  private static final char[] NO_KEYS = new char[0];
+  private static final Node[] NO_CHILDREN = new Node[0];
+  // Most used first, then shorter, then alphabetical
+  private static final Comparator<Terminal> BEST_FIRST = (first, second) -> {
+    if (first.count != second.count) {
+      return Integer.compare(second.count, first.count);
+    }
+    if (first.key.length() != second.key.length()) {
+      return Integer.compare(first.key.length(), second.key.length());
+    }
+    return first.key.compareTo(second.key);
+  };
+
+  private final Node root = new Node("", null);
+  // The terms each entry was filed under by folded key, its fields may have moved on since
+  private final Map<PasswordEntry, Map<String, String>> filed = new IdentityHashMap<>();
+
+  @Override
+  public void add(PasswordEntry entry) {
+    Map<String, String> terms = terms(entry);
+    filed.put(entry, terms);
+    for (Map.Entry<String, String> term : terms.entrySet()) {
+      insert(term.getKey(), term.getValue());
+    }
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    Map<String, String> terms = filed.remove(entry);
+    if (terms != null) {
+      for (String key : terms.keySet()) {
+        delete(key);
+      }
+    }
+  }
+
+  @Override
+  public void update(PasswordEntry entry) {
+    // Most edits leave titles, usernames and urls alone
+    Map<String, String> terms = filed.get(entry);
+    if (terms == null || !terms.equals(terms(entry))) {
+      remove(entry);
+      add(entry);
+    }
+  }
+
+  @Override
+  public void clear() {
+    filed.clear();
+    root.keys = NO_KEYS;
+    root.children = NO_CHILDREN;
+    root.top = NONE;
+  }
+
+  /**
+   * The best completions of a prefix.
+   *
+   * @param prefix as typed, case doesn't matter
+   * @param limit most completions to return
+   * @return completions as first typed into an entry, most used first, empty for a blank
+   *     prefix
+   */
+  List<String> complete(String prefix, int limit) {
+    String key = SearchMatcher.fold(prefix.trim());
+    List<String> results = new ArrayList<>();
+    if (key.isEmpty()) {
+      return results;
+    }
+    Node node = root;
+    int matched = 0;
+    while (matched < key.length()) {
+      node = node.child(key.charAt(matched));
+      if (node == null) {
+        return results;
+      }
+      int length = Math.min(node.edge.length(), key.length() - matched);
+      if (!node.edge.regionMatches(0, key, matched, length)) {
+        return results;
+      }
+      matched += length;
+    }
+    Terminal[] best = node.top;
+    if (limit > best.length && best.length == CACHED) {
+      TopK<Terminal> walk = new TopK<>(limit, BEST_FIRST);
+      collect(node, walk);
+      best = walk.toList().toArray(NONE);
+    }
+    for (int i = 0; i < best.length && i < limit; i++) {
+      results.add(best[i].display);
+    }
+    return results;
+  }
+
+  private static void collect(Node node, TopK<Terminal> walk) {
+    if (node.terminal != null) {
+      walk.offer(node.terminal);
+    }
+    for (Node child : node.children) {
+      collect(child, walk);
+    }
+  }
+
+  /**
+   * Terms an entry is completed by, keyed by their folded text. Its host's parent domains
+   * down to the registered one are included so typing example finds www.example.com.
+   */
+  static Map<String, String> terms(PasswordEntry entry) {
+    Map<String, String> terms = new LinkedHashMap<>();
+    addTerm(terms, entry.getTitle());
+    addTerm(terms, entry.getUsername());
+    String host = entry.getHost();
+    if (host != null) {
+      addTerm(terms, host);
+      String[] labels = HostName.reversedLabels(host);
+      int registrable = HostName.registrableLength(labels);
+      String domain = host;
+      for (int depth = labels.length - 1; depth >= registrable; depth--) {
+        domain = domain.substring(domain.indexOf('.') + 1);
+        addTerm(terms, domain);
+      }
+    }
+    return terms;
+  }
+
+  private static void addTerm(Map<String, String> terms, String value) {
+    if (value != null) {
+      String key = SearchMatcher.fold(value.trim());
+      if (!key.isEmpty()) {
+        terms.putIfAbsent(key, value.trim());
+      }
+    }
+  }
+
+  private void insert(String key, String term) {
+    List<Node> path = new ArrayList<>();
+    Node node = root;
+    path.add(node);
+    int matched = 0;
+    while (matched < key.length()) {
+      Node child = node.child(key.charAt(matched));
+      if (child == null) {
+        child = new Node(key.substring(matched), node);
+        node.attach(child);
+        matched = key.length();
+      } else {
+        int common = commonLength(child.edge, key, matched);
+        if (common < child.edge.length()) {
+          child = split(child, common);
+        }
+        matched += common;
+      }
+      node = child;
+      path.add(node);
+    }
+    Terminal old = node.terminal;
+    Terminal updated = old == null ? new Terminal(key, term, 1)
+        : new Terminal(key, old.display, old.count + 1);
+    node.terminal = updated;
+    for (Node step : path) {
+      step.top = promote(step.top, old, updated);
+    }
+  }
+
+  private void delete(String key) {
+    List<Node> path = new ArrayList<>();
+    Node node = root;
+    path.add(node);
+    int matched = 0;
+    while (matched < key.length()) {
+      node = node.child(key.charAt(matched));
+      if (node == null || !key.startsWith(node.edge, matched)) {
+        return;
+      }
+      matched += node.edge.length();
+      path.add(node);
+    }
+    Terminal old = node.terminal;
+    if (old == null) {
+      return;
+    }
+    Terminal updated = old.count > 1 ? new Terminal(key, old.display, old.count - 1) : null;
+    node.terminal = updated;
+    for (int i = path.size() - 1; i >= 0; i--) {
+      Node step = path.get(i);
+      if (updated == null && step != root && step.terminal == null
+          && step.children.length == 0) {
+        step.parent.detach(step);
+      } else {
+        step.top = demote(step, old, updated);
+      }
+    }
+  }
+
+  /**
+   * Splits a node's edge, the new node above it takes the first part.
+   */
+  private static Node split(Node child, int at) {
+    Node parent = child.parent;
+    Node middle = new Node(child.edge.substring(0, at), parent);
+    middle.keys = new char[] {child.edge.charAt(at)};
+    middle.children = new Node[] {child};
+    // Same subtree, so the same best terms
+    middle.top = child.top;
+    parent.replace(child, middle);
+    child.parent = middle;
+    child.edge = child.edge.substring(at);
+    return middle;
+  }
+
+  private static int commonLength(String edge, String key, int from) {
+    int length = 0;
+    while (length < edge.length() && from + length < key.length()
+        && edge.charAt(length) == key.charAt(from + length)) {
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Kept terms after a term's count went up, replacing its old version if kept. A single
+   * merge pass, since this runs for every node on the path of every term added.
+   */
+  private static Terminal[] promote(Terminal[] top, Terminal old, Terminal updated) {
+    boolean held = Arrays.asList(top).contains(old);
+    if (!held && top.length == CACHED && BEST_FIRST.compare(updated, top[CACHED - 1]) > 0) {
+      return top;
+    }
+    Terminal[] kept = new Terminal[Math.min(held ? top.length : top.length + 1, CACHED)];
+    int size = 0;
+    boolean placed = false;
+    for (Terminal terminal : top) {
+      if (terminal == old) {
+        continue;
+      }
+      if (!placed && BEST_FIRST.compare(updated, terminal) < 0) {
+        kept[size++] = updated;
+        placed = true;
+      }
+      if (size < kept.length) {
+        kept[size++] = terminal;
+      }
+    }
+    if (!placed && size < kept.length) {
+      kept[size] = updated;
+    }
+    return kept;
+  }
+
+  /**
+   * Kept terms after a term's count went down. A full list that held the term may now miss
+   * a term from further down, so it is rebuilt from the node's own term and its children's
+   * lists, which are already up to date.
+   */
+  private static Terminal[] demote(Node node, Terminal old, Terminal updated) {
+    Terminal[] top = node.top;
+    if (!Arrays.asList(top).contains(old)) {
+      return top;
+    }
+    List<Terminal> kept = new ArrayList<>();
+    if (top.length < CACHED) {
+      for (Terminal terminal : top) {
+        if (terminal != old) {
+          kept.add(terminal);
+        }
+      }
+      if (updated != null) {
+        kept.add(updated);
+      }
+    } else {
+      if (node.terminal != null) {
+        kept.add(node.terminal);
+      }
+      for (Node child : node.children) {
+        kept.addAll(Arrays.asList(child.top));
+      }
+    }
+    kept.sort(BEST_FIRST);
+    return kept.subList(0, Math.min(kept.size(), CACHED)).toArray(NONE);
+  }
+
+  /**
+   * A completable term, replaced whenever its count changes.
+   */
+  private static final class Terminal {
+    private final String key;
+    private final String display;
+    private final int count;
+
+    Terminal(String key, String display, int count) {
+      this.key = key;
+      this.display = display;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Node of the trie, reached along an edge of one or more characters.
+   */
+  private static final class Node {
+    private String edge;
+    private Node parent;
+    // First characters of the children's edges, sorted, with the children alongside
+    private char[] keys = NO_KEYS;
+    private Node[] children = NO_CHILDREN;
+    private Terminal terminal;
+    private Terminal[] top = NONE;
+
+    Node(String edge, Node parent) {
+      this.edge = edge;
+      this.parent = parent;
+    }
+
+    Node child(char c) {
+      char[] current = keys;
+      Node[] nodes = children;
+      int index = Arrays.binarySearch(current, c);
+      return index >= 0 && index < nodes.length ? nodes[index] : null;
+    }
+
+    void attach(Node child) {
+      char c = child.edge.charAt(0);
+      int index = -Arrays.binarySearch(keys, c) - 1;
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      newKeys[index] = c;
+      newChildren[index] = child;
+      System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+      System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+      children = newChildren;
+      keys = newKeys;
+    }
+
+    void detach(Node child) {
+      int index = Arrays.binarySearch(keys, child.edge.charAt(0));
+      char[] newKeys = new char[keys.length - 1];
+      Node[] newChildren = new Node[children.length - 1];
+      System.arraycopy(keys, 0, newKeys, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+      System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+      children = newChildren;
+      keys = newKeys;
+    }
+
+    void replace(Node child, Node with) {
+      Node[] newChildren = children.clone();
+      newChildren[Arrays.binarySearch(keys, child.edge.charAt(0))] = with;
+      children = newChildren;
+    }
+  }
+}
@@ -0,0 +1,480 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of non-negative ints stored the way Roaring bitmaps are. Values are split on their high
+ * 16 bits into chunks of 65536, a chunk holding up to {@value #ARRAY_MAX} values keeps them as
+ * a sorted array, a fuller one as a 1024 word bitmap. Sparse and dense sets both stay small,
+ * and AND, OR and AND NOT run chunk by chunk, word by word where both sides are dense.
+ *
+ * <p>Not thread safe, the vault only changes one under its write lock.
+ */
+final class CompressedBitmap {
+  /** Most values a chunk keeps as an array before switching to a bitmap. */
+  static final int ARRAY_MAX = 4096;
+  private static final int WORDS = 1024;
+
+  private char[] keys;
+  private Chunk[] chunks;
+  private int size;
+
+  /**
+   * Creates an empty set.
+   */
+  CompressedBitmap() {
+    this(new char[4], new Chunk[4], 0);
+  }
+
+  private CompressedBitmap(char[] keys, Chunk[] chunks, int size) {
+    this.keys = keys;
+    this.chunks = chunks;
+    this.size = size;
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @param value non-negative int
+   */
+  void add(int value) {
+    char key = (char) (value >>> 16);
+    int slot = find(key);
+    if (slot < 0) {
+      slot = -slot - 1;
+      insert(slot, key, new ArrayChunk());
+    }
+    chunks[slot] = chunks[slot].add((char) value);
+  }
+
+  /**
+   * Removes a value.
+   *
+   * @param value non-negative int
+   */
+  void remove(int value) {
+    int slot = find((char) (value >>> 16));
+    if (slot < 0) {
+      return;
+    }
+    Chunk chunk = chunks[slot].remove((char) value);
+    if (chunk.cardinality() == 0) {
+      System.arraycopy(keys, slot + 1, keys, slot, size - slot - 1);
+      System.arraycopy(chunks, slot + 1, chunks, slot, size - slot - 1);
+      chunks[--size] = null;
+    } else {
+      chunks[slot] = chunk;
+    }
+  }
+
+  /**
+   * Checks for a value.
+   *
+   * @param value non-negative int
+   * @return true if present
+   */
+  boolean contains(int value) {
+    int slot = find((char) (value >>> 16));
+    return slot >= 0 && chunks[slot].contains((char) value);
+  }
+
+  /**
+   * Number of values held.
+   *
+   * @return cardinality
+   */
+  int cardinality() {
+    int total = 0;
+    for (int i = 0; i < size; i++) {
+      total += chunks[i].cardinality();
+    }
+    return total;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Passes every value to a consumer, smallest first.
+   *
+   * @param action to run for each value
+   */
+  void forEach(IntConsumer action) {
+    for (int i = 0; i < size; i++) {
+      chunks[i].forEach(keys[i] << 16, action);
+    }
+  }
+
+  /**
+   * Values in both sets.
+   *
+   * @param a first set
+   * @param b second set
+   * @return new set
+   */
+  static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+    CompressedBitmap result = new CompressedBitmap(new char[Math.min(a.size, b.size) + 1],
+        new Chunk[Math.min(a.size, b.size) + 1], 0);
+    int i = 0;
+    int j = 0;
+    while (i < a.size && j < b.size) {
+      if (a.keys[i] < b.keys[j]) {
+        i++;
+      } else if (a.keys[i] > b.keys[j]) {
+        j++;
+      } else {
+        result.append(a.keys[i], a.chunks[i].and(b.chunks[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Values in either set.
+   *
+   * @param a first set
+   * @param b second set
+   * @return new set
+   */
+  static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+    CompressedBitmap result = new CompressedBitmap(new char[a.size + b.size + 1],
+        new Chunk[a.size + b.size + 1], 0);
+    int i = 0;
+    int j = 0;
+    while (i < a.size || j < b.size) {
+      if (j == b.size || i < a.size && a.keys[i] < b.keys[j]) {
+        result.append(a.keys[i], a.chunks[i].copy());
+        i++;
+      } else if (i == a.size || a.keys[i] > b.keys[j]) {
+        result.append(b.keys[j], b.chunks[j].copy());
+        j++;
+      } else {
+        result.append(a.keys[i], a.chunks[i].or(b.chunks[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Values in the first set but not the second.
+   *
+   * @param a set to take from
+   * @param b values to leave out
+   * @return new set
+   */
+  static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+    CompressedBitmap result = new CompressedBitmap(new char[a.size + 1], new Chunk[a.size + 1],
+        0);
+    int j = 0;
+    for (int i = 0; i < a.size; i++) {
+      while (j < b.size && b.keys[j] < a.keys[i]) {
+        j++;
+      }
+      if (j < b.size && b.keys[j] == a.keys[i]) {
+        result.append(a.keys[i], a.chunks[i].andNot(b.chunks[j]));
+      } else {
+        result.append(a.keys[i], a.chunks[i].copy());
+      }
+    }
+    return result;
+  }
+
+  private void append(char key, Chunk chunk) {
+    if (chunk.cardinality() > 0) {
+      keys[size] = key;
+      chunks[size++] = chunk;
+    }
+  }
+
+  private int find(char key) {
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private void insert(int slot, char key, Chunk chunk) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      chunks = Arrays.copyOf(chunks, size * 2);
+    }
+    System.arraycopy(keys, slot, keys, slot + 1, size - slot);
+    System.arraycopy(chunks, slot, chunks, slot + 1, size - slot);
+    keys[slot] = key;
+    chunks[slot] = chunk;
+    size++;
+  }
+
+  /**
+   * The low 16 bits of the values sharing one high half. Changes return the chunk to use from
+   * then on, which may be a different kind.
+   */
+  private abstract static class Chunk {
+    abstract Chunk add(char value);
+
+    abstract Chunk remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Chunk and(Chunk other);
+
+    abstract Chunk or(Chunk other);
+
+    abstract Chunk andNot(Chunk other);
+
+    abstract Chunk copy();
+
+    abstract void forEach(int high, IntConsumer action);
+
+    abstract BitmapChunk toBitmap();
+  }
+
+  /**
+   * Sorted array of values, for chunks of up to {@value #ARRAY_MAX}.
+   */
+  private static final class ArrayChunk extends Chunk {
+    private char[] values;
+    private int count;
+
+    ArrayChunk() {
+      this(new char[4], 0);
+    }
+
+    ArrayChunk(char[] values, int count) {
+      this.values = values;
+      this.count = count;
+    }
+
+    @Override
+    Chunk add(char value) {
+      int slot = Arrays.binarySearch(values, 0, count, value);
+      if (slot >= 0) {
+        return this;
+      }
+      if (count == ARRAY_MAX) {
+        return toBitmap().add(value);
+      }
+      slot = -slot - 1;
+      if (count == values.length) {
+        values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+      }
+      System.arraycopy(values, slot, values, slot + 1, count - slot);
+      values[slot] = value;
+      count++;
+      return this;
+    }
+
+    @Override
+    Chunk remove(char value) {
+      int slot = Arrays.binarySearch(values, 0, count, value);
+      if (slot >= 0) {
+        System.arraycopy(values, slot + 1, values, slot, count - slot - 1);
+        count--;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(values, 0, count, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return count;
+    }
+
+    @Override
+    Chunk and(Chunk other) {
+      char[] out = new char[count];
+      int found = 0;
+      for (int i = 0; i < count; i++) {
+        if (other.contains(values[i])) {
+          out[found++] = values[i];
+        }
+      }
+      return new ArrayChunk(out, found);
+    }
+
+    @Override
+    Chunk or(Chunk other) {
+      if (other instanceof BitmapChunk) {
+        return other.or(this);
+      }
+      ArrayChunk array = (ArrayChunk) other;
+      char[] out = new char[count + array.count];
+      int merged = 0;
+      int i = 0;
+      int j = 0;
+      while (i < count || j < array.count) {
+        if (j == array.count || i < count && values[i] < array.values[j]) {
+          out[merged++] = values[i++];
+        } else if (i == count || values[i] > array.values[j]) {
+          out[merged++] = array.values[j++];
+        } else {
+          out[merged++] = values[i++];
+          j++;
+        }
+      }
+      ArrayChunk union = new ArrayChunk(out, merged);
+      return merged > ARRAY_MAX ? union.toBitmap() : union;
+    }
+
+    @Override
+    Chunk andNot(Chunk other) {
+      char[] out = new char[count];
+      int kept = 0;
+      for (int i = 0; i < count; i++) {
+        if (!other.contains(values[i])) {
+          out[kept++] = values[i];
+        }
+      }
+      return new ArrayChunk(out, kept);
+    }
+
+    @Override
+    Chunk copy() {
+      return new ArrayChunk(Arrays.copyOf(values, count), count);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < count; i++) {
+        action.accept(high | values[i]);
+      }
+    }
+
+    @Override
+    BitmapChunk toBitmap() {
+      long[] words = new long[WORDS];
+      for (int i = 0; i < count; i++) {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return new BitmapChunk(words, count);
+    }
+  }
+
+  /**
+   * One bit per possible value, for chunks of more than {@value #ARRAY_MAX}.
+   */
+  private static final class BitmapChunk extends Chunk {
+    private final long[] words;
+    private int count;
+
+    BitmapChunk(long[] words, int count) {
+      this.words = words;
+      this.count = count;
+    }
+
+    @Override
+    Chunk add(char value) {
+      long bit = 1L << value;
+      if ((words[value >>> 6] & bit) == 0) {
+        words[value >>> 6] |= bit;
+        count++;
+      }
+      return this;
+    }
+
+    @Override
+    Chunk remove(char value) {
+      long bit = 1L << value;
+      if ((words[value >>> 6] & bit) != 0) {
+        words[value >>> 6] &= ~bit;
+        count--;
+      }
+      return count <= ARRAY_MAX ? toArray() : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return count;
+    }
+
+    @Override
+    Chunk and(Chunk other) {
+      if (other instanceof ArrayChunk) {
+        return other.and(this);
+      }
+      long[] otherWords = ((BitmapChunk) other).words;
+      long[] out = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        out[i] = words[i] & otherWords[i];
+      }
+      return shrink(out);
+    }
+
+    @Override
+    Chunk or(Chunk other) {
+      long[] otherWords = other.toBitmap().words;
+      long[] out = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        out[i] = words[i] | otherWords[i];
+      }
+      return shrink(out);
+    }
+
+    @Override
+    Chunk andNot(Chunk other) {
+      long[] otherWords = other.toBitmap().words;
+      long[] out = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        out[i] = words[i] & ~otherWords[i];
+      }
+      return shrink(out);
+    }
+
+    @Override
+    Chunk copy() {
+      return new BitmapChunk(words.clone(), count);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < WORDS; i++) {
+        long word = words[i];
+        while (word != 0) {
+          action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+    }
+
+    @Override
+    BitmapChunk toBitmap() {
+      return this;
+    }
+
+    private ArrayChunk toArray() {
+      char[] values = new char[count];
+      int position = 0;
+      for (int i = 0; i < WORDS; i++) {
+        long word = words[i];
+        while (word != 0) {
+          values[position++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayChunk(values, count);
+    }
+
+    private static Chunk shrink(long[] words) {
+      int count = 0;
+      for (long word : words) {
+        count += Long.bitCount(word);
+      }
+      BitmapChunk bitmap = new BitmapChunk(words, count);
+      return count <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+    }
+  }
+}
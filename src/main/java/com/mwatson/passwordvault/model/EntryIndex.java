@@ -0,0 +1,38 @@
+package com.mwatson.passwordvault.model;
+
+/**
+ * Secondary index over the entries of a {@link Vault}.
+ * The vault keeps every index in step as entries are added, removed and edited, an index
+ * remembers whatever keys it stored for an entry so it can drop them again after an edit.
+ */
+interface EntryIndex {
+
+  /**
+   * Indexes a newly added entry.
+   *
+   * @param entry added to the vault
+   */
+  void add(PasswordEntry entry);
+
+  /**
+   * Drops an entry and every key stored for it.
+   *
+   * @param entry removed from the vault
+   */
+  void remove(PasswordEntry entry);
+
+  /**
+   * Re-indexes an entry after one of its fields changed.
+   *
+   * @param entry that was edited
+   */
+  default void update(PasswordEntry entry) {
+    remove(entry);
+    add(entry);
+  }
+
+  /**
+   * Drops every entry.
+   */
+  void clear();
+}
@@ -0,0 +1,154 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.Arrays;
+
+/**
+ * Approximate matcher for typo tolerant search over entry titles, usernames and urls.
+ * Uses Myers' bit-parallel algorithm, so scoring a field costs a handful of word operations
+ * per character instead of a full Levenshtein table. The distance reported is the fewest
+ * edits turning the query into some substring of a field.
+ */
+public final class FuzzyMatcher {
+  /** Longest query that fits in one machine word, longer queries are cut to this. */
+  static final int MAX_QUERY_LENGTH = Long.SIZE;
+  /** Returned by {@link #distance(PasswordEntry)} when the entry is too far from the query. */
+  public static final int NO_MATCH = Integer.MAX_VALUE;
+
+  private static final int ASCII = 128;
+
+  private final int length;
+  private final int maxDistance;
+  private final long lastBit;
+  private final long[] asciiMasks = new long[ASCII];
+  private final char[] otherChars;
+  private final long[] otherMasks;
+  private final long signature;
+
+  private FuzzyMatcher(String query, int maxDistance) {
+    this.length = query.length();
+    this.maxDistance = maxDistance;
+    this.lastBit = 1L << (length - 1);
+
+    char[] others = new char[length];
+    long[] masks = new long[length];
+    int otherCount = 0;
+    long sig = 0;
+    for (int i = 0; i < length; i++) {
+      char c = query.charAt(i);
+      sig |= signatureBit(c);
+      if (c < ASCII) {
+        asciiMasks[c] |= 1L << i;
+        continue;
+      }
+      int slot = indexOf(others, otherCount, c);
+      if (slot < 0) {
+        slot = otherCount++;
+        others[slot] = c;
+      }
+      masks[slot] |= 1L << i;
+    }
+    this.otherChars = Arrays.copyOf(others, otherCount);
+    this.otherMasks = Arrays.copyOf(masks, otherCount);
+    this.signature = sig;
+  }
+
+  /**
+   * Compiles a query, allowing one edit for every three characters.
+   *
+   * @param query text being searched
+   * @return compiled matcher, null for blank queries
+   */
+  public static FuzzyMatcher compile(String query) {
+    if (query == null || query.trim().isEmpty()) {
+      return null;
+    }
+    String folded = SearchMatcher.fold(query).replace(String.valueOf(
+        SearchMatcher.FIELD_SEPARATOR), "");
+    if (folded.length() > MAX_QUERY_LENGTH) {
+      folded = folded.substring(0, MAX_QUERY_LENGTH);
+    }
+    return new FuzzyMatcher(folded, folded.length() / 3);
+  }
+
+  /**
+   * Most edits an entry may need and still match.
+   *
+   * @return edit budget
+   */
+  public int getMaxDistance() {
+    return maxDistance;
+  }
+
+  /**
+   * Scores an entry against the query.
+   *
+   * @param entry to score
+   * @return fewest edits to match the title, username or url, or {@link #NO_MATCH}
+   */
+  public int distance(PasswordEntry entry) {
+    // Every distinct query character missing from the entry costs at least one edit
+    if (Long.bitCount(signature & ~entry.getFuzzySignature()) > maxDistance) {
+      return NO_MATCH;
+    }
+    char[] key = entry.getFuzzyKey();
+    long allOnes = length == Long.SIZE ? -1L : (1L << length) - 1;
+    long vp = allOnes;
+    long vn = 0;
+    int score = length;
+    int best = length;
+    for (char c : key) {
+      if (c == SearchMatcher.FIELD_SEPARATOR) {
+        // Start the next field afresh
+        vp = allOnes;
+        vn = 0;
+        score = length;
+        continue;
+      }
+      long eq = maskFor(c);
+      final long xv = eq | vn;
+      long xh = (((eq & vp) + vp) ^ vp) | eq;
+      long ph = vn | ~(xh | vp);
+      long mh = vp & xh;
+      if ((ph & lastBit) != 0) {
+        score++;
+      } else if ((mh & lastBit) != 0) {
+        score--;
+      }
+      ph <<= 1;
+      mh <<= 1;
+      vp = mh | ~(xv | ph);
+      vn = ph & xv;
+      if (score < best) {
+        best = score;
+      }
+    }
+    return best <= maxDistance ? best : NO_MATCH;
+  }
+
+  private long maskFor(char c) {
+    if (c < ASCII) {
+      return asciiMasks[c];
+    }
+    int slot = indexOf(otherChars, otherChars.length, c);
+    return slot < 0 ? 0 : otherMasks[slot];
+  }
+
+  /**
+   * One bit of a 64 bit set of the characters present in some text.
+   *
+   * @param c character
+   * @return bit for the character
+   */
+  static long signatureBit(char c) {
+    return 1L << (c & (Long.SIZE - 1));
+  }
+
+  private static int indexOf(char[] chars, int count, char c) {
+    for (int i = 0; i < count; i++) {
+      if (chars[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
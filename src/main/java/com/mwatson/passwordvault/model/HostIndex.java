@@ -0,0 +1,190 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Trie of entry hosts on their labels from the top level down, com then example then login
+ * for login.example.com. Finding a host walks one node per label however large the vault is,
+ * and every host under a domain lies in that domain's subtree, which keeps a count of its
+ * entries. The vault reads it under its read lock.
+ */
+class HostIndex implements EntryIndex {
+  private final StringPool strings;
+  private final Node root = new Node(null, null);
+  // The host each entry was filed under, its url may have moved on since
+  private final Map<PasswordEntry, String> filed = new IdentityHashMap<>();
+
+  HostIndex(StringPool strings) {
+    this.strings = strings;
+  }
+
+  @Override
+  public void add(PasswordEntry entry) {
+    String host = strings.intern(entry.getHost());
+    if (host == null) {
+      return;
+    }
+    filed.put(entry, host);
+    Node node = root;
+    node.size = node.size + 1;
+    for (String label : HostName.reversedLabels(host)) {
+      Node parent = node;
+      node = parent.children.computeIfAbsent(strings.intern(label), key -> new Node(parent, key));
+      node.size = node.size + 1;
+    }
+    if (node.entries.put(entry.getSequence(), entry) == null) {
+      node.own = node.own + 1;
+    }
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    String host = filed.remove(entry);
+    if (host == null) {
+      return;
+    }
+    Node node = find(HostName.reversedLabels(host));
+    if (node == null || !node.entries.remove(entry.getSequence(), entry)) {
+      return;
+    }
+    node.own = node.own - 1;
+    for (; node != null; node = node.parent) {
+      node.size = node.size - 1;
+      if (node.size == 0 && node.parent != null) {
+        node.parent.children.remove(node.label, node);
+      }
+    }
+  }
+
+  @Override
+  public void update(PasswordEntry entry) {
+    // Most edits leave the url alone
+    if (!Objects.equals(filed.get(entry), entry.getHost())) {
+      remove(entry);
+      add(entry);
+    }
+  }
+
+  @Override
+  public void clear() {
+    filed.clear();
+    root.children.clear();
+    root.size = 0;
+  }
+
+  /**
+   * Credentials for a page: those for its own host, then for the domains above it up to the
+   * one that was registered, nearest first, then for any other host under that domain.
+   * Finding them costs one step per label of the host plus the size of the answer.
+   *
+   * @param host normalised host of the page
+   * @return matching entries, each group in vault order
+   */
+  List<PasswordEntry> site(String host) {
+    String[] labels = HostName.reversedLabels(host);
+    int registrable = HostName.registrableLength(labels);
+    List<Node> path = new ArrayList<>(labels.length);
+    Node node = root;
+    for (String label : labels) {
+      node = node.children.get(label);
+      if (node == null) {
+        break;
+      }
+      path.add(node);
+    }
+    List<PasswordEntry> results = new ArrayList<>();
+    if (path.size() < registrable) {
+      return results;
+    }
+    for (int depth = path.size() - 1; depth >= registrable - 1; depth--) {
+      results.addAll(path.get(depth).entries.values());
+    }
+    Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    seen.addAll(path);
+    List<PasswordEntry> others = new ArrayList<>();
+    collect(path.get(registrable - 1), seen, others);
+    others.sort(Vault.BY_POSITION);
+    results.addAll(others);
+    return results;
+  }
+
+  /**
+   * Entries whose host is a domain or lies under it.
+   *
+   * @param domain normalised domain
+   * @param includeDomain false to leave out entries for the domain itself
+   * @return matching entries in vault order
+   */
+  List<PasswordEntry> under(String domain, boolean includeDomain) {
+    Node node = find(HostName.reversedLabels(domain));
+    List<PasswordEntry> results = new ArrayList<>();
+    if (node != null) {
+      Set<Node> skip = includeDomain ? Set.of() : Set.of(node);
+      collect(node, skip, results);
+      results.sort(Vault.BY_POSITION);
+    }
+    return results;
+  }
+
+  /**
+   * Counts the entries {@link #under(String, boolean)} would return, in one step per label.
+   *
+   * @param domain normalised domain
+   * @param includeDomain false to leave out entries for the domain itself
+   * @return entry count
+   */
+  int count(String domain, boolean includeDomain) {
+    Node node = find(HostName.reversedLabels(domain));
+    if (node == null) {
+      return 0;
+    }
+    return includeDomain ? node.size : node.size - node.own;
+  }
+
+  private Node find(String[] labels) {
+    Node node = root;
+    for (int i = 0; i < labels.length && node != null; i++) {
+      node = node.children.get(labels[i]);
+    }
+    return node;
+  }
+
+  /**
+   * Adds the entries of a subtree, leaving out those filed on skipped nodes themselves.
+   */
+  private static void collect(Node node, Set<Node> skip, List<PasswordEntry> results) {
+    if (!skip.contains(node)) {
+      results.addAll(node.entries.values());
+    }
+    for (Node child : node.children.values()) {
+      collect(child, skip, results);
+    }
+  }
+
+  /**
+   * One label of a host, with the entries filed on exactly this host.
+   */
+  private static final class Node {
+    private final Node parent;
+    private final String label;
+    private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, PasswordEntry> entries =
+        new ConcurrentSkipListMap<>();
+    // Entries here and below, and here only, written only under the vault's write lock
+    private volatile int size;
+    private volatile int own;
+
+    Node(Node parent, String label) {
+      this.parent = parent;
+      this.label = label;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.mwatson.passwordvault.model;
+
+import java.net.IDN;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reduces urls to the host they point at, so {@code https://Login.Example.com:8443/x} and
+ * {@code login.example.com} are filed together. Scheme, user info, port, path, query and
+ * fragment are dropped, the host is lower cased and international names are turned into
+ * their punycode form.
+ */
+final class HostName {
+  // Second level labels that are registries under a country code, as in example.co.uk.
+  // The vault doesn't ship the public suffix list, these cover the common cases.
+  private static final Set<String> COUNTRY_REGISTRIES =
+      Set.of("ac", "co", "com", "edu", "gov", "ltd", "net", "ne", "or", "org", "plc");
+
+  private HostName() {
+  }
+
+  /**
+   * Host of a url, or of a bare host name.
+   *
+   * @param url as typed, may be null
+   * @return lower case ASCII host, null if there is none
+   */
+  static String of(String url) {
+    if (url == null) {
+      return null;
+    }
+    String host = url.trim();
+    int scheme = host.indexOf("://");
+    if (scheme >= 0) {
+      host = host.substring(scheme + 3);
+    }
+    int end = 0;
+    while (end < host.length() && "/?#\\".indexOf(host.charAt(end)) < 0) {
+      end++;
+    }
+    host = host.substring(host.lastIndexOf('@', end - 1) + 1, end);
+    if (host.startsWith("[")) {
+      // IPv6 literal, the port follows the closing bracket
+      int close = host.indexOf(']');
+      host = close < 0 ? host.substring(1) : host.substring(1, close);
+    } else if (host.indexOf(':') >= 0) {
+      host = host.substring(0, host.indexOf(':'));
+    }
+    while (host.endsWith(".")) {
+      host = host.substring(0, host.length() - 1);
+    }
+    if (host.isEmpty() || host.startsWith(".") || host.contains("..")) {
+      return null;
+    }
+    try {
+      host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+    } catch (IllegalArgumentException e) {
+      // Not a valid international name, kept as typed
+    }
+    return host.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Labels of a host from the top level down, com before example in example.com.
+   *
+   * @param host normalised host
+   * @return labels, an IP address is one label
+   */
+  static String[] reversedLabels(String host) {
+    if (isAddress(host)) {
+      return new String[] {host};
+    }
+    String[] labels = host.split("\\.");
+    for (int i = 0, j = labels.length - 1; i < j; i++, j--) {
+      String label = labels[i];
+      labels[i] = labels[j];
+      labels[j] = label;
+    }
+    return labels;
+  }
+
+  /**
+   * How many top labels of a host make up the domain someone registered, 2 for
+   * login.example.com and 3 for login.example.co.uk.
+   *
+   * @param labels from {@link #reversedLabels(String)}
+   * @return label count, at most the number of labels
+   */
+  static int registrableLength(String[] labels) {
+    if (labels.length <= 2) {
+      return labels.length;
+    }
+    boolean countryRegistry = labels[0].length() == 2 && COUNTRY_REGISTRIES.contains(labels[1]);
+    return countryRegistry ? 3 : 2;
+  }
+
+  private static boolean isAddress(String host) {
+    if (host.indexOf(':') >= 0) {
+      return true;
+    }
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      if (c != '.' && (c < '0' || c > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,139 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Orders entries by when they were last updated, ties broken by vault position.
+ * Backed by a skip list, so range queries are O(log n + k).
+ */
+class ModifiedIndex implements EntryIndex {
+  private final ConcurrentSkipListMap<Stamp, PasswordEntry> byTime =
+      new ConcurrentSkipListMap<>();
+  // The key each entry was filed under, its updatedAt may have moved on since
+  private final Map<PasswordEntry, Stamp> stamps = new IdentityHashMap<>();
+
+  @Override
+  public void add(PasswordEntry entry) {
+    Stamp stamp = new Stamp(entry.getUpdatedAtMillis(), entry.getSequence());
+    stamps.put(entry, stamp);
+    byTime.put(stamp, entry);
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    Stamp stamp = stamps.remove(entry);
+    if (stamp != null) {
+      byTime.remove(stamp, entry);
+    }
+  }
+
+  @Override
+  public void update(PasswordEntry entry) {
+    Stamp stamp = stamps.get(entry);
+    // Most edits touch the timestamp, but re-indexing for other reasons leaves it alone
+    if (stamp == null || stamp.time != entry.getUpdatedAtMillis()) {
+      remove(entry);
+      add(entry);
+    }
+  }
+
+  @Override
+  public void clear() {
+    stamps.clear();
+    byTime.clear();
+  }
+
+  /**
+   * Entries updated at or after a time, oldest first.
+   *
+   * @param millis epoch millis
+   * @return matching entries
+   */
+  List<PasswordEntry> since(long millis) {
+    return new ArrayList<>(byTime.tailMap(new Stamp(millis, Long.MIN_VALUE)).values());
+  }
+
+  /**
+   * Entries last updated before a time, oldest first.
+   *
+   * @param millis epoch millis
+   * @return matching entries
+   */
+  List<PasswordEntry> before(long millis) {
+    return new ArrayList<>(byTime.headMap(new Stamp(millis, Long.MIN_VALUE)).values());
+  }
+
+  /**
+   * Counts the entries updated at or after a time, or before it, stopping at a limit so
+   * a planner can size a range without walking all of it.
+   *
+   * @param millis epoch millis
+   * @param after true to count from the time on, false to count before it
+   * @param limit most entries to count
+   * @return entries in the range, at most limit
+   */
+  int count(long millis, boolean after, int limit) {
+    Stamp bound = new Stamp(millis, Long.MIN_VALUE);
+    Map<Stamp, PasswordEntry> range = after ? byTime.tailMap(bound) : byTime.headMap(bound);
+    int count = 0;
+    for (Stamp ignored : range.keySet()) {
+      if (count == limit) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * The most recently updated entries, newest first.
+   *
+   * @param limit most entries to return
+   * @return up to limit entries
+   */
+  List<PasswordEntry> newest(int limit) {
+    List<PasswordEntry> results = new ArrayList<>(Math.min(limit, stamps.size()));
+    ConcurrentNavigableMap<Stamp, PasswordEntry> descending = byTime.descendingMap();
+    for (PasswordEntry entry : descending.values()) {
+      if (results.size() == limit) {
+        break;
+      }
+      results.add(entry);
+    }
+    return results;
+  }
+
+  /**
+   * Index key, an update time and the entry's vault position.
+   */
+  private static final class Stamp implements Comparable<Stamp> {
+    private final long time;
+    private final long sequence;
+
+    Stamp(long time, long sequence) {
+      this.time = time;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Stamp other) {
+      int byTime = Long.compare(time, other.time);
+      return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Stamp && compareTo((Stamp) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(time) * 31 + Long.hashCode(sequence);
+    }
+  }
+}
@@ -1,24 +1,65 @@
 package com.mwatson.passwordvault.model;
 
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
 
 /**
  * Represents a single password entry in the vault.
  * Contains all information needed to store and retrieve a password.
+ *
+ * <p>The password and notes are the secret tier of an entry. Once the vault has been saved
+ * they are kept sealed in {@code sealedSecrets} and only decrypted the first time
+ * {@link #getPassword()} or {@link #getNotes()} is called, the rest of the fields are the
+ * metadata tier and are always available for listing and search. Notes are searched whether
+ * or not they are open: their trigrams are kept in the metadata tier, and a longer query that
+ * hits all of them is confirmed against the notes opened into a temporary copy, see
+ * {@link #notesContain(String, long[])}. {@link #closeSecrets()} wipes the decrypted copies
+ * again once they are no longer needed.
+ *
+ * <p>Passwords replaced through {@link #setPassword(char[])} are kept in a bounded
+ * {@link PasswordHistory}, sealed like the secrets and only opened by
+ * {@link #getPasswordHistory()}. It is saved as one string and only parsed into records
+ * when it is first read or changed.
  */
 public class PasswordEntry {
-  private String id;
+  private EntryId id;
   private String title;
   private String username;
   private char[] password;
   private String url;
   private String notes;
   private String category;
-  private transient LocalDateTime createdAt;
-  private transient LocalDateTime updatedAt;
+  // Sorted, lower case and never empty, null when the entry has no tags
+  private List<String> tags;
+  private String sealedSecrets;
+  // Trigrams of the folded notes, saved with the metadata so sealed notes can be searched
+  private long[] noteGrams;
+  private PasswordHistory passwordHistory;
+  private transient boolean secretsOpen = true;
+  private transient SecretSealer sealer;
+  private transient Vault vault;
+  private transient long sequence;
+  private transient String searchKey;
+  private transient FuzzyKey fuzzyKey;
+  private transient Host host;
+  private transient int passwordRevision;
+  // Epoch millis, stored as plain numbers
+  private long createdAt;
+  private long updatedAt;
 
+  private static final long[] NO_GRAMS = new long[0];
   private static final transient DateTimeFormatter DATE_FORMATTER =
       DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
@@ -26,9 +67,9 @@ public class PasswordEntry {
    * Default constructor.
    */
   public PasswordEntry() {
-    this.id = UUID.randomUUID().toString();
-    this.createdAt = LocalDateTime.now();
-    this.updatedAt = LocalDateTime.now();
+    this.id = EntryId.next();
+    this.createdAt = System.currentTimeMillis();
+    this.updatedAt = createdAt;
     this.category = "General";
   }
 
@@ -65,11 +106,20 @@ public class PasswordEntry {
   }
 
   public String getId() {
-    return id;
+    return id == null ? null : id.toString();
   }
 
   public void setId(String id) {
-    this.id = id;
+    this.id = EntryId.parse(id);
+  }
+
+  /**
+   * Id without rendering it as text, for maps keyed on entries.
+   *
+   * @return entry id, null if cleared
+   */
+  public EntryId getEntryId() {
+    return id;
   }
 
   public String getTitle() {
@@ -83,7 +133,7 @@ public class PasswordEntry {
    */
   public void setTitle(String title) {
     this.title = title;
-    this.updatedAt = LocalDateTime.now();
+    changed();
   }
 
   public String getUsername() {
@@ -96,11 +146,12 @@ public class PasswordEntry {
    * @param username set a value to
    */
   public void setUsername(String username) {
-    this.username = username;
-    this.updatedAt = LocalDateTime.now();
+    this.username = pooled(username);
+    changed();
   }
 
   public char[] getPassword() {
+    openSecrets();
     return password;
   }
 
@@ -110,25 +161,84 @@ public class PasswordEntry {
    * @param password being set
    */
   public void setPassword(char[] password) {
+    openSecrets();
+    if (this.password != null && !Arrays.equals(this.password, password)) {
+      if (passwordHistory == null) {
+        passwordHistory = new PasswordHistory();
+      }
+      passwordHistory.add(password, this.password, System.currentTimeMillis());
+    }
     this.password = password;
-    this.updatedAt = LocalDateTime.now();
+    this.sealedSecrets = null;
+    passwordRevision++;
+    changed();
+  }
+
+  /**
+   * Previous passwords, newest first, rebuilt from the sealed history on each call. The
+   * history is only parsed from its saved form on the first call, and versions past their
+   * age are dropped then. The current password they are rebuilt from is decrypted into a
+   * copy that is wiped afterwards, so a sealed entry stays sealed.
+   *
+   * @return old passwords with when they were replaced, empty if there are none
+   */
+  public List<PasswordVersion> getPasswordHistory() {
+    if (passwordHistory == null) {
+      return new ArrayList<>();
+    }
+    passwordHistory.trim(System.currentTimeMillis());
+    char[] current = copyPassword();
+    try {
+      return passwordHistory.versions(current, sealer);
+    } finally {
+      if (current != null) {
+        Arrays.fill(current, '\0');
+      }
+    }
+  }
+
+  /**
+   * Counts password changes since the entry was loaded, so callers caching something derived
+   * from the password know when to redo it.
+   *
+   * @return revision, bumped by every {@link #setPassword(char[])}
+   */
+  public int getPasswordRevision() {
+    return passwordRevision;
   }
 
   public String getUrl() {
     return url;
   }
 
+  /**
+   * Host the url points at, normalised for the vault's site lookups.
+   *
+   * @return lower case ASCII host, null if the url has none
+   */
+  public String getHost() {
+    String current = url;
+    Host cached = host;
+    // Compared by reference, setting any url replaces the string
+    if (cached == null || cached.url != current) {
+      cached = new Host(current, HostName.of(current));
+      host = cached;
+    }
+    return cached.name;
+  }
+
   /**
    * Set url and update updatedAt timestamp.
    *
    * @param url being set
    */
   public void setUrl(String url) {
-    this.url = url;
-    this.updatedAt = LocalDateTime.now();
+    this.url = pooled(url);
+    changed();
   }
 
   public String getNotes() {
+    openSecrets();
     return notes;
   }
 
@@ -138,8 +248,11 @@ public class PasswordEntry {
    * @param notes being set
    */
   public void setNotes(String notes) {
+    openSecrets();
     this.notes = notes;
-    this.updatedAt = LocalDateTime.now();
+    this.noteGrams = noteGramsOf(notes);
+    this.sealedSecrets = null;
+    changed();
   }
 
   public String getCategory() {
@@ -152,32 +265,126 @@ public class PasswordEntry {
    * @param category being set
    */
   public void setCategory(String category) {
-    this.category = category;
-    this.updatedAt = LocalDateTime.now();
+    this.category = pooled(category);
+    changed();
+  }
+
+  /**
+   * Tags on this entry, such as env:prod or team:payments.
+   *
+   * @return sorted lower case tags, empty if there are none
+   */
+  public List<String> getTags() {
+    return tags == null ? List.of() : tags;
+  }
+
+  /**
+   * Replaces the tags, update updatedAt timestamp. Tags are trimmed and lower cased, blank
+   * and repeated ones are dropped.
+   *
+   * @param tags new tags, null for none
+   */
+  public void setTags(Collection<String> tags) {
+    this.tags = tags == null ? null : normalizeTags(tags);
+    changed();
+  }
+
+  /**
+   * Adds one tag, update updatedAt timestamp.
+   *
+   * @param tag to add
+   */
+  public void addTag(String tag) {
+    List<String> updated = new ArrayList<>(getTags());
+    updated.add(tag);
+    setTags(updated);
+  }
+
+  /**
+   * Removes one tag, update updatedAt timestamp if it was there.
+   *
+   * @param tag to remove
+   * @return true if the entry had the tag
+   */
+  public boolean removeTag(String tag) {
+    List<String> updated = new ArrayList<>(getTags());
+    if (!updated.remove(normalizeTag(tag))) {
+      return false;
+    }
+    setTags(updated);
+    return true;
+  }
+
+  /**
+   * Puts a tag in the form entries store it in.
+   *
+   * @param tag as typed
+   * @return trimmed lower case tag, null if blank
+   */
+  static String normalizeTag(String tag) {
+    if (tag == null || tag.trim().isEmpty()) {
+      return null;
+    }
+    return tag.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private List<String> normalizeTags(Collection<String> raw) {
+    TreeSet<String> sorted = new TreeSet<>();
+    for (String tag : raw) {
+      String normalized = normalizeTag(tag);
+      if (normalized != null) {
+        sorted.add(pooled(normalized));
+      }
+    }
+    return sorted.isEmpty() ? null : List.copyOf(sorted);
   }
 
   public LocalDateTime getCreatedAt() {
-    return createdAt;
+    return toLocal(createdAt);
   }
 
   public String getCreatedAtFormatted() {
-    return createdAt.format(DATE_FORMATTER);
+    return getCreatedAt().format(DATE_FORMATTER);
   }
 
   public void setCreatedAt(LocalDateTime createdAt) {
-    this.createdAt = createdAt;
+    this.createdAt = toMillis(createdAt);
   }
 
   public LocalDateTime getUpdatedAt() {
-    return updatedAt;
+    return toLocal(updatedAt);
   }
 
   public String getUpdatedAtFormatted() {
-    return updatedAt.format(DATE_FORMATTER);
+    return getUpdatedAt().format(DATE_FORMATTER);
   }
 
+  /**
+   * Set updatedAt, the owning vault re-orders its modified index.
+   *
+   * @param updatedAt local time of the last change
+   */
   public void setUpdatedAt(LocalDateTime updatedAt) {
-    this.updatedAt = updatedAt;
+    this.updatedAt = toMillis(updatedAt);
+    if (vault != null) {
+      vault.entryChanged(this);
+    }
+  }
+
+  long getUpdatedAtMillis() {
+    return updatedAt;
+  }
+
+  long getCreatedAtMillis() {
+    return createdAt;
+  }
+
+  static long toMillis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  static LocalDateTime toLocal(long millis) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
   }
 
   public static DateTimeFormatter getDateFormatter() {
@@ -197,23 +404,417 @@ public class PasswordEntry {
     }
   }
 
+  /**
+   * Updates the timestamp and lets the owning vault re-index this entry.
+   */
+  private void changed() {
+    this.updatedAt = System.currentTimeMillis();
+    this.searchKey = null;
+    this.fuzzyKey = null;
+    if (vault != null) {
+      vault.entryChanged(this);
+    }
+  }
+
+  /**
+   * Records the vault holding this entry and its position in it, null when removed.
+   *
+   * @param vault that now holds the entry
+   * @param sequence insertion position within the vault
+   */
+  void setVault(Vault vault, long sequence) {
+    this.vault = vault;
+    this.sequence = sequence;
+    if (vault != null) {
+      username = vault.intern(username);
+      url = vault.intern(url);
+      category = vault.intern(category);
+      if (tags != null) {
+        // Loaded tags may come from an older or hand edited file
+        tags = normalizeTags(tags);
+      }
+    }
+  }
+
+  /**
+   * A url and the host worked out from it, dropped once the url changes.
+   */
+  private static final class Host {
+    private final String url;
+    private final String name;
+
+    Host(String url, String name) {
+      this.url = url;
+      this.name = name;
+    }
+  }
+
+  /**
+   * Swaps a value often shared between entries for the vault's pooled copy.
+   */
+  private String pooled(String value) {
+    Vault owner = vault;
+    return owner == null ? value : owner.intern(value);
+  }
+
+  Vault getVault() {
+    return vault;
+  }
+
+  long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Case folded title, username, url and category, built on first use and cached until a
+   * setter changes one of them. Notes are sealed with the password, so they are searched
+   * through {@link #getNoteGrams()} instead.
+   *
+   * @return fields folded by {@link SearchMatcher#fold(String)}, separated so a query can't
+   *     match across two of them
+   */
+  String getSearchKey() {
+    String key = searchKey;
+    if (key == null) {
+      StringBuilder builder = new StringBuilder();
+      for (String field : new String[] {title, username, url, category}) {
+        if (field != null) {
+          builder.append(SearchMatcher.fold(field));
+        }
+        builder.append(SearchMatcher.FIELD_SEPARATOR);
+      }
+      key = builder.toString();
+      searchKey = key;
+    }
+    return key;
+  }
+
+  /**
+   * Trigrams of the folded notes, padded with a field separator at each end so notes shorter
+   * than a trigram still have one and every one or two character query inside them falls
+   * within a trigram. Worked out when notes are set, entries saved before notes had trigrams
+   * open theirs once the vault is unlocked.
+   *
+   * @return sorted trigrams, shared so callers must not modify them, empty for no notes or
+   *     while they can't be opened
+   */
+  long[] getNoteGrams() {
+    long[] grams = noteGrams;
+    if (grams == null) {
+      if (sealedSecrets != null && sealer == null) {
+        return NO_GRAMS;
+      }
+      grams = noteGramsOf(currentNotes());
+      noteGrams = grams;
+    }
+    return grams;
+  }
+
+  /**
+   * Whether the notes were given trigrams, false for entries loaded from an older file that
+   * the vault must index again once it can open them.
+   *
+   * @return true if the note trigrams are known
+   */
+  boolean hasNoteGrams() {
+    return noteGrams != null;
+  }
+
+  /**
+   * Checks the notes for a folded query. Queries up to a trigram long are answered from the
+   * trigrams alone. A longer query needs all its trigrams in the notes, then the notes are
+   * read to rule out trigrams that aren't next to each other, from a temporary copy if they
+   * are sealed so the entry stays closed.
+   *
+   * @param query folded search text
+   * @param queryGrams trigrams of the query
+   * @return true if the notes contain the query
+   */
+  boolean notesContain(String query, long[] queryGrams) {
+    long[] grams = getNoteGrams();
+    if (grams.length == 0) {
+      return false;
+    }
+    if (query.length() <= TrigramIndex.GRAM_LENGTH) {
+      for (long gram : grams) {
+        if (TrigramIndex.gramContains(gram, query)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (long gram : queryGrams) {
+      if (Arrays.binarySearch(grams, gram) < 0) {
+        return false;
+      }
+    }
+    String text = currentNotes();
+    // While locked the trigrams are all there is to go on
+    return text == null || SearchMatcher.fold(text).contains(query);
+  }
+
+  private static long[] noteGramsOf(String notes) {
+    if (notes == null || notes.isEmpty()) {
+      return NO_GRAMS;
+    }
+    return TrigramIndex.grams(SearchMatcher.FIELD_SEPARATOR + SearchMatcher.fold(notes)
+        + SearchMatcher.FIELD_SEPARATOR);
+  }
+
+  /**
+   * Case folded title, username and url for fuzzy search, cached like the search key.
+   *
+   * @return folded fields separated by {@link SearchMatcher#FIELD_SEPARATOR}, shared so
+   *     callers must not modify it
+   */
+  char[] getFuzzyKey() {
+    return fuzzyKey().text;
+  }
+
+  /**
+   * Set of characters in the fuzzy key, one bit per character class.
+   *
+   * @return signature bits
+   */
+  long getFuzzySignature() {
+    return fuzzyKey().signature;
+  }
+
+  private FuzzyKey fuzzyKey() {
+    FuzzyKey key = fuzzyKey;
+    if (key == null) {
+      key = new FuzzyKey(title, username, url);
+      fuzzyKey = key;
+    }
+    return key;
+  }
+
+  /**
+   * Folded fuzzy search fields with their signature, immutable so parallel searches can
+   * share it safely.
+   */
+  private static final class FuzzyKey {
+    private final char[] text;
+    private final long signature;
+
+    FuzzyKey(String... fields) {
+      StringBuilder builder = new StringBuilder();
+      for (String field : fields) {
+        if (field != null) {
+          builder.append(SearchMatcher.fold(field));
+        }
+        builder.append(SearchMatcher.FIELD_SEPARATOR);
+      }
+      long bits = 0;
+      for (int i = 0; i < builder.length(); i++) {
+        bits |= FuzzyMatcher.signatureBit(builder.charAt(i));
+      }
+      this.text = builder.toString().toCharArray();
+      this.signature = bits;
+    }
+  }
+
+  /**
+   * Checks if the password and notes are decrypted in memory.
+   *
+   * @return true if the secrets are open or have never been sealed
+   */
+  public boolean isSecretsOpen() {
+    return secretsOpen;
+  }
+
+  /**
+   * Attaches the sealer of an unlocked vault so sealed secrets can be opened on demand.
+   *
+   * @param sealer for the vault this entry belongs to
+   */
+  void attachSealer(SecretSealer sealer) {
+    this.sealer = sealer;
+    // Entries read from storage only carry the sealed copy until they are opened
+    secretsOpen = sealedSecrets == null || password != null || notes != null;
+  }
+
+  /**
+   * Seals the password and notes if they changed since the last seal, and attaches the sealer.
+   *
+   * @param sealer for the vault this entry belongs to
+   */
+  void sealSecrets(SecretSealer sealer) {
+    this.sealer = sealer;
+    // Saved alongside, so the notes can be searched after they are sealed
+    getNoteGrams();
+    // A history still in its saved form has nothing new to seal, so it is left unread
+    if (passwordHistory != null && passwordHistory.isLoaded()) {
+      passwordHistory.trim(System.currentTimeMillis());
+      passwordHistory.seal(sealer);
+      if (passwordHistory.isEmpty()) {
+        passwordHistory = null;
+      }
+    }
+    if (sealedSecrets != null) {
+      return;
+    }
+    byte[] plaintext = encodeSecrets(password, notes);
+    try {
+      sealedSecrets = sealer.seal(plaintext);
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+  }
+
+  /**
+   * Wipes the decrypted password and notes, sealing them first if they changed since the last
+   * seal, so they are only opened again when next asked for. Arrays returned by
+   * {@link #getPassword()} before this call are cleared. Does nothing until a vault key is
+   * attached, since the secrets couldn't be opened again.
+   *
+   * @return true if the secrets are sealed and closed afterwards
+   */
+  public boolean closeSecrets() {
+    if (sealer == null) {
+      return false;
+    }
+    if (!secretsOpen) {
+      return true;
+    }
+    sealSecrets(sealer);
+    if (password != null) {
+      Arrays.fill(password, '\0');
+      password = null;
+    }
+    notes = null;
+    secretsOpen = false;
+    return true;
+  }
+
+  /**
+   * Decrypts the secret tier the first time it is needed.
+   */
+  private void openSecrets() {
+    if (secretsOpen) {
+      return;
+    }
+    if (sealer == null) {
+      throw new IllegalStateException("Entry secrets are sealed and the vault is locked");
+    }
+    byte[] plaintext = sealer.open(sealedSecrets);
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+      password = decodePassword(buffer);
+      notes = decodeNotes(buffer);
+      secretsOpen = true;
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+  }
+
+  /**
+   * Copy of the password for a one off check such as an audit. A sealed password is opened
+   * into the copy alone, the entry stays closed and the vault isn't touched.
+   *
+   * @return new array the caller should clear after use, null if there is no password
+   * @throws IllegalStateException if the password is sealed and the vault is locked
+   */
+  public char[] copyPassword() {
+    if (secretsOpen) {
+      char[] current = password;
+      return current == null ? null : current.clone();
+    }
+    if (sealer == null) {
+      throw new IllegalStateException("Entry secrets are sealed and the vault is locked");
+    }
+    byte[] plaintext = sealer.open(sealedSecrets);
+    try {
+      return decodePassword(ByteBuffer.wrap(plaintext));
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+  }
+
+  /**
+   * The current notes, opened into a temporary copy if they are sealed so the entry stays
+   * closed.
+   *
+   * @return notes, null if there are none or they are sealed and the vault is locked
+   */
+  private String currentNotes() {
+    if (sealedSecrets == null) {
+      return notes;
+    }
+    if (sealer == null) {
+      return null;
+    }
+    byte[] plaintext = sealer.open(sealedSecrets);
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+      int passwordLength = buffer.getInt();
+      buffer.position(buffer.position() + Math.max(passwordLength, 0));
+      return decodeNotes(buffer);
+    } finally {
+      Arrays.fill(plaintext, (byte) 0);
+    }
+  }
+
+  /**
+   * Reads the length prefixed notes at the buffer's position.
+   */
+  private static String decodeNotes(ByteBuffer buffer) {
+    int notesLength = buffer.getInt();
+    if (notesLength < 0) {
+      return null;
+    }
+    return new String(buffer.array(), buffer.position(), notesLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the length prefixed password at the buffer's position and moves past it.
+   */
+  private static char[] decodePassword(ByteBuffer buffer) {
+    int passwordLength = buffer.getInt();
+    if (passwordLength < 0) {
+      return null;
+    }
+    CharBuffer chars = StandardCharsets.UTF_8.decode(buffer.slice().limit(passwordLength));
+    char[] decoded = Arrays.copyOf(chars.array(), chars.limit());
+    Arrays.fill(chars.array(), '\0');
+    buffer.position(buffer.position() + passwordLength);
+    return decoded;
+  }
+
+  /**
+   * Packs password and notes as length prefixed UTF-8, a length of -1 means null.
+   */
+  private static byte[] encodeSecrets(char[] password, String notes) {
+    ByteBuffer passwordBytes = password == null ? null
+        : StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+    byte[] notesBytes = notes == null ? null : notes.getBytes(StandardCharsets.UTF_8);
+    int passwordLength = passwordBytes == null ? 0 : passwordBytes.remaining();
+    int notesLength = notesBytes == null ? 0 : notesBytes.length;
+
+    ByteBuffer buffer = ByteBuffer.allocate(8 + passwordLength + notesLength);
+    if (passwordBytes == null) {
+      buffer.putInt(-1);
+    } else {
+      buffer.putInt(passwordLength).put(passwordBytes);
+      Arrays.fill(passwordBytes.array(), (byte) 0);
+    }
+    if (notesBytes == null) {
+      buffer.putInt(-1);
+    } else {
+      buffer.putInt(notesLength).put(notesBytes);
+    }
+    return buffer.array();
+  }
+
   /**
    * Checks if this entry matches the search text.
-   * Searches in title, username, URL, and notes.
+   * Searches in title, username, URL, category and notes, sealed notes stay sealed.
    *
    * @param searchText text to search for
    * @return true if any field contains the search text
    */
   public boolean matchesSearch(String searchText) {
-    if (searchText == null || searchText.trim().isEmpty()) {
-      return true;
-    }
-    String searchLower = searchText.toLowerCase();
-    return (title != null && title.toLowerCase().contains(searchLower))
-        || (username != null && username.toLowerCase().contains(searchLower))
-        || (url != null && url.toLowerCase().contains(searchLower))
-        || (notes != null && notes.toLowerCase().contains(searchLower))
-        || (category != null && category.toLowerCase().contains(searchLower));
+    return SearchMatcher.compile(searchText).matches(this);
   }
 
 
@@ -0,0 +1,314 @@
+package com.mwatson.passwordvault.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Previous passwords of one entry, newest first, stored as reverse deltas.
+ *
+ * <p>Each record holds only what differs between a password and the one that replaced it:
+ * the shared prefix and suffix lengths and the old middle. Rebuilding a version walks the
+ * chain back from the current password, so adding a version never touches older records.
+ * Records are sealed one by one when the vault is saved and only opened when the history is
+ * read, the replacement times stay in the clear so trimming by age needs no key.
+ *
+ * <p>The history is saved as a single string and only split into records the first time it
+ * is read or changed, so unlocking a vault parses none of it. An entry's history that isn't
+ * touched keeps its saved string, and versions past {@link #MAX_AGE} are dropped the next time
+ * it is.
+ */
+@JsonAdapter(PasswordHistory.JsonForm.class)
+class PasswordHistory {
+  /** Most versions kept per entry. */
+  static final int MAX_VERSIONS = 10;
+  /** Versions replaced longer ago than this are dropped. */
+  static final Duration MAX_AGE = Duration.ofDays(365);
+
+  // Newest first, null until the saved form is first needed
+  private List<Record> records;
+  // As saved, a comma separated list of replacement time:sealed delta
+  private String saved;
+
+  PasswordHistory() {
+    this.records = new ArrayList<>();
+  }
+
+  private PasswordHistory(String saved) {
+    this.saved = saved;
+  }
+
+  /**
+   * Records the password being replaced, then trims the history.
+   *
+   * @param newer password taking over
+   * @param older password being replaced, null if there was none
+   * @param replacedAt epoch millis of the change
+   */
+  void add(char[] newer, char[] older, long replacedAt) {
+    records().add(0, new Record(replacedAt, encodeDelta(newer, older)));
+    trim(replacedAt);
+  }
+
+  /**
+   * Drops versions beyond {@link #MAX_VERSIONS} or older than {@link #MAX_AGE}. Only the
+   * tail of the chain is ever dropped, so the remaining deltas stay valid.
+   *
+   * @param now epoch millis to measure age from
+   */
+  void trim(long now) {
+    List<Record> records = records();
+    long cutoff = now - MAX_AGE.toMillis();
+    int keep = Math.min(records.size(), MAX_VERSIONS);
+    while (keep > 0 && records.get(keep - 1).replacedAt < cutoff) {
+      keep--;
+    }
+    while (records.size() > keep) {
+      records.remove(records.size() - 1).wipe();
+    }
+  }
+
+  boolean isEmpty() {
+    return records().isEmpty();
+  }
+
+  int size() {
+    return records().size();
+  }
+
+  /**
+   * Whether the saved form has been split into records yet.
+   *
+   * @return false until the history is first read or changed after loading
+   */
+  boolean isLoaded() {
+    return records != null;
+  }
+
+  /**
+   * Seals the records added since the last save.
+   *
+   * @param sealer for the vault the entry belongs to
+   */
+  void seal(SecretSealer sealer) {
+    for (Record record : records()) {
+      if (record.sealed == null) {
+        record.sealed = sealer.seal(record.delta);
+        record.wipe();
+      }
+    }
+  }
+
+  /**
+   * Rebuilds every stored version from the current password, opening sealed records.
+   *
+   * @param current password of the entry
+   * @param sealer to open sealed records, may be null if nothing was sealed yet
+   * @return versions newest first
+   */
+  List<PasswordVersion> versions(char[] current, SecretSealer sealer) {
+    List<Record> records = records();
+    List<PasswordVersion> versions = new ArrayList<>(records.size());
+    char[] newer = current;
+    for (Record record : records) {
+      byte[] delta;
+      if (record.delta != null) {
+        delta = record.delta.clone();
+      } else if (sealer != null) {
+        delta = sealer.open(record.sealed);
+      } else {
+        throw new IllegalStateException("Password history is sealed and the vault is locked");
+      }
+      try {
+        newer = applyDelta(newer, delta);
+      } finally {
+        Arrays.fill(delta, (byte) 0);
+      }
+      versions.add(new PasswordVersion(newer, record.replacedAt));
+    }
+    return versions;
+  }
+
+  private List<Record> records() {
+    List<Record> loaded = records;
+    if (loaded == null) {
+      loaded = parse(saved);
+      records = loaded;
+      saved = null;
+    }
+    return loaded;
+  }
+
+  private static List<Record> parse(String saved) {
+    List<Record> parsed = new ArrayList<>();
+    if (saved.isEmpty()) {
+      return parsed;
+    }
+    for (String item : saved.split(",")) {
+      int colon = item.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalStateException("Password history can't be read");
+      }
+      Record record = new Record(Long.parseLong(item.substring(0, colon)), null);
+      record.sealed = colon == item.length() - 1 ? null : item.substring(colon + 1);
+      parsed.add(record);
+    }
+    return parsed;
+  }
+
+  /**
+   * Encodes older as prefix length, suffix length and UTF-8 middle relative to newer,
+   * a prefix of -1 means older was null.
+   */
+  static byte[] encodeDelta(char[] newer, char[] older) {
+    if (older == null) {
+      return ByteBuffer.allocate(8).putInt(-1).putInt(0).array();
+    }
+    char[] base = newer == null ? new char[0] : newer;
+    int limit = Math.min(base.length, older.length);
+    int prefix = 0;
+    while (prefix < limit && base[prefix] == older[prefix]) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < limit - prefix
+        && base[base.length - 1 - suffix] == older[older.length - 1 - suffix]) {
+      suffix++;
+    }
+    ByteBuffer middle = StandardCharsets.UTF_8.encode(
+        CharBuffer.wrap(older, prefix, older.length - prefix - suffix));
+    ByteBuffer delta = ByteBuffer.allocate(8 + middle.remaining());
+    delta.putInt(prefix).putInt(suffix).put(middle);
+    Arrays.fill(middle.array(), (byte) 0);
+    return delta.array();
+  }
+
+  /**
+   * Rebuilds the older password from the newer one and a delta.
+   */
+  static char[] applyDelta(char[] newer, byte[] delta) {
+    ByteBuffer buffer = ByteBuffer.wrap(delta);
+    int prefix = buffer.getInt();
+    int suffix = buffer.getInt();
+    if (prefix < 0) {
+      return null;
+    }
+    char[] base = newer == null ? new char[0] : newer;
+    CharBuffer middle = StandardCharsets.UTF_8.decode(buffer);
+    char[] older = new char[prefix + middle.remaining() + suffix];
+    System.arraycopy(base, 0, older, 0, prefix);
+    middle.get(older, prefix, middle.remaining());
+    System.arraycopy(base, base.length - suffix, older, older.length - suffix, suffix);
+    Arrays.fill(middle.array(), '\0');
+    return older;
+  }
+
+  /**
+   * One stored version, the delta is only held in the clear until the next save.
+   */
+  private static final class Record {
+    private final long replacedAt;
+    private String sealed;
+    private transient byte[] delta;
+
+    Record(long replacedAt, byte[] delta) {
+      this.replacedAt = replacedAt;
+      this.delta = delta;
+    }
+
+    void wipe() {
+      if (delta != null) {
+        Arrays.fill(delta, (byte) 0);
+        delta = null;
+      }
+    }
+  }
+
+  /**
+   * Writes the history as one string, which is kept as read until the history is needed.
+   * Files from before that hold the records as objects, those are read straight away.
+   */
+  static final class JsonForm extends TypeAdapter<PasswordHistory> {
+    @Override
+    public void write(JsonWriter out, PasswordHistory history) throws IOException {
+      if (history == null) {
+        out.nullValue();
+        return;
+      }
+      if (!history.isLoaded()) {
+        out.value(history.saved);
+        return;
+      }
+      StringBuilder text = new StringBuilder();
+      for (Record record : history.records) {
+        if (text.length() > 0) {
+          text.append(',');
+        }
+        // Base64 holds neither separator
+        text.append(record.replacedAt).append(':');
+        if (record.sealed != null) {
+          text.append(record.sealed);
+        }
+      }
+      out.value(text.toString());
+    }
+
+    @Override
+    public PasswordHistory read(JsonReader in) throws IOException {
+      JsonToken token = in.peek();
+      if (token == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      if (token == JsonToken.STRING) {
+        return new PasswordHistory(in.nextString());
+      }
+      PasswordHistory history = new PasswordHistory();
+      in.beginObject();
+      while (in.hasNext()) {
+        if (!"records".equals(in.nextName())) {
+          in.skipValue();
+          continue;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+          history.records.add(readRecord(in));
+        }
+        in.endArray();
+      }
+      in.endObject();
+      return history;
+    }
+
+    private static Record readRecord(JsonReader in) throws IOException {
+      long replacedAt = 0;
+      String sealed = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if ("replacedAt".equals(name)) {
+          replacedAt = in.nextLong();
+        } else if ("sealed".equals(name)) {
+          sealed = in.nextString();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      Record record = new Record(replacedAt, null);
+      record.sealed = sealed;
+      return record;
+    }
+  }
+}
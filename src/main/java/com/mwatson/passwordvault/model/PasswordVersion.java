@@ -0,0 +1,34 @@
+package com.mwatson.passwordvault.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A previous password of an entry, as returned by {@link PasswordEntry#getPasswordHistory()}.
+ */
+public final class PasswordVersion {
+  private final char[] password;
+  private final long replacedAt;
+
+  PasswordVersion(char[] password, long replacedAt) {
+    this.password = password;
+    this.replacedAt = replacedAt;
+  }
+
+  /**
+   * Get password.
+   *
+   * @return the old password, null if the entry had none
+   */
+  public char[] getPassword() {
+    return password;
+  }
+
+  /**
+   * When this password stopped being the current one.
+   *
+   * @return local time it was replaced
+   */
+  public LocalDateTime getReplacedAt() {
+    return PasswordEntry.toLocal(replacedAt);
+  }
+}
@@ -0,0 +1,403 @@
+package com.mwatson.passwordvault.model;
+
+import com.mwatson.passwordvault.model.SearchQuery.And;
+import com.mwatson.passwordvault.model.SearchQuery.Field;
+import com.mwatson.passwordvault.model.SearchQuery.FieldTerm;
+import com.mwatson.passwordvault.model.SearchQuery.Node;
+import com.mwatson.passwordvault.model.SearchQuery.Not;
+import com.mwatson.passwordvault.model.SearchQuery.Or;
+import com.mwatson.passwordvault.model.SearchQuery.Text;
+import com.mwatson.passwordvault.model.SearchQuery.TimeTerm;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Chooses how to run a {@link SearchQuery}. Each term every match must pass is offered to the
+ * id, category, host, tag, modified and trigram indexes, the one giving the fewest candidates is
+ * used and only the remaining terms are checked, on those candidates alone. Without a usable
+ * index the whole vault is scanned. Index sizes are read as they are now, so the vault plans
+ * and runs a query inside one read.
+ */
+final class QueryPlanner {
+  private final Map<EntryId, PasswordEntry> entries;
+  private final VaultSnapshot snapshot;
+  private final CategoryIndex categoryIndex;
+  private final HostIndex hostIndex;
+  private final TagIndex tagIndex;
+  private final ModifiedIndex modifiedIndex;
+  private final TrigramIndex searchIndex;
+
+  QueryPlanner(Map<EntryId, PasswordEntry> entries, VaultSnapshot snapshot,
+      CategoryIndex categoryIndex, HostIndex hostIndex, TagIndex tagIndex,
+      ModifiedIndex modifiedIndex, TrigramIndex searchIndex) {
+    this.entries = entries;
+    this.snapshot = snapshot;
+    this.categoryIndex = categoryIndex;
+    this.hostIndex = hostIndex;
+    this.tagIndex = tagIndex;
+    this.modifiedIndex = modifiedIndex;
+    this.searchIndex = searchIndex;
+  }
+
+  /**
+   * Plans a query.
+   *
+   * @param query to run
+   * @return the chosen plan
+   */
+  Plan plan(SearchQuery query) {
+    Node root = query.getRoot();
+    List<Node> terms = root instanceof And ? ((And) root).terms : List.of(root);
+    List<Access> options = new ArrayList<>();
+
+    // Exact sizes first, they are cheap to read and bound the costlier ones below
+    Access tags = tagAccess(terms);
+    if (tags != null) {
+      options.add(tags);
+    }
+    for (Node term : terms) {
+      if (term instanceof FieldTerm) {
+        Access access = fieldAccess((FieldTerm) term);
+        if (access != null) {
+          options.add(access);
+        }
+      }
+    }
+    Access best = null;
+    for (Access option : options) {
+      if (best == null || option.estimate < best.estimate) {
+        best = option;
+      }
+    }
+    for (Node term : terms) {
+      if (term instanceof TimeTerm || term instanceof Text || term instanceof Or) {
+        Access access = access(term, bound(best));
+        if (access != null) {
+          options.add(access);
+          if (!access.capped && (best == null || access.estimate < best.estimate)) {
+            best = access;
+          }
+        }
+      }
+    }
+
+    List<Node> filter = new ArrayList<>(terms);
+    List<Access> skipped = new ArrayList<>(options);
+    if (best != null) {
+      filter.removeAll(best.covers);
+      skipped.remove(best);
+    }
+    return new Plan(query, best, filter, skipped, snapshot.size());
+  }
+
+  private int bound(Access best) {
+    return best == null ? snapshot.size() : best.estimate;
+  }
+
+  /**
+   * An index lookup giving exactly the entries matching one term.
+   *
+   * @return the lookup, null if no index can answer the term
+   */
+  private Access access(Node term, int bound) {
+    if (term instanceof FieldTerm) {
+      FieldTerm field = (FieldTerm) term;
+      return field.field == Field.TAG ? tagAccess(List.of(term)) : fieldAccess(field);
+    }
+    if (term instanceof Not) {
+      return tagAccess(List.of(term));
+    }
+    if (term instanceof TimeTerm) {
+      return timeAccess((TimeTerm) term, bound);
+    }
+    if (term instanceof Text) {
+      return textAccess((Text) term, bound);
+    }
+    if (term instanceof Or) {
+      return unionAccess((Or) term, bound);
+    }
+    return null;
+  }
+
+  private Access fieldAccess(FieldTerm term) {
+    if (term.field == Field.ID) {
+      // Ids print in lower case, ids from older files that aren't UUIDs are kept as stored
+      PasswordEntry entry = entries.get(EntryId.parse(term.folded));
+      if (entry == null) {
+        entry = entries.get(EntryId.parse(term.value));
+      }
+      List<PasswordEntry> found = entry == null ? List.of() : List.of(entry);
+      return new Access("id index", term, found.size(), false, () -> found);
+    }
+    if (term.field == Field.SITE) {
+      return new Access("host index", term, hostIndex.count(term.value, true), false,
+          () -> hostIndex.under(term.value, true));
+    }
+    String domain = subdomainPattern(term);
+    if (domain != null) {
+      return new Access("host index", term, hostIndex.count(domain, false), false,
+          () -> hostIndex.under(domain, false));
+    }
+    if (term.field != Field.CATEGORY) {
+      return null;
+    }
+    // Categories are few next to entries, so every name is checked against the term
+    List<String> names = new ArrayList<>();
+    int count = 0;
+    for (String name : categoryIndex.categories()) {
+      if (term.matchesText(name)) {
+        names.add(name);
+        count += categoryIndex.count(name);
+      }
+    }
+    return new Access("category index", term, count, false, () -> {
+      if (names.size() == 1) {
+        return categoryIndex.entries(names.get(0));
+      }
+      List<PasswordEntry> found = new ArrayList<>();
+      for (String name : names) {
+        found.addAll(categoryIndex.entries(name));
+      }
+      found.sort(Vault.BY_POSITION);
+      return found;
+    });
+  }
+
+  /**
+   * The domain of a url pattern like *.example.com, which matches exactly the hosts below
+   * that domain.
+   *
+   * @return the domain, null for any other term
+   */
+  private static String subdomainPattern(FieldTerm term) {
+    if (!term.isHostPattern() || !term.value.startsWith("*.")) {
+      return null;
+    }
+    String domain = term.value.substring(2);
+    boolean plain = domain.indexOf('*') < 0 && domain.indexOf('?') < 0;
+    return plain && domain.equals(HostName.of(domain)) ? domain : null;
+  }
+
+  /**
+   * One bitmap lookup for all the tag and negated tag terms.
+   */
+  private Access tagAccess(List<Node> terms) {
+    List<Node> covers = new ArrayList<>();
+    List<String> allOf = new ArrayList<>();
+    List<String> noneOf = new ArrayList<>();
+    for (Node term : terms) {
+      if (isTag(term)) {
+        covers.add(term);
+        allOf.add(((FieldTerm) term).value);
+      } else if (term instanceof Not && isTag(((Not) term).term)) {
+        covers.add(term);
+        noneOf.add(((FieldTerm) ((Not) term).term).value);
+      }
+    }
+    if (covers.isEmpty()) {
+      return null;
+    }
+    TagFilter filter = TagFilter.create().allOf(allOf.toArray(new String[0]))
+        .noneOf(noneOf.toArray(new String[0]));
+    CompressedBitmap positions = tagIndex.find(filter);
+    return new Access(label("tag index", covers), covers, positions.cardinality(), false, () -> {
+      List<PasswordEntry> found = new ArrayList<>(positions.cardinality());
+      positions.forEach(position -> found.add(snapshot.bySequence(position)));
+      return found;
+    });
+  }
+
+  private static boolean isTag(Node term) {
+    return term instanceof FieldTerm && ((FieldTerm) term).field == Field.TAG;
+  }
+
+  /**
+   * Range of the modified index, only sized up to the bound since it is walked to count it.
+   */
+  private Access timeAccess(TimeTerm term, int bound) {
+    if (term.created) {
+      return null;
+    }
+    int count = modifiedIndex.count(term.cutoff, term.after, bound);
+    return new Access("modified index", term, count, count >= bound, () -> {
+      List<PasswordEntry> found = term.after ? modifiedIndex.since(term.cutoff)
+          : modifiedIndex.before(term.cutoff);
+      found.sort(Vault.BY_POSITION);
+      return found;
+    });
+  }
+
+  /**
+   * Trigram lookup, given up when the rarest trigram has more entries than the bound or
+   * than a scan would check cheaply.
+   */
+  private Access textAccess(Text term, int bound) {
+    SearchMatcher matcher = term.matcher;
+    if (matcher.getQuery().length() < TrigramIndex.GRAM_LENGTH) {
+      return null;
+    }
+    int limit = Math.min(bound - 1, snapshot.size() / Vault.INDEX_SELECTIVITY);
+    List<PasswordEntry> found = limit < 0 ? null
+        : searchIndex.search(matcher, Vault.BY_POSITION, limit);
+    if (found == null) {
+      return new Access("trigram index", term, Math.max(limit, 0), true, null);
+    }
+    return new Access("trigram index", term, found.size(), false, () -> found);
+  }
+
+  /**
+   * Lookups for each side of an OR merged, usable only if every side has one.
+   */
+  private Access unionAccess(Or term, int bound) {
+    List<Access> parts = new ArrayList<>();
+    int count = 0;
+    for (Node part : term.terms) {
+      Access access = access(part, bound - count);
+      if (access == null) {
+        return null;
+      }
+      count += access.estimate;
+      if (access.capped || count >= bound) {
+        return new Access("union " + term, List.of(term), bound, true, null);
+      }
+      parts.add(access);
+    }
+    List<String> labels = new ArrayList<>();
+    for (Access part : parts) {
+      labels.add(part.label);
+    }
+    String label = "union of " + String.join(", ", labels);
+    return new Access(label, List.of(term), count, false, () -> merge(parts));
+  }
+
+  /**
+   * Entries from several lookups in vault order, an entry found by more than one appears
+   * once.
+   */
+  private static List<PasswordEntry> merge(List<Access> parts) {
+    List<PasswordEntry> found = new ArrayList<>();
+    for (Access part : parts) {
+      found.addAll(part.fetch.get());
+    }
+    found.sort(Vault.BY_POSITION);
+    List<PasswordEntry> distinct = new ArrayList<>(found.size());
+    for (PasswordEntry entry : found) {
+      if (distinct.isEmpty() || distinct.get(distinct.size() - 1) != entry) {
+        distinct.add(entry);
+      }
+    }
+    return distinct;
+  }
+
+  private static String label(String index, List<Node> terms) {
+    List<String> parts = new ArrayList<>();
+    for (Node term : terms) {
+      parts.add(term.toString());
+    }
+    return index + " (" + String.join(" ", parts) + ")";
+  }
+
+  /**
+   * A way to get the entries matching some terms from an index.
+   */
+  private static final class Access {
+    private final String label;
+    private final List<Node> covers;
+    private final int estimate;
+    // True when sizing stopped early, there are at least estimate entries
+    private final boolean capped;
+    private final Supplier<List<PasswordEntry>> fetch;
+
+    Access(String index, Node term, int estimate, boolean capped,
+        Supplier<List<PasswordEntry>> fetch) {
+      this(label(index, List.of(term)), List.of(term), estimate, capped, fetch);
+    }
+
+    Access(String label, List<Node> covers, int estimate, boolean capped,
+        Supplier<List<PasswordEntry>> fetch) {
+      this.label = label;
+      this.covers = covers;
+      this.estimate = estimate;
+      this.capped = capped;
+      this.fetch = fetch;
+    }
+
+    String describe() {
+      return label + ", " + (capped ? "at least " : "") + estimate + " entries";
+    }
+  }
+
+  /**
+   * A planned query, an index lookup or a full scan and the terms left to check.
+   */
+  static final class Plan {
+    private final SearchQuery query;
+    private final Access access;
+    private final List<Node> filter;
+    private final List<Access> skipped;
+    private final int vaultSize;
+
+    private Plan(SearchQuery query, Access access, List<Node> filter, List<Access> skipped,
+        int vaultSize) {
+      this.query = query;
+      this.access = access;
+      this.filter = filter;
+      this.skipped = skipped;
+      this.vaultSize = vaultSize;
+    }
+
+    /**
+     * Runs an index plan.
+     *
+     * @return matching entries in vault order, null if the plan is a full scan
+     */
+    List<PasswordEntry> run() {
+      if (access == null) {
+        return null;
+      }
+      List<PasswordEntry> candidates = access.fetch.get();
+      if (filter.isEmpty()) {
+        return new ArrayList<>(candidates);
+      }
+      List<PasswordEntry> results = new ArrayList<>();
+      for (PasswordEntry candidate : candidates) {
+        if (passes(candidate)) {
+          results.add(candidate);
+        }
+      }
+      return results;
+    }
+
+    private boolean passes(PasswordEntry entry) {
+      for (Node term : filter) {
+        if (!term.matches(entry)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Describes the plan, a line each for the query, the lookup, the terms checked on its
+     * candidates and every lookup that lost out.
+     *
+     * @return plan text
+     */
+    String explain() {
+      StringBuilder text = new StringBuilder("Query: ").append(query).append('\n');
+      text.append("Plan: ").append(access == null ? "full scan, " + vaultSize + " entries"
+          : access.describe() + " of " + vaultSize).append('\n');
+      List<String> terms = new ArrayList<>();
+      for (Node term : filter) {
+        terms.add(term.toString());
+      }
+      text.append("Filter: ").append(terms.isEmpty() ? "none" : String.join(" ", terms));
+      for (Access option : skipped) {
+        text.append("\nSkipped: ").append(option.describe());
+      }
+      return text.toString();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.mwatson.passwordvault.model;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * A search query compiled once and matched against the cached search key of each entry.
+ * Both sides are Unicode normalised and case folded up front, so matching an entry is a
+ * single {@link String#indexOf(String)} with no allocation. Notes are sealed, so they are
+ * matched against their trigrams first, see {@link PasswordEntry#notesContain(String, long[])}.
+ */
+public final class SearchMatcher {
+  // Separates fields in a search key so a query can't match across two fields
+  static final char FIELD_SEPARATOR = '\0';
+
+  private final String query;
+  private final boolean matchAll;
+  // Trigrams of the query, worked out once for checking notes
+  private final long[] grams;
+
+  private SearchMatcher(String query, boolean matchAll) {
+    this.query = query;
+    this.matchAll = matchAll;
+    this.grams = TrigramIndex.grams(query);
+  }
+
+  /**
+   * Compiles search text into a matcher, blank text matches every entry.
+   *
+   * @param searchText text being searched
+   * @return compiled matcher
+   */
+  public static SearchMatcher compile(String searchText) {
+    if (searchText == null || searchText.trim().isEmpty()) {
+      return new SearchMatcher("", true);
+    }
+    return new SearchMatcher(fold(searchText).replace(String.valueOf(FIELD_SEPARATOR), ""),
+        false);
+  }
+
+  /**
+   * Checks an entry against the query.
+   *
+   * @param entry to check
+   * @return true if any searchable field, notes included, contains the query
+   */
+  public boolean matches(PasswordEntry entry) {
+    return matchAll || entry.getSearchKey().indexOf(query) >= 0
+        || entry.notesContain(query, grams);
+  }
+
+  /**
+   * Whether this matcher accepts every entry.
+   *
+   * @return true for blank search text
+   */
+  public boolean isMatchAll() {
+    return matchAll;
+  }
+
+  /**
+   * The normalised, case folded query.
+   *
+   * @return folded query text
+   */
+  String getQuery() {
+    return query;
+  }
+
+  /**
+   * Normalises (NFKC) and case folds text, upper then lower casing folds forms like "ß"
+   * and "SS" together.
+   *
+   * @param text to fold
+   * @return folded text
+   */
+  static String fold(String text) {
+    return Normalizer.normalize(text, Normalizer.Form.NFKC).toUpperCase(Locale.ROOT)
+        .toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,576 @@
+package com.mwatson.passwordvault.model;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed search query, such as {@code category:prod url:*.example.com user:svc- -tag:legacy
+ * updated<90d}. Terms next to each other must all match, {@code OR} between terms accepts
+ * either, a leading {@code -} negates a term and parentheses group. Quotes keep spaces in a
+ * value, as in {@code title:"my bank"}.
+ *
+ * <p>Field terms are {@code title:}, {@code user:}, {@code url:}, {@code site:},
+ * {@code category:}, {@code tag:} and {@code id:}. Title, user and url values match anywhere
+ * in the field, and a value with {@code *} or {@code ?} is a wildcard pattern over the whole
+ * field, or over the host for url patterns without a {@code /}. {@code site:example.com}
+ * matches urls on that host or any host under it. Categories match whole, tags and ids
+ * exactly. Time terms compare when an
+ * entry was {@code updated} or {@code created}: {@code updated<90d} is within the last 90
+ * days and {@code updated>90d} longer ago, in hours, days, weeks or years, while
+ * {@code updated<2024-01-01} is before that date and {@code updated>2024-01-01} on or after
+ * it. Anything else is searched for as {@link Vault#search(String)} does.
+ *
+ * <p>Nothing is case sensitive, so an id pasted in upper case still finds its entry. The one
+ * exception is an id from an older vault file that isn't in UUID form, which also matches
+ * exactly as stored. {@link Vault#find(SearchQuery)} runs a query using the vault's indexes.
+ */
+public final class SearchQuery {
+  private final Node root;
+  private final String text;
+
+  private SearchQuery(Node root, String text) {
+    this.root = root;
+    this.text = text;
+  }
+
+  /**
+   * Parses query text, times like 90d count back from now.
+   *
+   * @param text query, blank matches every entry
+   * @return parsed query
+   * @throws IllegalArgumentException if the text isn't a valid query
+   */
+  public static SearchQuery parse(String text) {
+    return parse(text, System.currentTimeMillis());
+  }
+
+  /**
+   * Parses query text with a fixed clock, for tests.
+   *
+   * @param text query, blank matches every entry
+   * @param now epoch millis relative times count back from
+   * @return parsed query
+   */
+  static SearchQuery parse(String text, long now) {
+    Parser parser = new Parser(tokenize(text == null ? "" : text), now);
+    Node root = parser.parseAll();
+    return new SearchQuery(root, root.toString());
+  }
+
+  /**
+   * Checks an entry against the query.
+   *
+   * @param entry to check
+   * @return true if the entry matches
+   */
+  public boolean matches(PasswordEntry entry) {
+    return root.matches(entry);
+  }
+
+  /**
+   * Whether the query is only words to search for, with no fields, times or operators.
+   *
+   * @return true for plain search text
+   */
+  public boolean isPlainText() {
+    if (root instanceof Text) {
+      return true;
+    }
+    if (!(root instanceof And)) {
+      return false;
+    }
+    for (Node term : ((And) root).terms) {
+      if (!(term instanceof Text)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  Node getRoot() {
+    return root;
+  }
+
+  /**
+   * The query written out in a normal form.
+   *
+   * @return query text
+   */
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  /**
+   * Field a term can name.
+   */
+  enum Field {
+    TITLE("title"), USER("user"), URL("url"), SITE("site"), CATEGORY("category"), TAG("tag"),
+    ID("id");
+
+    private final String name;
+
+    Field(String name) {
+      this.name = name;
+    }
+
+    static Field named(String name) {
+      String lower = name.toLowerCase(Locale.ROOT);
+      if ("username".equals(lower)) {
+        return USER;
+      }
+      for (Field field : values()) {
+        if (field.name.equals(lower)) {
+          return field;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Node of a parsed query.
+   */
+  abstract static class Node {
+    abstract boolean matches(PasswordEntry entry);
+  }
+
+  /**
+   * Every term must match, no terms match everything.
+   */
+  static final class And extends Node {
+    final List<Node> terms;
+
+    And(List<Node> terms) {
+      this.terms = Collections.unmodifiableList(terms);
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      for (Node term : terms) {
+        if (!term.matches(entry)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return join(terms, " ");
+    }
+  }
+
+  /**
+   * At least one term must match.
+   */
+  static final class Or extends Node {
+    final List<Node> terms;
+
+    Or(List<Node> terms) {
+      this.terms = Collections.unmodifiableList(terms);
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      for (Node term : terms) {
+        if (term.matches(entry)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + join(terms, " OR ") + ")";
+    }
+  }
+
+  /**
+   * The term must not match.
+   */
+  static final class Not extends Node {
+    final Node term;
+
+    Not(Node term) {
+      this.term = term;
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      return !term.matches(entry);
+    }
+
+    @Override
+    public String toString() {
+      return "-" + term;
+    }
+  }
+
+  /**
+   * Plain text searched for in every field.
+   */
+  static final class Text extends Node {
+    final SearchMatcher matcher;
+    private final String value;
+
+    Text(String value) {
+      this.value = value;
+      this.matcher = SearchMatcher.compile(value);
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      return matcher.matches(entry);
+    }
+
+    @Override
+    public String toString() {
+      return quote(value);
+    }
+  }
+
+  /**
+   * A value matched against one field.
+   */
+  static final class FieldTerm extends Node {
+    final Field field;
+    final String value;
+    final String folded;
+    // Set when the value has wildcards
+    private final Pattern pattern;
+
+    FieldTerm(Field field, String value) {
+      this.field = field;
+      this.value = field == Field.TAG ? PasswordEntry.normalizeTag(value)
+          : field == Field.SITE ? HostName.of(value) : value;
+      if (this.value == null) {
+        throw new IllegalArgumentException("No host in site:" + value);
+      }
+      this.folded = SearchMatcher.fold(value);
+      boolean exact = field == Field.ID || field == Field.TAG || field == Field.SITE;
+      this.pattern = exact ? null : wildcard(folded);
+    }
+
+    /**
+     * Whether the term is a wildcard pattern over url hosts.
+     *
+     * @return true for url patterns without a /
+     */
+    boolean isHostPattern() {
+      return field == Field.URL && pattern != null && value.indexOf('/') < 0;
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      switch (field) {
+        case ID:
+          String id = entry.getId();
+          return folded.equals(id) || value.equals(id);
+        case TAG:
+          return entry.getTags().contains(value);
+        case URL:
+          return matchesText(isHostPattern() ? entry.getHost() : entry.getUrl());
+        case SITE:
+          String host = entry.getHost();
+          return host != null && (host.equals(value) || host.endsWith("." + value));
+        case CATEGORY:
+          return matchesText(entry.getCategory());
+        case USER:
+          return matchesText(entry.getUsername());
+        default:
+          return matchesText(entry.getTitle());
+      }
+    }
+
+    /**
+     * Checks a field value against the term, categories must match whole.
+     *
+     * @param text field value, may be null
+     * @return true if it matches
+     */
+    boolean matchesText(String text) {
+      if (text == null) {
+        return false;
+      }
+      String foldedText = SearchMatcher.fold(text);
+      if (pattern != null) {
+        return pattern.matcher(foldedText).matches();
+      }
+      return field == Field.CATEGORY ? foldedText.equals(folded) : foldedText.contains(folded);
+    }
+
+    @Override
+    public String toString() {
+      return field.name + ":" + quote(value);
+    }
+  }
+
+  /**
+   * Compares when an entry was updated or created with a cutoff.
+   */
+  static final class TimeTerm extends Node {
+    final boolean created;
+    // True for entries at or after the cutoff, false for entries before it
+    final boolean after;
+    final long cutoff;
+    private final String text;
+
+    TimeTerm(boolean created, boolean after, long cutoff, String text) {
+      this.created = created;
+      this.after = after;
+      this.cutoff = cutoff;
+      this.text = text;
+    }
+
+    @Override
+    boolean matches(PasswordEntry entry) {
+      long time = created ? entry.getCreatedAtMillis() : entry.getUpdatedAtMillis();
+      return after == (time >= cutoff);
+    }
+
+    @Override
+    public String toString() {
+      return text;
+    }
+  }
+
+  private static Pattern wildcard(String value) {
+    if (value.indexOf('*') < 0 && value.indexOf('?') < 0) {
+      return null;
+    }
+    StringBuilder regex = new StringBuilder();
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '*' || c == '?') {
+        regex.append(Pattern.quote(value.substring(start, i))).append(c == '*' ? ".*" : ".");
+        start = i + 1;
+      }
+    }
+    regex.append(Pattern.quote(value.substring(start)));
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static String join(List<Node> terms, String separator) {
+    List<String> parts = new ArrayList<>(terms.size());
+    for (Node term : terms) {
+      parts.add(term.toString());
+    }
+    return String.join(separator, parts);
+  }
+
+  private static String quote(String value) {
+    if (value.startsWith("-")) {
+      return "\"" + value + "\"";
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.isWhitespace(value.charAt(i)) || "()\"".indexOf(value.charAt(i)) >= 0) {
+        return "\"" + value.replace("\"", "") + "\"";
+      }
+    }
+    return value;
+  }
+
+  /**
+   * One word of a query, with quotes removed.
+   */
+  private static final class Token {
+    private final String text;
+    private final boolean quoted;
+    // Index of the first colon outside quotes, -1 if none
+    private final int colon;
+
+    Token(String text, boolean quoted, int colon) {
+      this.text = text;
+      this.quoted = quoted;
+      this.colon = colon;
+    }
+
+    boolean is(String word) {
+      return !quoted && text.equals(word);
+    }
+  }
+
+  private static List<Token> tokenize(String text) {
+    List<Token> tokens = new ArrayList<>();
+    int i = 0;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      if (c == '(' || c == ')') {
+        tokens.add(new Token(String.valueOf(c), false, -1));
+        i++;
+        continue;
+      }
+      StringBuilder word = new StringBuilder();
+      boolean quoted = false;
+      boolean inQuotes = false;
+      int colon = -1;
+      while (i < text.length()) {
+        c = text.charAt(i);
+        if (!inQuotes && (Character.isWhitespace(c) || c == '(' || c == ')')) {
+          break;
+        }
+        if (c == '"') {
+          inQuotes = !inQuotes;
+          quoted = true;
+        } else {
+          if (c == ':' && !inQuotes && colon < 0) {
+            colon = word.length();
+          }
+          word.append(c);
+        }
+        i++;
+      }
+      if (inQuotes) {
+        throw new IllegalArgumentException("Unclosed quote in query");
+      }
+      tokens.add(new Token(word.toString(), quoted, colon));
+    }
+    return tokens;
+  }
+
+  /**
+   * Recursive descent over the tokens, OR binds looser than the terms next to it.
+   */
+  private static final class Parser {
+    private static final Pattern TIME =
+        Pattern.compile("(?i)(updated|created)([<>])(.+)");
+    private static final Pattern AGE = Pattern.compile("(\\d{1,6})([hdwy])");
+
+    private final List<Token> tokens;
+    private final long now;
+    private int position;
+
+    Parser(List<Token> tokens, long now) {
+      this.tokens = tokens;
+      this.now = now;
+    }
+
+    Node parseAll() {
+      Node node = parseOr();
+      if (position < tokens.size()) {
+        throw new IllegalArgumentException("Unexpected ) in query");
+      }
+      return node;
+    }
+
+    private Node parseOr() {
+      List<Node> terms = new ArrayList<>();
+      terms.add(parseAnd());
+      while (position < tokens.size() && tokens.get(position).is("OR")) {
+        position++;
+        Node next = parseAnd();
+        if (next instanceof And && ((And) next).terms.isEmpty()) {
+          throw new IllegalArgumentException("OR needs a term on each side");
+        }
+        terms.add(next);
+      }
+      if (terms.size() == 1) {
+        return terms.get(0);
+      }
+      if (terms.get(0) instanceof And && ((And) terms.get(0)).terms.isEmpty()) {
+        throw new IllegalArgumentException("OR needs a term on each side");
+      }
+      return new Or(terms);
+    }
+
+    private Node parseAnd() {
+      List<Node> terms = new ArrayList<>();
+      while (position < tokens.size()) {
+        Token token = tokens.get(position);
+        if (token.is("OR") || token.is(")")) {
+          break;
+        }
+        position++;
+        if (!token.is("AND")) {
+          terms.add(parseTerm(token));
+        }
+      }
+      return terms.size() == 1 ? terms.get(0) : new And(terms);
+    }
+
+    private Node parseTerm(Token token) {
+      if (token.is("(")) {
+        Node group = parseOr();
+        if (position >= tokens.size()) {
+          throw new IllegalArgumentException("Unclosed ( in query");
+        }
+        position++;
+        return group;
+      }
+      if (!token.quoted && token.text.length() > 1 && token.text.charAt(0) == '-') {
+        String rest = token.text.substring(1);
+        return new Not(parseTerm(new Token(rest, false, token.colon - 1)));
+      }
+      if (!token.quoted && token.text.equals("-") && position < tokens.size()
+          && tokens.get(position).is("(")) {
+        position++;
+        return new Not(parseTerm(new Token("(", false, -1)));
+      }
+      if (!token.quoted) {
+        Matcher time = TIME.matcher(token.text);
+        if (time.matches()) {
+          return timeTerm(time.group(1), time.group(2), time.group(3), token.text);
+        }
+      }
+      if (token.colon > 0) {
+        Field field = Field.named(token.text.substring(0, token.colon));
+        if (field != null) {
+          String value = token.text.substring(token.colon + 1);
+          if (value.trim().isEmpty()) {
+            throw new IllegalArgumentException("No value for " + field.name + ":");
+          }
+          return new FieldTerm(field, value.trim());
+        }
+      }
+      return new Text(token.text);
+    }
+
+    private Node timeTerm(String field, String operator, String value, String text) {
+      boolean created = "created".equalsIgnoreCase(field);
+      boolean less = "<".equals(operator);
+      Matcher age = AGE.matcher(value.toLowerCase(Locale.ROOT));
+      if (age.matches()) {
+        long hours = Long.parseLong(age.group(1));
+        switch (age.group(2)) {
+          case "d":
+            hours *= 24;
+            break;
+          case "w":
+            hours *= 24 * 7;
+            break;
+          case "y":
+            hours *= 24 * 365;
+            break;
+          default:
+            break;
+        }
+        // Less than an age is newer than the cutoff
+        return new TimeTerm(created, less, now - TimeUnit.HOURS.toMillis(hours),
+            text.toLowerCase(Locale.ROOT));
+      }
+      try {
+        long cutoff = LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant()
+            .toEpochMilli();
+        return new TimeTerm(created, !less, cutoff, text.toLowerCase(Locale.ROOT));
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Can't read time " + value
+            + ", use an age like 90d or a date like 2024-01-31", e);
+      }
+    }
+  }
+}
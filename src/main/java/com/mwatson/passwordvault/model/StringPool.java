@@ -0,0 +1,46 @@
+package com.mwatson.passwordvault.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Dictionary of the field values shared across a vault's entries, such as categories, hosts
+ * and usernames. Entries keep the pooled copy of each value, so a category used by thousands
+ * of entries is held once and the rest are references to it.
+ *
+ * <p>Values are held weakly, one that no entry uses any more is dropped at the next garbage
+ * collection. Unlike {@link String#intern()} the pool belongs to one vault and goes when the
+ * vault is locked.
+ */
+final class StringPool {
+  private final Map<String, WeakReference<String>> values = new WeakHashMap<>();
+
+  /**
+   * Returns the pooled copy of a value, adding it if it is new.
+   *
+   * @param value to look up, may be null
+   * @return an equal string shared by every caller, or null
+   */
+  synchronized String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    WeakReference<String> reference = values.get(value);
+    String pooled = reference == null ? null : reference.get();
+    if (pooled == null) {
+      pooled = value;
+      values.put(pooled, new WeakReference<>(pooled));
+    }
+    return pooled;
+  }
+
+  /**
+   * Number of distinct values held, including any not yet collected.
+   *
+   * @return pool size
+   */
+  synchronized int size() {
+    return values.size();
+  }
+}
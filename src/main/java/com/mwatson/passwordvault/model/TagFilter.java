@@ -0,0 +1,107 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Boolean filter over entry tags: every tag in all-of, at least one in any-of when any are
+ * given, and none of none-of. Immutable, each method returns a changed copy, for example
+ * {@code TagFilter.create().allOf("env:prod").anyOf("team:payments", "team:billing")
+ * .noneOf("legacy")}.
+ */
+public final class TagFilter {
+  private static final TagFilter EMPTY = new TagFilter(List.of(), List.of(), List.of());
+
+  private final List<String> allOf;
+  private final List<String> anyOf;
+  private final List<String> noneOf;
+
+  private TagFilter(List<String> allOf, List<String> anyOf, List<String> noneOf) {
+    this.allOf = allOf;
+    this.anyOf = anyOf;
+    this.noneOf = noneOf;
+  }
+
+  /**
+   * Filter that every entry passes.
+   *
+   * @return empty filter
+   */
+  public static TagFilter create() {
+    return EMPTY;
+  }
+
+  /**
+   * Requires every one of some tags.
+   *
+   * @param tags entries must carry all of
+   * @return changed copy
+   */
+  public TagFilter allOf(String... tags) {
+    return new TagFilter(plus(allOf, tags), anyOf, noneOf);
+  }
+
+  /**
+   * Requires at least one of some tags.
+   *
+   * @param tags entries must carry one or more of
+   * @return changed copy
+   */
+  public TagFilter anyOf(String... tags) {
+    return new TagFilter(allOf, plus(anyOf, tags), noneOf);
+  }
+
+  /**
+   * Rejects entries with any of some tags.
+   *
+   * @param tags entries must carry none of
+   * @return changed copy
+   */
+  public TagFilter noneOf(String... tags) {
+    return new TagFilter(allOf, anyOf, plus(noneOf, tags));
+  }
+
+  public List<String> getAllOf() {
+    return allOf;
+  }
+
+  public List<String> getAnyOf() {
+    return anyOf;
+  }
+
+  public List<String> getNoneOf() {
+    return noneOf;
+  }
+
+  /**
+   * Checks one entry against the filter.
+   *
+   * @param entry to check
+   * @return true if it passes
+   */
+  public boolean matches(PasswordEntry entry) {
+    List<String> tags = entry.getTags();
+    if (!tags.containsAll(allOf) || !Collections.disjoint(tags, noneOf)) {
+      return false;
+    }
+    return anyOf.isEmpty() || !Collections.disjoint(tags, anyOf);
+  }
+
+  @Override
+  public String toString() {
+    return "all" + allOf + " any" + anyOf + " none" + noneOf;
+  }
+
+  private static List<String> plus(List<String> tags, String... more) {
+    List<String> combined = new ArrayList<>(tags);
+    for (String tag : more) {
+      String normalized = PasswordEntry.normalizeTag(tag);
+      if (normalized == null) {
+        throw new IllegalArgumentException("Tags can't be blank");
+      }
+      combined.add(normalized);
+    }
+    return Collections.unmodifiableList(combined);
+  }
+}
@@ -0,0 +1,116 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compressed bitmap of entry positions per tag, plus one of every entry for NOT filters.
+ * A tag filter is answered with bitmap AND, OR and AND NOT, touching no entry until the
+ * matching positions are turned back into entries.
+ */
+class TagIndex implements EntryIndex {
+  private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+  private final Map<String, CompressedBitmap> byTag = new HashMap<>();
+  private CompressedBitmap all = new CompressedBitmap();
+  // The tags each entry was filed under, its tags may have moved on since
+  private final Map<PasswordEntry, List<String>> filed = new IdentityHashMap<>();
+
+  @Override
+  public void add(PasswordEntry entry) {
+    int position = position(entry);
+    List<String> tags = entry.getTags();
+    filed.put(entry, tags);
+    all.add(position);
+    for (String tag : tags) {
+      byTag.computeIfAbsent(tag, key -> new CompressedBitmap()).add(position);
+    }
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    List<String> tags = filed.remove(entry);
+    if (tags == null) {
+      return;
+    }
+    int position = position(entry);
+    all.remove(position);
+    for (String tag : tags) {
+      CompressedBitmap positions = byTag.get(tag);
+      positions.remove(position);
+      if (positions.isEmpty()) {
+        byTag.remove(tag);
+      }
+    }
+  }
+
+  @Override
+  public void update(PasswordEntry entry) {
+    // Most edits leave the tags alone
+    List<String> tags = filed.get(entry);
+    if (tags == null || !tags.equals(entry.getTags())) {
+      remove(entry);
+      add(entry);
+    }
+  }
+
+  @Override
+  public void clear() {
+    filed.clear();
+    byTag.clear();
+    all = new CompressedBitmap();
+  }
+
+  /**
+   * Positions of the entries passing a filter.
+   *
+   * @param filter tags to require, accept and reject
+   * @return vault sequences of matching entries, may be one of the index's own bitmaps so
+   *     callers must not change it
+   */
+  CompressedBitmap find(TagFilter filter) {
+    CompressedBitmap result = null;
+    for (String tag : filter.getAllOf()) {
+      result = result == null ? positions(tag) : CompressedBitmap.and(result, positions(tag));
+    }
+    CompressedBitmap any = null;
+    for (String tag : filter.getAnyOf()) {
+      any = any == null ? positions(tag) : CompressedBitmap.or(any, positions(tag));
+    }
+    if (any != null) {
+      result = result == null ? any : CompressedBitmap.and(result, any);
+    }
+    if (result == null) {
+      result = all;
+    }
+    for (String tag : filter.getNoneOf()) {
+      result = CompressedBitmap.andNot(result, positions(tag));
+    }
+    return result;
+  }
+
+  /**
+   * Number of entries carrying each tag.
+   *
+   * @return counts keyed by tag, sorted
+   */
+  Map<String, Integer> counts() {
+    Map<String, Integer> counts = new TreeMap<>();
+    for (Map.Entry<String, CompressedBitmap> tag : byTag.entrySet()) {
+      counts.put(tag.getKey(), tag.getValue().cardinality());
+    }
+    return counts;
+  }
+
+  private CompressedBitmap positions(String tag) {
+    CompressedBitmap positions = byTag.get(tag);
+    return positions == null ? EMPTY : positions;
+  }
+
+  private static int position(PasswordEntry entry) {
+    return Math.toIntExact(entry.getSequence());
+  }
+}
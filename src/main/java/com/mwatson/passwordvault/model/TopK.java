@@ -0,0 +1,72 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best k items seen so far in a bounded heap, so ranking n candidates costs
+ * O(n log k) instead of sorting all of them.
+ *
+ * @param <T> item type
+ */
+class TopK<T> {
+  private final int limit;
+  private final Comparator<T> ranking;
+  // Worst kept item at the head, ready to be pushed out by a better one
+  private final PriorityQueue<T> heap;
+
+  /**
+   * Creates an empty selection.
+   *
+   * @param limit how many items to keep, must be positive
+   * @param ranking orders items best first
+   */
+  TopK(int limit, Comparator<T> ranking) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    this.limit = limit;
+    this.ranking = ranking;
+    this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, ranking.reversed());
+  }
+
+  /**
+   * Offers an item, kept only if it ranks among the best k so far.
+   *
+   * @param item candidate
+   */
+  void offer(T item) {
+    if (heap.size() < limit) {
+      heap.add(item);
+    } else if (ranking.compare(item, heap.peek()) < 0) {
+      heap.poll();
+      heap.add(item);
+    }
+  }
+
+  /**
+   * Merges another selection into this one.
+   *
+   * @param other selection built over a different part of the input
+   * @return this selection
+   */
+  TopK<T> merge(TopK<T> other) {
+    for (T item : other.heap) {
+      offer(item);
+    }
+    return this;
+  }
+
+  /**
+   * The kept items, best first.
+   *
+   * @return sorted list of at most k items
+   */
+  List<T> toList() {
+    List<T> items = new ArrayList<>(heap);
+    items.sort(ranking);
+    return items;
+  }
+}
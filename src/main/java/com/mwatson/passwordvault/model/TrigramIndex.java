@@ -0,0 +1,155 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from character trigrams to the entries containing them.
+ * Built from the cached search key and the note trigrams of each entry, a query intersects
+ * the posting lists of its trigrams and only the remaining candidates are checked for a real
+ * substring match.
+ */
+class TrigramIndex implements EntryIndex {
+  static final int GRAM_LENGTH = 3;
+
+  private final Map<Long, Set<PasswordEntry>> postings = new HashMap<>();
+  private final Map<PasswordEntry, long[]> gramsByEntry = new IdentityHashMap<>();
+
+  @Override
+  public void add(PasswordEntry entry) {
+    Set<Long> grams = new HashSet<>();
+    collectGrams(entry.getSearchKey(), grams);
+    for (long gram : entry.getNoteGrams()) {
+      grams.add(gram);
+    }
+    long[] stored = new long[grams.size()];
+    int i = 0;
+    for (Long gram : grams) {
+      postings.computeIfAbsent(gram, key -> new HashSet<>()).add(entry);
+      stored[i++] = gram;
+    }
+    gramsByEntry.put(entry, stored);
+  }
+
+  @Override
+  public void remove(PasswordEntry entry) {
+    long[] stored = gramsByEntry.remove(entry);
+    if (stored == null) {
+      return;
+    }
+    for (long gram : stored) {
+      Set<PasswordEntry> posting = postings.get(gram);
+      if (posting != null) {
+        posting.remove(entry);
+        if (posting.isEmpty()) {
+          postings.remove(gram);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    postings.clear();
+    gramsByEntry.clear();
+  }
+
+  /**
+   * Finds entries matching the search text, in vault order.
+   *
+   * @param matcher with a folded query of at least {@link #GRAM_LENGTH} characters
+   * @param order gives the vault position of an entry, used to sort the hits
+   * @param maxCandidates above this many candidates a plain scan is cheaper than the index
+   * @return matching entries, or null if the query isn't selective enough to use the index
+   */
+  List<PasswordEntry> search(SearchMatcher matcher, Comparator<PasswordEntry> order,
+      int maxCandidates) {
+    Set<Long> grams = new HashSet<>();
+    collectGrams(matcher.getQuery(), grams);
+
+    List<Set<PasswordEntry>> lists = new ArrayList<>(grams.size());
+    Set<PasswordEntry> smallest = null;
+    for (Long gram : grams) {
+      Set<PasswordEntry> posting = postings.get(gram);
+      if (posting == null) {
+        return new ArrayList<>();
+      }
+      lists.add(posting);
+      if (smallest == null || posting.size() < smallest.size()) {
+        smallest = posting;
+      }
+    }
+
+    if (smallest.size() > maxCandidates) {
+      return null;
+    }
+
+    List<PasswordEntry> results = new ArrayList<>();
+    for (PasswordEntry candidate : smallest) {
+      if (inAll(candidate, lists) && matcher.matches(candidate)) {
+        results.add(candidate);
+      }
+    }
+    results.sort(order);
+    return results;
+  }
+
+  private static boolean inAll(PasswordEntry candidate, List<Set<PasswordEntry>> lists) {
+    for (Set<PasswordEntry> posting : lists) {
+      if (!posting.contains(candidate)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Distinct trigrams of some text, sorted so checking for one is a binary search.
+   *
+   * @param text to split
+   * @return sorted trigrams, empty if the text is shorter than {@link #GRAM_LENGTH}
+   */
+  static long[] grams(String text) {
+    Set<Long> grams = new HashSet<>();
+    collectGrams(text, grams);
+    return grams.stream().mapToLong(Long::longValue).sorted().toArray();
+  }
+
+  /**
+   * Checks whether a trigram holds text no longer than itself, without building a string.
+   *
+   * @param gram packed trigram
+   * @param text of at most {@link #GRAM_LENGTH} characters
+   * @return true if the text appears in the trigram
+   */
+  static boolean gramContains(long gram, String text) {
+    for (int start = 0; start + text.length() <= GRAM_LENGTH; start++) {
+      int matched = 0;
+      while (matched < text.length()
+          && charAt(gram, start + matched) == text.charAt(matched)) {
+        matched++;
+      }
+      if (matched == text.length()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static char charAt(long gram, int index) {
+    return (char) (gram >>> (16 * (GRAM_LENGTH - 1 - index)));
+  }
+
+  private static void collectGrams(String text, Set<Long> grams) {
+    for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+      grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16)
+          | text.charAt(i + 2));
+    }
+  }
+}
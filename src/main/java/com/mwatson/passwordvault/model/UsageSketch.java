@@ -0,0 +1,321 @@
+package com.mwatson.passwordvault.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How often each entry has been used lately, in a fixed {@value #DEPTH} by {@value #WIDTH}
+ * count-min table however many entries the vault holds. Each use adds to one cell per row,
+ * picked by hashing the entry id, and an entry's count is the smallest of its cells, which
+ * other entries sharing a cell can only push up. Only cells below the new count are raised,
+ * which keeps that error small.
+ *
+ * <p>Uses fade with a half life of {@value #HALF_LIFE_DAYS} days. Rather than shrinking every
+ * cell as time passes, a use at time t adds 2^((t - origin) / half life), so later uses weigh
+ * more and all counts keep their order as they age. The weights are brought back down by
+ * moving the origin before they can overflow.
+ *
+ * <p>The sketch can't list its keys, so the {@value #TRACKED} most used entries are kept
+ * alongside it in a list sorted by count, and reading the top k is a walk of its first k
+ * slots. Not thread safe, the vault guards it with its lock.
+ */
+@JsonAdapter(UsageSketch.JsonForm.class)
+public final class UsageSketch {
+  static final int DEPTH = 4;
+  static final int WIDTH = 256;
+  static final int TRACKED = 32;
+  static final int HALF_LIFE_DAYS = 14;
+  private static final double HALF_LIFE_MILLIS = HALF_LIFE_DAYS * 24 * 60 * 60 * 1000.0;
+  // Half lives after the origin before weights are scaled back down, 2^64 is far from overflow
+  private static final double RESCALE_AFTER = 64;
+  private static final long[] SEEDS = {
+      0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L};
+
+  private long origin;
+  private final double[][] cells = new double[DEPTH][WIDTH];
+  // Most used entries first, with their counts in origin units
+  private final EntryId[] top = new EntryId[TRACKED];
+  private final double[] scores = new double[TRACKED];
+  private int size;
+
+  UsageSketch() {
+    this(System.currentTimeMillis());
+  }
+
+  UsageSketch(long origin) {
+    this.origin = origin;
+  }
+
+  /**
+   * Counts one use of an entry.
+   *
+   * @param id of the entry used
+   * @param now Unix millis of the use
+   */
+  void record(EntryId id, long now) {
+    double exponent = (now - origin) / HALF_LIFE_MILLIS;
+    if (exponent > RESCALE_AFTER) {
+      rescale(Math.pow(2, -exponent));
+      origin = now;
+      exponent = 0;
+    }
+    double weight = Math.pow(2, exponent);
+    int[] slots = slots(id);
+    double count = weight + estimate(slots);
+    for (int row = 0; row < DEPTH; row++) {
+      cells[row][slots[row]] = Math.max(cells[row][slots[row]], count);
+    }
+    track(id, count);
+  }
+
+  /**
+   * Uses of an entry, each counting one when it happened and half as much every half life
+   * since. May be too high when other entries share all its cells, never too low.
+   *
+   * @param id of the entry
+   * @param now Unix millis to count at
+   * @return decayed use count
+   */
+  double count(EntryId id, long now) {
+    return estimate(slots(id)) * Math.pow(2, (origin - now) / HALF_LIFE_MILLIS);
+  }
+
+  /**
+   * The most used entries, in O(limit).
+   *
+   * @param limit most ids to return, at most {@value #TRACKED} are kept
+   * @return ids most used first
+   */
+  List<EntryId> top(int limit) {
+    int count = Math.min(limit, size);
+    List<EntryId> ids = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      ids.add(top[i]);
+    }
+    return ids;
+  }
+
+  /**
+   * Drops an entry from the most used list, once it has left the vault. Its cells keep
+   * their counts and fade with the rest.
+   *
+   * @param id of the entry
+   */
+  void forget(EntryId id) {
+    int index = indexOf(id);
+    if (index >= 0) {
+      System.arraycopy(top, index + 1, top, index, size - index - 1);
+      System.arraycopy(scores, index + 1, scores, index, size - index - 1);
+      top[--size] = null;
+    }
+  }
+
+  UsageSketch copy() {
+    UsageSketch copy = new UsageSketch(origin);
+    for (int row = 0; row < DEPTH; row++) {
+      System.arraycopy(cells[row], 0, copy.cells[row], 0, WIDTH);
+    }
+    System.arraycopy(top, 0, copy.top, 0, size);
+    System.arraycopy(scores, 0, copy.scores, 0, size);
+    copy.size = size;
+    return copy;
+  }
+
+  private double estimate(int[] slots) {
+    double min = Double.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      min = Math.min(min, cells[row][slots[row]]);
+    }
+    return min;
+  }
+
+  /**
+   * One cell per row, from a different mix of the id's hash each time.
+   */
+  private static int[] slots(EntryId id) {
+    int[] slots = new int[DEPTH];
+    for (int row = 0; row < DEPTH; row++) {
+      long hash = (id.hashCode() ^ SEEDS[row]) * 0xbf58476d1ce4e5b9L;
+      hash ^= hash >>> 31;
+      slots[row] = (int) ((hash * 0x94d049bb133111ebL) >>> 56) & (WIDTH - 1);
+    }
+    return slots;
+  }
+
+  /**
+   * Moves an entry to its new place in the most used list, or into it if it now beats the
+   * last one kept.
+   */
+  private void track(EntryId id, double score) {
+    int index = indexOf(id);
+    if (index < 0) {
+      if (size == TRACKED && score <= scores[TRACKED - 1]) {
+        return;
+      }
+      index = size == TRACKED ? TRACKED - 1 : size++;
+    }
+    // Counts only go up, so the entry can only move towards the front
+    while (index > 0 && scores[index - 1] <= score) {
+      top[index] = top[index - 1];
+      scores[index] = scores[index - 1];
+      index--;
+    }
+    top[index] = id;
+    scores[index] = score;
+  }
+
+  private int indexOf(EntryId id) {
+    for (int i = 0; i < size; i++) {
+      if (top[i].equals(id)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void rescale(double factor) {
+    for (double[] row : cells) {
+      for (int i = 0; i < WIDTH; i++) {
+        row[i] *= factor;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      scores[i] *= factor;
+    }
+  }
+
+  private static boolean isCount(double value) {
+    return value >= 0 && !Double.isInfinite(value);
+  }
+
+  /**
+   * Stores the origin, the table as one array per row and the most used list. Counts that
+   * don't fit the table as built are dropped, so a vault always opens even if its usage
+   * can't be read.
+   */
+  static final class JsonForm extends TypeAdapter<UsageSketch> {
+    @Override
+    public void write(JsonWriter out, UsageSketch sketch) throws IOException {
+      if (sketch == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("origin").value(sketch.origin);
+      out.name("cells").beginArray();
+      for (double[] row : sketch.cells) {
+        out.beginArray();
+        for (double cell : row) {
+          out.value(cell);
+        }
+        out.endArray();
+      }
+      out.endArray();
+      out.name("top").beginArray();
+      for (int i = 0; i < sketch.size; i++) {
+        out.beginObject();
+        out.name("id").value(sketch.top[i].toString());
+        out.name("score").value(sketch.scores[i]);
+        out.endObject();
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public UsageSketch read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      long origin = System.currentTimeMillis();
+      List<double[]> rows = new ArrayList<>();
+      List<EntryId> ids = new ArrayList<>();
+      List<Double> scores = new ArrayList<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "origin":
+            origin = in.nextLong();
+            break;
+          case "cells":
+            in.beginArray();
+            while (in.hasNext()) {
+              rows.add(readRow(in));
+            }
+            in.endArray();
+            break;
+          case "top":
+            in.beginArray();
+            while (in.hasNext()) {
+              in.beginObject();
+              String id = null;
+              double score = 0;
+              while (in.hasNext()) {
+                String name = in.nextName();
+                if ("id".equals(name)) {
+                  id = in.nextString();
+                } else if ("score".equals(name)) {
+                  score = in.nextDouble();
+                } else {
+                  in.skipValue();
+                }
+              }
+              in.endObject();
+              ids.add(EntryId.parse(id));
+              scores.add(score);
+            }
+            in.endArray();
+            break;
+          default:
+            in.skipValue();
+            break;
+        }
+      }
+      in.endObject();
+      return build(origin, rows, ids, scores);
+    }
+
+    private static double[] readRow(JsonReader in) throws IOException {
+      List<Double> values = new ArrayList<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        values.add(in.nextDouble());
+      }
+      in.endArray();
+      return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    private static UsageSketch build(long origin, List<double[]> rows, List<EntryId> ids,
+        List<Double> scores) {
+      UsageSketch sketch = new UsageSketch(origin);
+      boolean fits = rows.size() == DEPTH && ids.size() <= TRACKED;
+      for (double[] row : rows) {
+        fits &= row.length == WIDTH && Arrays.stream(row).allMatch(UsageSketch::isCount);
+      }
+      for (int i = 0; i < ids.size(); i++) {
+        fits &= ids.get(i) != null && isCount(scores.get(i))
+            && (i == 0 || scores.get(i) <= scores.get(i - 1));
+      }
+      if (!fits) {
+        return sketch;
+      }
+      for (int row = 0; row < DEPTH; row++) {
+        System.arraycopy(rows.get(row), 0, sketch.cells[row], 0, WIDTH);
+      }
+      for (int i = 0; i < ids.size(); i++) {
+        sketch.top[i] = ids.get(i);
+        sketch.scores[i] = scores.get(i);
+      }
+      sketch.size = ids.size();
+      return sketch;
+    }
+  }
+}
@@ -2,24 +2,115 @@ package com.mwatson.passwordvault.model;
 
 import com.google.gson.annotations.SerializedName;
 import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.crypto.SecretKey;
 
 /**
  * Represents the entire password vault containing multiple password entries.
  * Manages the collection and provides search and filter functionality.
+ *
+ * <p>Entries are kept in a hash index keyed on entry id, so lookups, edits and deletes by id
+ * are O(1), and in a persistent {@link VaultSnapshot} holding them in the order they were
+ * added. Each change publishes a new snapshot that shares all but O(log n) nodes with the
+ * last, so {@link #snapshot()} is O(1) and listing, scanning and saving need no lock or copy.
+ * Entry ids are the index key, so an entry's id shouldn't change while it is in the vault.
+ * Searches of three or more characters go through a trigram index that entries keep up to
+ * date themselves whenever a field is set. Scans over vaults of
+ * {@value #PARALLEL_SCAN_THRESHOLD} or more entries are split across the common ForkJoin pool.
+ * A second index orders entries by when they were last updated, for "modified since" and
+ * staleness queries. A third keeps entries grouped by category with a count for each,
+ * so listing categories or one category's entries costs the size of the answer.
+ * Tags have a compressed bitmap of entry positions each, so AND, OR and NOT tag filters are
+ * set operations rather than scans. Url hosts are kept in a trie on their labels, so the
+ * credentials for a site are found in one step per label, see {@link #findBySite(String)}.
+ * Titles, usernames and hosts also go into a radix trie that keeps the best completions on
+ * every node, so {@link #complete(String, int)} can run on each keystroke.
+ * {@link #query()} runs searches and category filters lazily as a stream, with an offset and
+ * limit for paging and a count that avoids collecting the matches.
+ * {@link #find(SearchQuery)} runs the field, tag and time terms of a {@link SearchQuery}
+ * through whichever index narrows them down most, and {@link #explain(SearchQuery)} shows
+ * the choice.
+ * Copying and editing an entry count as a use in a small fixed size sketch whose counts fade
+ * over weeks, so {@link #getFrequentEntries(int)} lists the entries in use lately without a
+ * scan, and completions from those entries are offered first.
+ * Categories, usernames, urls and hosts repeat across many entries, so the vault pools them
+ * and each entry holds a reference to the one shared copy.
+ *
+ * <p>A vault is safe to share between threads. Listing and scanning read the snapshot without
+ * any lock. Lookups and searches that go through the entry map or an index take the read lock
+ * of a {@link StampedLock}, since those are changed in place, and only reads of single fields
+ * run optimistically. Adding, removing and editing entries take the write lock.
+ * A {@link SearchSession} belongs to one thread.
+ *
+ * <p>{@link VaultListener}s are told about each add, edit and removal once the write that made
+ * it has released the lock. Everything one write does arrives as one list of events, and
+ * {@link #batch(Runnable)} groups several writes, such as the setters of an edit, into one.
  */
 public class Vault {
   @SerializedName("id")
   private String id;
   @SerializedName("name")
-  private String name;
-  @SerializedName("entries")
-  private List<PasswordEntry> entries;
+  private volatile String name;
+  // Serialised as a list by the storage layer
+  private transient Map<EntryId, PasswordEntry> entries;
+  private transient volatile VaultSnapshot snapshot = VaultSnapshot.EMPTY;
   private transient byte[] salt;
   private final transient EncryptionService encryptionService;
+  private transient SecretSealer sealer;
+  private final transient TrigramIndex searchIndex = new TrigramIndex();
+  private final transient ModifiedIndex modifiedIndex = new ModifiedIndex();
+  private final transient CategoryIndex categoryIndex = new CategoryIndex();
+  private final transient TagIndex tagIndex = new TagIndex();
+  private final transient StringPool strings = new StringPool();
+  private final transient HostIndex hostIndex = new HostIndex(strings);
+  private final transient CompletionIndex completionIndex = new CompletionIndex();
+  private final transient List<EntryIndex> indexes =
+      List.of(searchIndex, modifiedIndex, categoryIndex, tagIndex, hostIndex, completionIndex);
+  // Recent use of each entry, guarded by the lock like the indexes
+  private transient UsageSketch usage = new UsageSketch();
+  private transient long nextSequence;
+  // Bumped on every change so search sessions know when their cached hits are stale
+  private final transient AtomicLong modCount = new AtomicLong();
+  private final transient StampedLock lock = new StampedLock();
+  private final transient List<VaultListener> listeners = new CopyOnWriteArrayList<>();
+  // Number of the last change given an event, guarded by the write lock
+  private transient long lastChange;
+  // Events of the write in progress, guarded by the write lock
+  private transient List<VaultEvent> pendingEvents = new ArrayList<>();
+  // Events held back until the calling thread's batch ends, null outside a batch
+  private final transient ThreadLocal<List<VaultEvent>> batchEvents = new ThreadLocal<>();
+
+  // Below this many entries splitting a scan across threads costs more than it saves
+  static final int PARALLEL_SCAN_THRESHOLD = 8_192;
+  // The index is only used while its candidates are at most 1/4 of the vault
+  static final int INDEX_SELECTIVITY = 4;
+  // More row events than this in one delivery are sent as a single bulk change
+  static final int MAX_ROW_EVENTS = 64;
+  static final Comparator<PasswordEntry> BY_POSITION =
+      Comparator.comparingLong(PasswordEntry::getSequence);
 
 
   /**
@@ -28,7 +119,7 @@ public class Vault {
   public Vault() {
     this.id = UUID.randomUUID().toString();
     this.name = "My Password Vault";
-    this.entries = new ArrayList<>();
+    this.entries = new HashMap<>();
     this.encryptionService = new EncryptionService();
     this.salt = encryptionService.generateSalt();
   }
@@ -39,18 +130,61 @@ public class Vault {
   public Vault(String id, String name, List<PasswordEntry> entries, byte[] salt) {
     this.id = id;
     this.name = name;
-    this.entries = new ArrayList<>(entries);
+    this.entries = new HashMap<>();
     this.encryptionService = new EncryptionService();
     this.salt = salt;
+    for (PasswordEntry entry : entries) {
+      putEntry(entry);
+    }
   }
 
   /**
    * Adds a new password entry to the vault.
+   * An entry with the same id as an existing one replaces it in place.
    *
    * @param entry to be added
    */
   public void addEntry(PasswordEntry entry) {
-    entries.add(entry);
+    write(() -> putEntry(entry));
+  }
+
+  /**
+   * Adds several entries under one write lock, keeping their order.
+   *
+   * @param newEntries to be added
+   */
+  public void addAll(Collection<PasswordEntry> newEntries) {
+    write(() -> {
+      for (PasswordEntry entry : newEntries) {
+        putEntry(entry);
+      }
+    });
+  }
+
+  private void putEntry(PasswordEntry entry) {
+    if (sealer != null) {
+      entry.attachSealer(sealer);
+    }
+    PasswordEntry previous = entries.put(entry.getEntryId(), entry);
+    long sequence;
+    if (previous != null) {
+      // Read before detaching, which clears it, so the replacement takes the same slot
+      sequence = previous.getSequence();
+      detach(previous);
+    } else {
+      sequence = nextSequence++;
+    }
+    entry.setVault(this, sequence);
+    snapshot = snapshot.with(sequence, entry);
+    modCount.incrementAndGet();
+    for (EntryIndex index : indexes) {
+      index.add(entry);
+    }
+    if (previous != null) {
+      record(VaultEvent.Type.UPDATED, entry, snapshot.position(sequence));
+    } else {
+      record(VaultEvent.Type.ADDED, entry, snapshot.size() - 1);
+    }
   }
 
   /**
@@ -60,13 +194,39 @@ public class Vault {
    * @return true if successfully removed, false if not
    */
   public boolean removeEntry(String entryId) {
-    for (int i = 0; i < entries.size(); i++) {
-      if (entries.get(i).getId().equals(entryId)) {
-        entries.remove(i);
-        return true;
+    return write(() -> deleteEntry(entryId));
+  }
+
+  /**
+   * Removes several entries by ID under one write lock, ids not in the vault are ignored.
+   *
+   * @param entryIds to remove
+   * @return number of entries removed
+   */
+  public int removeAll(Collection<String> entryIds) {
+    return write(() -> {
+      int removed = 0;
+      for (String entryId : entryIds) {
+        if (deleteEntry(entryId)) {
+          removed++;
+        }
       }
+      return removed;
+    });
+  }
+
+  private boolean deleteEntry(String entryId) {
+    PasswordEntry removed = entries.remove(EntryId.parse(entryId));
+    if (removed == null) {
+      return false;
     }
-    return false;
+    int position = snapshot.position(removed.getSequence());
+    snapshot = snapshot.without(removed.getSequence());
+    record(VaultEvent.Type.REMOVED, removed, position);
+    detach(removed);
+    usage.forget(removed.getEntryId());
+    modCount.incrementAndGet();
+    return true;
   }
 
   /**
@@ -76,12 +236,8 @@ public class Vault {
    * @return the entry, null if not found
    */
   public PasswordEntry getEntry(String entryId) {
-    for (PasswordEntry entry : entries) {
-      if (entry.getId().equals(entryId)) {
-        return entry;
-      }
-    }
-    return null;
+    EntryId id = EntryId.parse(entryId);
+    return read(() -> entries.get(id));
   }
 
   /**
@@ -90,7 +246,28 @@ public class Vault {
    * @return ArrayList copy for safety
    */
   public List<PasswordEntry> getAllEntries() {
-    return new ArrayList<>(entries);
+    return new ArrayList<>(snapshot);
+  }
+
+  /**
+   * Immutable view of all entries as they are now, later changes to the vault don't affect
+   * it. O(1), so callers can take one whenever they need a stable list.
+   *
+   * @return current snapshot in vault order
+   */
+  public VaultSnapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * The current snapshot together with the number of the last change it includes, read
+   * under one lock, so a view loaded from it can apply later deliveries row by row.
+   *
+   * @return {@link VaultEvent.Type#BULK_CHANGED} event for the vault as it is now, numbered 0
+   *     before any change
+   */
+  public VaultEvent latestChange() {
+    return read(() -> VaultEvent.bulk(snapshot, lastChange, lastChange));
   }
 
   /**
@@ -100,30 +277,439 @@ public class Vault {
    * @return all the matched searches
    */
   public List<PasswordEntry> search(String searchText) {
-    if (searchText == null || searchText.trim().isEmpty()) {
+    SearchMatcher matcher = SearchMatcher.compile(searchText);
+    if (matcher.isMatchAll()) {
       return getAllEntries();
     }
+    if (matcher.getQuery().length() >= TrigramIndex.GRAM_LENGTH) {
+      List<PasswordEntry> results = read(() ->
+          searchIndex.search(matcher, BY_POSITION, entries.size() / INDEX_SELECTIVITY));
+      if (results != null) {
+        return results;
+      }
+    }
+    return scan(matcher::matches);
+  }
+
+  /**
+   * Typo tolerant search over titles, usernames and urls, best matches first.
+   * Entries are ranked by edit distance to the query, then by vault order.
+   *
+   * @param query text being searched, one typo is allowed for every three characters
+   * @param limit most results to return
+   * @return up to limit closest entries, or the first limit entries for a blank query
+   */
+  public List<PasswordEntry> fuzzySearch(String query, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    PasswordEntry[] all = snapshot.toArray(new PasswordEntry[0]);
+    FuzzyMatcher matcher = FuzzyMatcher.compile(query);
+    if (matcher == null) {
+      return new ArrayList<>(Arrays.asList(all).subList(0, Math.min(limit, all.length)));
+    }
+
+    int chunks = 1;
+    if (all.length >= PARALLEL_SCAN_THRESHOLD) {
+      chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+    }
+    int chunkSize = (all.length + chunks - 1) / chunks;
+    IntStream chunkIndexes = IntStream.range(0, chunks);
+    if (chunks > 1) {
+      chunkIndexes = chunkIndexes.parallel();
+    }
+    TopK<RankedEntry> best = chunkIndexes.mapToObj(chunk -> {
+      TopK<RankedEntry> local = new TopK<>(limit, RankedEntry.BEST_FIRST);
+      int end = Math.min(all.length, (chunk + 1) * chunkSize);
+      for (int i = chunk * chunkSize; i < end; i++) {
+        int distance = matcher.distance(all[i]);
+        if (distance != FuzzyMatcher.NO_MATCH) {
+          local.offer(new RankedEntry(all[i], distance));
+        }
+      }
+      return local;
+    }).reduce(TopK::merge).orElseThrow();
 
     List<PasswordEntry> results = new ArrayList<>();
-    for (PasswordEntry entry : entries) {
-      if (entry.matchesSearch(searchText)) {
-        results.add(entry);
+    for (RankedEntry ranked : best.toList()) {
+      results.add(ranked.entry);
+    }
+    return results;
+  }
+
+  /**
+   * An entry with its fuzzy match distance.
+   */
+  private static final class RankedEntry {
+    static final Comparator<RankedEntry> BEST_FIRST =
+        Comparator.<RankedEntry>comparingInt(ranked -> ranked.distance)
+            .thenComparingLong(ranked -> ranked.entry.getSequence());
+
+    private final PasswordEntry entry;
+    private final int distance;
+
+    RankedEntry(PasswordEntry entry, int distance) {
+      this.entry = entry;
+      this.distance = distance;
+    }
+  }
+
+  /**
+   * Completes what has been typed into the search box from entry titles, usernames and url
+   * hosts. Costs one step per trie edge of the prefix, plus the completions returned. Terms
+   * of the entries used most lately come first, ranked by their decayed use, so it also
+   * reads the usage sketch's {@value UsageSketch#TRACKED} most used entries.
+   *
+   * @param prefix typed so far, case doesn't matter
+   * @param limit most completions to return, must be positive
+   * @return completions, those used most lately first and then those shared by the most
+   *     entries, empty for a blank prefix
+   */
+  public List<String> complete(String prefix, int limit) {
+    return complete(prefix, limit, System.currentTimeMillis());
+  }
+
+  List<String> complete(String prefix, int limit, long now) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    if (prefix == null) {
+      return new ArrayList<>();
+    }
+    return read(() -> rankByUse(prefix, completionIndex.complete(prefix, limit), limit, now));
+  }
+
+  /**
+   * Puts the terms of lately used entries that complete the prefix ahead of the index's
+   * ranking, each scored by the summed use of the entries it came from. Called under the
+   * read lock.
+   */
+  private List<String> rankByUse(String prefix, List<String> ranked, int limit, long now) {
+    String key = SearchMatcher.fold(prefix.trim());
+    if (key.isEmpty()) {
+      return ranked;
+    }
+    Map<String, Double> used = new HashMap<>();
+    Map<String, String> shown = new HashMap<>();
+    for (String term : ranked) {
+      shown.put(SearchMatcher.fold(term), term);
+    }
+    for (EntryId id : usage.top(UsageSketch.TRACKED)) {
+      PasswordEntry entry = entries.get(id);
+      if (entry == null) {
+        continue;
+      }
+      double count = usage.count(id, now);
+      for (Map.Entry<String, String> term : CompletionIndex.terms(entry).entrySet()) {
+        if (term.getKey().startsWith(key)) {
+          used.merge(term.getKey(), count, Double::sum);
+          shown.putIfAbsent(term.getKey(), term.getValue());
+        }
+      }
+    }
+    if (used.isEmpty()) {
+      return ranked;
+    }
+    List<String> keys = new ArrayList<>(used.keySet());
+    keys.sort(Comparator.comparingDouble((String term) -> used.get(term)).reversed()
+        .thenComparing(Comparator.naturalOrder()));
+    for (String term : ranked) {
+      String folded = SearchMatcher.fold(term);
+      if (!used.containsKey(folded)) {
+        keys.add(folded);
       }
     }
+    List<String> results = new ArrayList<>();
+    for (int i = 0; i < keys.size() && i < limit; i++) {
+      results.add(shown.get(keys.get(i)));
+    }
     return results;
   }
 
+  /**
+   * Starts a search session, for searching as the user types.
+   *
+   * @return a new session with no previous query
+   */
+  public SearchSession newSearchSession() {
+    return new SearchSession();
+  }
+
+  /**
+   * Remembers the last query and its hits. When the next query contains the last one, for
+   * example a character was typed, only the previous hits can match so only they are
+   * checked. Any other query, or any change to the vault, runs a full search.
+   */
+  public final class SearchSession {
+    private SearchMatcher lastMatcher;
+    private List<PasswordEntry> lastResults;
+    private long lastModCount;
+
+    private SearchSession() {
+    }
+
+    /**
+     * Searches all entries, refining the previous results where possible.
+     *
+     * @param searchText text that is being searched
+     * @return all the matched searches
+     */
+    public List<PasswordEntry> search(String searchText) {
+      SearchMatcher matcher = SearchMatcher.compile(searchText);
+      // Read before searching, so a change made during the search invalidates the results
+      long searchModCount = modCount.get();
+      List<PasswordEntry> results;
+      if (canRefine(matcher, searchModCount)) {
+        results = new ArrayList<>();
+        for (PasswordEntry entry : lastResults) {
+          if (matcher.matches(entry)) {
+            results.add(entry);
+          }
+        }
+      } else {
+        results = Vault.this.search(searchText);
+      }
+      lastMatcher = matcher;
+      lastResults = results;
+      lastModCount = searchModCount;
+      return new ArrayList<>(results);
+    }
+
+    private boolean canRefine(SearchMatcher matcher, long currentModCount) {
+      return lastResults != null && lastModCount == currentModCount && !lastMatcher.isMatchAll()
+          && !matcher.isMatchAll() && matcher.getQuery().contains(lastMatcher.getQuery());
+    }
+  }
+
+  /**
+   * Starts a lazy query over the entries, for paging results or counting them without
+   * building a list of every match.
+   *
+   * @return a query matching every entry
+   */
+  public Query query() {
+    return new Query();
+  }
+
+  /**
+   * Lazy query over the vault's entries, built up with filters and a page window.
+   * Nothing runs until {@link #stream()}, {@link #list()} or {@link #count()} is called.
+   * Results come from the snapshot taken at that point, or from the category and search
+   * indexes when those narrow things down. A query belongs to one thread.
+   */
+  public final class Query {
+    private String searchText;
+    private String category;
+    private boolean byCategory;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    private Query() {
+    }
+
+    /**
+     * Keeps entries matching a search, as {@link Vault#search(String)} does.
+     *
+     * @param searchText text that is being searched, blank matches everything
+     * @return this query
+     */
+    public Query matching(String searchText) {
+      this.searchText = searchText;
+      return this;
+    }
+
+    /**
+     * Keeps entries in one category.
+     *
+     * @param category to keep, null for entries without a category
+     * @return this query
+     */
+    public Query inCategory(String category) {
+      this.category = category;
+      this.byCategory = true;
+      return this;
+    }
+
+    /**
+     * Skips the first matches, for later pages.
+     *
+     * @param offset matches to skip, must not be negative
+     * @return this query
+     */
+    public Query offset(int offset) {
+      if (offset < 0) {
+        throw new IllegalArgumentException("Offset can't be negative");
+      }
+      this.offset = offset;
+      return this;
+    }
+
+    /**
+     * Stops after a number of matches.
+     *
+     * @param limit most matches to return, must not be negative
+     * @return this query
+     */
+    public Query limit(int limit) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("Limit can't be negative");
+      }
+      this.limit = limit;
+      return this;
+    }
+
+    /**
+     * Runs the query lazily, entries are only matched as the stream is consumed.
+     *
+     * @return matching entries in vault order, within the page window
+     */
+    public Stream<PasswordEntry> stream() {
+      SearchMatcher matcher = SearchMatcher.compile(searchText);
+      if (matcher.isMatchAll() && !byCategory) {
+        // Seek straight to the page in the snapshot
+        VaultSnapshot current = snapshot;
+        int start = Math.min(offset, current.size());
+        Spliterator<PasswordEntry> page = Spliterators.spliterator(current.iterator(start),
+            current.size() - start, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(page, false).limit(limit);
+      }
+      Stream<PasswordEntry> matches;
+      if (byCategory) {
+        String wanted = category;
+        // An entry moved to another category after the walk started is left out
+        matches = read(() -> categoryIndex.stream(wanted))
+            .filter(entry -> Objects.equals(wanted, entry.getCategory()));
+        if (!matcher.isMatchAll()) {
+          matches = matches.filter(matcher::matches);
+        }
+      } else {
+        List<PasswordEntry> indexed = null;
+        if (matcher.getQuery().length() >= TrigramIndex.GRAM_LENGTH) {
+          indexed = read(() ->
+              searchIndex.search(matcher, BY_POSITION, entries.size() / INDEX_SELECTIVITY));
+        }
+        matches = indexed != null ? indexed.stream() : snapshot.stream().filter(matcher::matches);
+      }
+      return matches.skip(offset).limit(limit);
+    }
+
+    /**
+     * Runs the query into a list.
+     *
+     * @return matching entries in vault order, within the page window
+     */
+    public List<PasswordEntry> list() {
+      return stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the matches within the page window without collecting them. Unfiltered and
+     * category only queries are answered from sizes kept by the vault.
+     *
+     * @return number of entries {@link #stream()} would return
+     */
+    public long count() {
+      SearchMatcher matcher = SearchMatcher.compile(searchText);
+      if (!matcher.isMatchAll()) {
+        return stream().count();
+      }
+      String wanted = category;
+      long total = byCategory ? read(() -> categoryIndex.count(wanted)) : snapshot.size();
+      return Math.max(0, Math.min(total - offset, limit));
+    }
+  }
+
+  /**
+   * Finds the entries matching a parsed query. The index giving the fewest candidates for
+   * one of its terms supplies them and only the other terms are checked, a query with no
+   * indexed terms scans the vault.
+   *
+   * @param query to run
+   * @return matching entries in vault order
+   */
+  public List<PasswordEntry> find(SearchQuery query) {
+    List<PasswordEntry> indexed = read(() -> planner().plan(query).run());
+    return indexed != null ? indexed : scan(query::matches);
+  }
+
+  /**
+   * Describes how {@link #find(SearchQuery)} would run a query against the vault as it is
+   * now: the index used and how many candidates it gives, the terms left to check on them,
+   * and the lookups that weren't chosen.
+   *
+   * @param query to plan
+   * @return plan text, one step per line
+   */
+  public String explain(SearchQuery query) {
+    return read(() -> planner().plan(query).explain());
+  }
+
+  private QueryPlanner planner() {
+    return new QueryPlanner(entries, snapshot, categoryIndex, hostIndex, tagIndex,
+        modifiedIndex, searchIndex);
+  }
+
+  /**
+   * Entries updated at or after a time, for syncing changes.
+   *
+   * @param since earliest update time to include
+   * @return matching entries, least recently updated first
+   */
+  public List<PasswordEntry> getModifiedSince(LocalDateTime since) {
+    long millis = PasswordEntry.toMillis(since);
+    return read(() -> modifiedIndex.since(millis));
+  }
+
+  /**
+   * Entries not updated since a time, such as passwords older than 90 days.
+   *
+   * @param cutoff entries updated before this are returned
+   * @return stale entries, least recently updated first
+   */
+  public List<PasswordEntry> getNotModifiedSince(LocalDateTime cutoff) {
+    long millis = PasswordEntry.toMillis(cutoff);
+    return read(() -> modifiedIndex.before(millis));
+  }
+
+  /**
+   * The most recently edited entries.
+   *
+   * @param limit most entries to return, must be positive
+   * @return up to limit entries, most recently updated first
+   */
+  public List<PasswordEntry> getRecentlyModified(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    return read(() -> modifiedIndex.newest(limit));
+  }
+
   /**
    * Get entries by category.
    *
-   * @param category searching for
-   * @return matched entries
+   * @param category searching for, null for entries without a category
+   * @return matched entries in vault order
    */
   public List<PasswordEntry> getEntriesByCategory(String category) {
-    List<PasswordEntry> results = new ArrayList<>();
+    return read(() -> categoryIndex.entries(category));
+  }
 
-    for (PasswordEntry entry : entries) {
-      if (category.equals(entry.getCategory())) {
+  /**
+   * Collects the entries passing a filter in vault order, in parallel for large vaults.
+   * Runs over the current snapshot, so it needs no lock.
+   *
+   * @param filter to apply to every entry
+   * @return matched entries
+   */
+  private List<PasswordEntry> scan(Predicate<PasswordEntry> filter) {
+    VaultSnapshot current = snapshot;
+    if (current.size() >= PARALLEL_SCAN_THRESHOLD) {
+      return Arrays.stream(current.toArray(new PasswordEntry[0])).parallel()
+          .filter(filter).collect(Collectors.toList());
+    }
+    List<PasswordEntry> results = new ArrayList<>();
+    for (PasswordEntry entry : current) {
+      if (filter.test(entry)) {
         results.add(entry);
       }
     }
@@ -133,18 +719,137 @@ public class Vault {
   /**
    * Gets all unique categories in the vault.
    *
-   * @return all unique categories as a List
+   * @return all unique categories, sorted, entries without a category aren't counted
    */
   public List<String> getCategories() {
-    List<String> categories = new ArrayList<>();
-    for (PasswordEntry entry : entries) {
-      String category = entry.getCategory();
-      if (!categories.contains(category)) {
-        categories.add(category);
+    return read(categoryIndex::categories);
+  }
+
+  /**
+   * Counts the entries in each category.
+   *
+   * @return entry count keyed by category, in category order
+   */
+  public Map<String, Integer> getCategoryCounts() {
+    return read(categoryIndex::counts);
+  }
+
+  /**
+   * Finds the entries whose tags pass a filter, using the tag bitmaps.
+   *
+   * @param filter tags to require, accept and reject
+   * @return matching entries in vault order
+   */
+  public List<PasswordEntry> findByTags(TagFilter filter) {
+    return read(() -> {
+      VaultSnapshot current = snapshot;
+      CompressedBitmap positions = tagIndex.find(filter);
+      List<PasswordEntry> results = new ArrayList<>(positions.cardinality());
+      positions.forEach(position -> results.add(current.bySequence(position)));
+      return results;
+    });
+  }
+
+  /**
+   * Counts the entries whose tags pass a filter without collecting them.
+   *
+   * @param filter tags to require, accept and reject
+   * @return number of matching entries
+   */
+  public int countByTags(TagFilter filter) {
+    return read(() -> tagIndex.find(filter).cardinality());
+  }
+
+  /**
+   * Counts the entries carrying each tag.
+   *
+   * @return entry count keyed by tag, in tag order
+   */
+  public Map<String, Integer> getTagCounts() {
+    return read(tagIndex::counts);
+  }
+
+  /**
+   * Finds the credentials for a web page, for filling in logins. An entry matches when its
+   * url is on the page's host, on a domain above it or on any other host under the domain
+   * that was registered, so a page on login.example.com finds entries for login.example.com,
+   * example.com and www.example.com. Scheme, port and path don't matter and international
+   * names match their punycode form. Costs one step per label of the host plus the size of
+   * the answer, however large the vault is.
+   *
+   * @param url of the page, or just its host
+   * @return entries for the page's own host, then the domains above it nearest first, then
+   *     the rest, each group in vault order, empty if the url has no host
+   */
+  public List<PasswordEntry> findBySite(String url) {
+    String host = HostName.of(url);
+    if (host == null) {
+      return new ArrayList<>();
+    }
+    return read(() -> hostIndex.site(host));
+  }
+
+  /**
+   * Counts a use of an entry, such as copying its password or editing it. Uses fade with a
+   * half life of two weeks, and an entry that isn't in this vault is ignored.
+   *
+   * @param entry that was used
+   */
+  public void recordUse(PasswordEntry entry) {
+    recordUse(entry, System.currentTimeMillis());
+  }
+
+  void recordUse(PasswordEntry entry, long now) {
+    write(() -> {
+      if (entry.getVault() == this) {
+        usage.record(entry.getEntryId(), now);
       }
+    });
+  }
+
+  /**
+   * The entries used most lately, for pinning above the rest. Read from a short list the
+   * usage sketch keeps in order, so it costs O(limit) however large the vault is.
+   *
+   * @param limit most entries to return, only the top 32 are kept
+   * @return entries most used first
+   * @throws IllegalArgumentException if limit isn't positive
+   */
+  public List<PasswordEntry> getFrequentEntries(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
     }
-    Collections.sort(categories);
-    return categories;
+    return read(() -> {
+      List<PasswordEntry> results = new ArrayList<>();
+      for (EntryId id : usage.top(limit)) {
+        PasswordEntry entry = entries.get(id);
+        if (entry != null) {
+          results.add(entry);
+        }
+      }
+      return results;
+    });
+  }
+
+  /**
+   * Copy of the usage counts, for saving with the vault.
+   *
+   * @return usage sketch
+   */
+  public UsageSketch getUsage() {
+    return readOptimistic(usage::copy);
+  }
+
+  /**
+   * Replaces the usage counts, after loading the vault.
+   *
+   * @param usage sketch read back, null to start counting afresh
+   */
+  public void setUsage(UsageSketch usage) {
+    UsageSketch replacement = usage == null ? new UsageSketch() : usage.copy();
+    write(() -> {
+      this.usage = replacement;
+    });
   }
 
   /**
@@ -153,14 +858,317 @@ public class Vault {
    * @return number of entries
    */
   public int getEntryCount() {
-    return entries.size();
+    return snapshot.size();
   }
 
   /**
    * Clears all password entries.
    */
   public void clear() {
-    entries.clear();
+    write(() -> {
+      for (PasswordEntry entry : entries.values()) {
+        entry.setVault(null, 0);
+      }
+      for (EntryIndex index : indexes) {
+        index.clear();
+      }
+      entries.clear();
+      snapshot = VaultSnapshot.EMPTY;
+      usage = new UsageSketch();
+      modCount.incrementAndGet();
+      if (!listeners.isEmpty()) {
+        lastChange++;
+        pendingEvents.add(VaultEvent.bulk(snapshot, lastChange, lastChange));
+      }
+    });
+  }
+
+  /**
+   * Re-indexes an entry after one of its fields changed, called by the entry itself.
+   *
+   * @param entry that changed
+   */
+  void entryChanged(PasswordEntry entry) {
+    write(() -> {
+      if (reindex(entry)) {
+        record(VaultEvent.Type.UPDATED, entry, snapshot.position(entry.getSequence()));
+      }
+    });
+  }
+
+  /**
+   * Wipes the decrypted password and notes of every entry, sealing any that changed first,
+   * called before the vault is locked.
+   */
+  public void closeSecrets() {
+    write(() -> {
+      for (PasswordEntry entry : entries.values()) {
+        entry.closeSecrets();
+      }
+    });
+  }
+
+  /**
+   * Returns the vault's shared copy of a field value, so entries with the same category,
+   * username or url hold one string between them.
+   *
+   * @param value to pool, may be null
+   * @return equal pooled string, or null
+   */
+  String intern(String value) {
+    return strings.intern(value);
+  }
+
+  private boolean reindex(PasswordEntry entry) {
+    // The entry may have been removed while it was being edited
+    if (entry.getVault() != this) {
+      return false;
+    }
+    modCount.incrementAndGet();
+    for (EntryIndex index : indexes) {
+      index.update(entry);
+    }
+    return true;
+  }
+
+  /**
+   * Registers a listener for changes to this vault.
+   *
+   * @param listener to notify
+   */
+  public void addListener(VaultListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener can't be null");
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Stops notifying a listener.
+   *
+   * @param listener to remove
+   */
+  public void removeListener(VaultListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Runs several changes as one transaction for listeners, who get all of its events in one
+   * call when it ends. Each change still locks on its own, so other threads may write in
+   * between. Batches on the same thread nest into the outermost one.
+   *
+   * @param changes to make
+   */
+  public void batch(Runnable changes) {
+    if (batchEvents.get() != null) {
+      changes.run();
+      return;
+    }
+    List<VaultEvent> events = new ArrayList<>();
+    batchEvents.set(events);
+    try {
+      changes.run();
+    } finally {
+      batchEvents.remove();
+      notifyListeners(events);
+    }
+  }
+
+  private void record(VaultEvent.Type type, PasswordEntry entry, int index) {
+    if (!listeners.isEmpty()) {
+      lastChange++;
+      pendingEvents.add(new VaultEvent(type, entry, index, snapshot, lastChange, lastChange));
+    }
+  }
+
+  /**
+   * Hands the events of a finished write to the listeners, or to the batch it is part of.
+   */
+  private void publish(List<VaultEvent> events) {
+    List<VaultEvent> batch = batchEvents.get();
+    if (batch != null) {
+      batch.addAll(events);
+    } else {
+      notifyListeners(events);
+    }
+  }
+
+  private void notifyListeners(List<VaultEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    List<VaultEvent> coalesced = Collections.unmodifiableList(coalesce(events));
+    for (VaultListener listener : listeners) {
+      listener.vaultChanged(coalesced);
+    }
+  }
+
+  /**
+   * Folds updates of the same entry made one straight after the other into the last one,
+   * and replaces long or bulk runs of events with one bulk change.
+   */
+  private static List<VaultEvent> coalesce(List<VaultEvent> events) {
+    VaultEvent last = events.get(events.size() - 1);
+    VaultEvent bulk = VaultEvent.bulk(last.getSnapshot(), events.get(0).getFirstSequence(),
+        last.getSequence());
+    List<VaultEvent> result = new ArrayList<>();
+    for (VaultEvent event : events) {
+      if (event.getType() == VaultEvent.Type.BULK_CHANGED) {
+        return List.of(bulk);
+      }
+      int end = result.size() - 1;
+      VaultEvent previous = end >= 0 ? result.get(end) : null;
+      if (previous != null && event.getType() == VaultEvent.Type.UPDATED
+          && previous.getType() == VaultEvent.Type.UPDATED
+          && previous.getEntry() == event.getEntry()
+          && previous.getSequence() + 1 == event.getFirstSequence()) {
+        result.set(end, new VaultEvent(VaultEvent.Type.UPDATED, event.getEntry(),
+            event.getIndex(), event.getSnapshot(), previous.getFirstSequence(),
+            event.getSequence()));
+      } else {
+        result.add(event);
+      }
+    }
+    if (result.size() > MAX_ROW_EVENTS) {
+      return List.of(bulk);
+    }
+    return result;
+  }
+
+  /**
+   * Runs a read of the entry map or the indexes under the read lock. Those are plain hash
+   * maps and tries that a writer changes in place, and walking one mid change can loop or
+   * fail in ways a retry can't recover from, so they are never read optimistically.
+   *
+   * @param reader the read to run
+   * @return the reader's result
+   */
+  private <T> T read(Supplier<T> reader) {
+    long stamp = lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Runs a read of plain fields and fixed size arrays, first optimistically without locking
+   * and again under the read lock if a write happened meanwhile. The reader must not walk
+   * any collection and must have no side effects, since a torn read is thrown away.
+   *
+   * @param reader the read to run
+   * @return the reader's result
+   */
+  private <T> T readOptimistic(Supplier<T> reader) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        T result = reader.get();
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // Inconsistent view from a concurrent write, retried below
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Runs a change under the write lock, then tells listeners about it once unlocked.
+   *
+   * @param writer the change to make
+   * @return the writer's result
+   */
+  private <T> T write(Supplier<T> writer) {
+    List<VaultEvent> events = List.of();
+    long stamp = lock.writeLock();
+    try {
+      return writer.get();
+    } finally {
+      if (!pendingEvents.isEmpty()) {
+        events = pendingEvents;
+        pendingEvents = new ArrayList<>();
+      }
+      lock.unlockWrite(stamp);
+      if (!events.isEmpty()) {
+        publish(events);
+      }
+    }
+  }
+
+  private void write(Runnable writer) {
+    write(() -> {
+      writer.run();
+      return null;
+    });
+  }
+
+  /**
+   * Drops a removed entry from the indexes and releases it from this vault.
+   */
+  private void detach(PasswordEntry entry) {
+    for (EntryIndex index : indexes) {
+      index.remove(entry);
+    }
+    entry.setVault(null, 0);
+  }
+
+  /**
+   * Derives a key from the vault key for one purpose, such as keyed password hashes.
+   *
+   * @param purpose label naming what the key is for
+   * @return HmacSHA256 key
+   * @throws IllegalStateException if the vault hasn't been saved or loaded yet
+   */
+  public SecretKey deriveKey(String purpose) {
+    SecretSealer current = readOptimistic(() -> sealer);
+    if (current == null) {
+      throw new IllegalStateException("Vault has no key until it is saved or loaded");
+    }
+    return current.deriveSubkey(purpose);
+  }
+
+  /**
+   * Makes the sealed secrets of every entry openable on demand, called after loading.
+   * Only the metadata tier has been decrypted at this point. Entries from files written
+   * before notes had trigrams have their notes opened once here to index them.
+   *
+   * @param sealer holding the key derived from the master password
+   */
+  public void unlock(SecretSealer sealer) {
+    write(() -> {
+      this.sealer = sealer;
+      for (PasswordEntry entry : entries.values()) {
+        entry.attachSealer(sealer);
+        // Saved before notes had trigrams, so its notes are opened once to index them
+        if (!entry.hasNoteGrams()) {
+          modCount.incrementAndGet();
+          searchIndex.update(entry);
+        }
+      }
+    });
+  }
+
+  /**
+   * Seals the secrets of every entry that was added or changed since the last save.
+   * Entries that were never opened keep their existing sealed copy.
+   *
+   * @param sealer holding the key derived from the master password
+   */
+  public void sealSecrets(SecretSealer sealer) {
+    write(() -> {
+      this.sealer = sealer;
+      for (PasswordEntry entry : entries.values()) {
+        entry.sealSecrets(sealer);
+      }
+    });
   }
 
   /**
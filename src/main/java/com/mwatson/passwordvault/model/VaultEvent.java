@@ -0,0 +1,129 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.List;
+
+/**
+ * One change to a vault, delivered to {@link VaultListener}s once the change is done.
+ * Row events carry the entry's position, so a view showing the whole vault can update just
+ * that row, and the snapshot the position refers to.
+ *
+ * <p>Each change is numbered under the vault's write lock. Events are delivered once the lock
+ * is released, and batches hold theirs back until they end, so a listener can receive changes
+ * from different threads out of order. {@link #follows(List, long)} tells whether a delivery
+ * can be applied row by row to a view showing a given change, otherwise the view should
+ * reload from the last event's snapshot, and a delivery whose last change is no newer than
+ * one already shown should be dropped.
+ */
+public final class VaultEvent {
+  /**
+   * What happened to the vault.
+   */
+  public enum Type {
+    /** An entry was added at the end. */
+    ADDED,
+    /** An entry's fields changed, or it was replaced by one with the same id. */
+    UPDATED,
+    /** An entry was removed. */
+    REMOVED,
+    /** Too much changed to describe row by row, views should reload. */
+    BULK_CHANGED
+  }
+
+  private final Type type;
+  private final PasswordEntry entry;
+  private final int index;
+  private final VaultSnapshot snapshot;
+  // Numbers of the first and last change this event stands for, more than one once folded
+  private final long firstSequence;
+  private final long sequence;
+
+  VaultEvent(Type type, PasswordEntry entry, int index, VaultSnapshot snapshot,
+      long firstSequence, long sequence) {
+    this.type = type;
+    this.entry = entry;
+    this.index = index;
+    this.snapshot = snapshot;
+    this.firstSequence = firstSequence;
+    this.sequence = sequence;
+  }
+
+  static VaultEvent bulk(VaultSnapshot snapshot, long firstSequence, long sequence) {
+    return new VaultEvent(Type.BULK_CHANGED, null, -1, snapshot, firstSequence, sequence);
+  }
+
+  /**
+   * Whether a delivery is exactly the changes that came after one a view is showing, with
+   * none missing, so its row events line up with the view's rows.
+   *
+   * @param events one delivery
+   * @param shown number of the last change the view shows, negative if unknown
+   * @return true to apply the events row by row, false to reload from the last snapshot
+   */
+  public static boolean follows(List<VaultEvent> events, long shown) {
+    if (shown < 0) {
+      return false;
+    }
+    long expected = shown + 1;
+    for (VaultEvent event : events) {
+      if (event.firstSequence != expected) {
+        return false;
+      }
+      expected = event.sequence + 1;
+    }
+    return true;
+  }
+
+  /**
+   * Get type.
+   *
+   * @return kind of change
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get entry.
+   *
+   * @return entry that changed, null for {@link Type#BULK_CHANGED}
+   */
+  public PasswordEntry getEntry() {
+    return entry;
+  }
+
+  /**
+   * Position of the entry in vault order, for a removal the position it had.
+   *
+   * @return row index, -1 for {@link Type#BULK_CHANGED}
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Entries as they were straight after this change.
+   *
+   * @return snapshot the index refers to
+   */
+  public VaultSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  long getFirstSequence() {
+    return firstSequence;
+  }
+
+  /**
+   * Number of this change, later changes to the vault have higher numbers.
+   *
+   * @return change number, from 1
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  @Override
+  public String toString() {
+    return type + "@" + index;
+  }
+}
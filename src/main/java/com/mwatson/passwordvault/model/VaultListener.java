@@ -0,0 +1,18 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.List;
+
+/**
+ * Told about changes to a vault, see {@link Vault#addListener(VaultListener)}.
+ */
+@FunctionalInterface
+public interface VaultListener {
+  /**
+   * Called once per write or {@link Vault#batch(Runnable)}, after the vault is unlocked and
+   * on the thread that made the change.
+   *
+   * @param events changes in the order they happened, never empty. Deliveries from
+   *     different threads may arrive out of order, see {@link VaultEvent#follows(List, long)}
+   */
+  void vaultChanged(List<VaultEvent> events);
+}
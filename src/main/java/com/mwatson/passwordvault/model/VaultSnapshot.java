@@ -0,0 +1,280 @@
+package com.mwatson.passwordvault.model;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable view of the entries in a vault at one point in time, in vault order.
+ *
+ * <p>Backed by a persistent AVL tree keyed on each entry's insertion sequence. A change to the
+ * vault copies only the O(log n) nodes on the path it touches and shares the rest, so taking a
+ * snapshot is O(1) and holding one costs nothing until the vault moves on. Positional access
+ * is O(log n), iteration is O(n).
+ */
+public final class VaultSnapshot extends AbstractList<PasswordEntry> {
+  static final VaultSnapshot EMPTY = new VaultSnapshot(null);
+
+  private final Node root;
+
+  private VaultSnapshot(Node root) {
+    this.root = root;
+  }
+
+  @Override
+  public PasswordEntry get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+    Node node = root;
+    while (true) {
+      int leftSize = sizeOf(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else if (index == leftSize) {
+        return node.entry;
+      } else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return sizeOf(root);
+  }
+
+  @Override
+  public Iterator<PasswordEntry> iterator() {
+    return new InOrder(root, 0);
+  }
+
+  /**
+   * Iterates from a position on, finding the start in O(log n) rather than stepping over
+   * every entry before it.
+   *
+   * @param from index of the first entry, may be past the end
+   * @return iterator over the entries from that index in vault order
+   */
+  Iterator<PasswordEntry> iterator(int from) {
+    if (from < 0) {
+      throw new IndexOutOfBoundsException("Index: " + from);
+    }
+    return new InOrder(root, from);
+  }
+
+  /**
+   * Finds where the entry stored at a sequence sits in vault order.
+   *
+   * @param sequence insertion position of the entry
+   * @return index, or -1 if nothing is stored there
+   */
+  int position(long sequence) {
+    int index = 0;
+    Node node = root;
+    while (node != null) {
+      if (sequence < node.key) {
+        node = node.left;
+      } else if (sequence > node.key) {
+        index += sizeOf(node.left) + 1;
+        node = node.right;
+      } else {
+        return index + sizeOf(node.left);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the entry stored at a sequence.
+   *
+   * @param sequence insertion position of the entry
+   * @return entry, or null if nothing is stored there
+   */
+  PasswordEntry bySequence(long sequence) {
+    Node node = root;
+    while (node != null) {
+      if (sequence < node.key) {
+        node = node.left;
+      } else if (sequence > node.key) {
+        node = node.right;
+      } else {
+        return node.entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a snapshot with the entry stored at the sequence, replacing any entry there.
+   *
+   * @param sequence insertion position of the entry
+   * @param entry to store
+   * @return new snapshot, this one is unchanged
+   */
+  VaultSnapshot with(long sequence, PasswordEntry entry) {
+    return new VaultSnapshot(put(root, sequence, entry));
+  }
+
+  /**
+   * Returns a snapshot without the entry at the sequence.
+   *
+   * @param sequence insertion position of the entry to drop
+   * @return new snapshot, or this one if nothing was stored there
+   */
+  VaultSnapshot without(long sequence) {
+    Node newRoot = delete(root, sequence);
+    return newRoot == root ? this : new VaultSnapshot(newRoot);
+  }
+
+  /**
+   * One immutable tree node, a subtree's size lets get(index) skip whole subtrees.
+   */
+  private static final class Node {
+    final long key;
+    final PasswordEntry entry;
+    final Node left;
+    final Node right;
+    final int height;
+    final int size;
+
+    Node(long key, PasswordEntry entry, Node left, Node right) {
+      this.key = key;
+      this.entry = entry;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = sizeOf(left) + sizeOf(right) + 1;
+    }
+  }
+
+  private static int height(Node node) {
+    return node == null ? 0 : node.height;
+  }
+
+  private static int sizeOf(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static Node put(Node node, long key, PasswordEntry entry) {
+    if (node == null) {
+      return new Node(key, entry, null, null);
+    }
+    if (key < node.key) {
+      return balance(node.key, node.entry, put(node.left, key, entry), node.right);
+    }
+    if (key > node.key) {
+      return balance(node.key, node.entry, node.left, put(node.right, key, entry));
+    }
+    return new Node(key, entry, node.left, node.right);
+  }
+
+  private static Node delete(Node node, long key) {
+    if (node == null) {
+      return null;
+    }
+    if (key < node.key) {
+      Node left = delete(node.left, key);
+      return left == node.left ? node : balance(node.key, node.entry, left, node.right);
+    }
+    if (key > node.key) {
+      Node right = delete(node.right, key);
+      return right == node.right ? node : balance(node.key, node.entry, node.left, right);
+    }
+    if (node.left == null) {
+      return node.right;
+    }
+    if (node.right == null) {
+      return node.left;
+    }
+    Node successor = node.right;
+    while (successor.left != null) {
+      successor = successor.left;
+    }
+    return balance(successor.key, successor.entry, node.left,
+        delete(node.right, successor.key));
+  }
+
+  /**
+   * Builds a node from its parts, rotating once or twice if the sides differ by more than one.
+   */
+  private static Node balance(long key, PasswordEntry entry, Node left, Node right) {
+    int difference = height(left) - height(right);
+    if (difference > 1) {
+      if (height(left.left) < height(left.right)) {
+        left = rotateLeft(left);
+      }
+      return new Node(left.key, left.entry, left.left, new Node(key, entry, left.right, right));
+    }
+    if (difference < -1) {
+      if (height(right.right) < height(right.left)) {
+        right = rotateRight(right);
+      }
+      return new Node(right.key, right.entry, new Node(key, entry, left, right.left),
+          right.right);
+    }
+    return new Node(key, entry, left, right);
+  }
+
+  private static Node rotateLeft(Node node) {
+    Node right = node.right;
+    return new Node(right.key, right.entry, new Node(node.key, node.entry, node.left,
+        right.left), right.right);
+  }
+
+  private static Node rotateRight(Node node) {
+    Node left = node.left;
+    return new Node(left.key, left.entry, left.left, new Node(node.key, node.entry,
+        left.right, node.right));
+  }
+
+  /**
+   * In-order walk keeping the path to the next node on a stack.
+   */
+  private static final class InOrder implements Iterator<PasswordEntry> {
+    private final Deque<Node> path = new ArrayDeque<>();
+
+    InOrder(Node root, int from) {
+      // Keep the nodes at or after the start position that the walk still has to visit
+      Node node = root;
+      while (node != null) {
+        int leftSize = sizeOf(node.left);
+        if (from <= leftSize) {
+          path.push(node);
+          if (from == leftSize) {
+            break;
+          }
+          node = node.left;
+        } else {
+          from -= leftSize + 1;
+          node = node.right;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !path.isEmpty();
+    }
+
+    @Override
+    public PasswordEntry next() {
+      if (path.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      Node node = path.pop();
+      pushLeft(node.right);
+      return node.entry;
+    }
+
+    private void pushLeft(Node node) {
+      while (node != null) {
+        path.push(node);
+        node = node.left;
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.mwatson.passwordvault.storage;
+
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.reflect.TypeToken;
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.UsageSketch;
+import com.mwatson.passwordvault.model.Vault;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a vault to and from its JSON form.
+ * Keeps the stored layout (id, name, an ordered entries list and the usage counts)
+ * independent of how {@link Vault} indexes its entries in memory.
+ */
+class VaultJsonAdapter implements JsonSerializer<Vault>, JsonDeserializer<Vault> {
+  private static final Type ENTRY_LIST_TYPE = new TypeToken<List<PasswordEntry>>() {}.getType();
+
+  @Override
+  public JsonElement serialize(Vault vault, Type type, JsonSerializationContext context) {
+    JsonObject json = new JsonObject();
+    json.addProperty("id", vault.getId());
+    json.addProperty("name", vault.getName());
+    json.add("entries", context.serialize(vault.snapshot(), ENTRY_LIST_TYPE));
+    json.add("usage", context.serialize(vault.getUsage(), UsageSketch.class));
+    return json;
+  }
+
+  @Override
+  public Vault deserialize(JsonElement element, Type type, JsonDeserializationContext context) {
+    if (!element.isJsonObject()) {
+      throw new JsonParseException("Vault must be a JSON object");
+    }
+    JsonObject json = element.getAsJsonObject();
+    List<PasswordEntry> entries = context.deserialize(json.get("entries"), ENTRY_LIST_TYPE);
+    if (entries == null) {
+      entries = new ArrayList<>();
+    }
+    // Salt isn't part of the vault JSON, the caller sets it from the file wrapper
+    Vault vault = new Vault(getString(json, "id"), getString(json, "name"), entries, new byte[0]);
+    // Missing from files saved before usage was counted
+    vault.setUsage(context.deserialize(json.get("usage"), UsageSketch.class));
+    return vault;
+  }
+
+  private static String getString(JsonObject json, String member) {
+    JsonElement value = json.get(member);
+    return value == null || value.isJsonNull() ? null : value.getAsString();
+  }
+}
@@ -1,8 +1,13 @@
 package com.mwatson.passwordvault.storage;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import com.mwatson.passwordvault.model.PasswordEntry;
 import com.mwatson.passwordvault.model.Vault;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -10,14 +15,36 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Base64;
+import javax.crypto.SecretKey;
 
 /**
  * Handles saving and loading encrypted vault to and from disk.
  * Uses AES-GCM encryption with the master password.
+ *
+ * <p>The file holds two tiers. The whole vault JSON is encrypted as before, but entry
+ * passwords and notes are left out of it and stored as separately sealed values inside each
+ * entry, so unlocking only decrypts the metadata needed for listing and search.
  */
 public class VaultStorage {
   private static final String VAULT_FILE_NAME = "password-vault.dat";
 
+  // Plaintext secrets never go into the metadata tier, they are written sealed instead
+  private static final Gson METADATA_GSON = new GsonBuilder()
+      .registerTypeAdapter(Vault.class, new VaultJsonAdapter())
+      .setExclusionStrategies(new ExclusionStrategy() {
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+          return field.getDeclaringClass() == PasswordEntry.class
+              && ("password".equals(field.getName()) || "notes".equals(field.getName()));
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+          return false;
+        }
+      })
+      .create();
+
   private final EncryptionService encryptionService;
   private final Path vaultFilePath;
 
@@ -53,14 +80,15 @@ public class VaultStorage {
       throw new IllegalArgumentException("Vault and Password cannot be null");
     }
     try {
-      // Convert to JSON
-      Gson gson = new Gson();
-      String vaultJson = gson.toJson(vault);
-      // Get salt from vault
+      // Get salt from vault, derive the key once for both tiers
       byte[] salt = vault.getSalt();
+      SecretKey key = encryptionService.deriveKey(masterPassword, salt);
+      // Seal changed secrets, then convert the metadata to JSON
+      vault.sealSecrets(new SecretSealer(encryptionService, key));
+      String vaultJson = METADATA_GSON.toJson(vault);
       // Encrypt
-      EncryptionService encryptionService = new EncryptionService();
-      byte[] encrypted = encryptionService.encrypt(vaultJson, masterPassword, salt);
+      byte[] encrypted =
+          encryptionService.encrypt(vaultJson.getBytes(StandardCharsets.UTF_8), key);
 
       String encryptedBase64 = Base64.getEncoder().encodeToString(encrypted);
       String saltBase64 = Base64.getEncoder().encodeToString(salt);
@@ -94,7 +122,8 @@ public class VaultStorage {
       String fileContent = new String(Files.readAllBytes(vaultFilePath), StandardCharsets.UTF_8);
       // Parse encrypted vault wrapper
 
-      Gson gson = new Gson();
+      Gson gson = new GsonBuilder().registerTypeAdapter(Vault.class, new VaultJsonAdapter())
+          .create();
       JsonObject json = gson.fromJson(fileContent, JsonObject.class);
 
       String readSaltBase64 = json.get("saltBase64").getAsString();
@@ -103,11 +132,14 @@ public class VaultStorage {
       byte[] readSalt = Base64.getDecoder().decode(readSaltBase64);
       byte[] readEncryptedData = Base64.getDecoder().decode(readEncryptedBase64);
 
-      String decryptedJson =
-          encryptionService.decrypt(readEncryptedData, masterPassword, readSalt);
+      // Only the metadata tier is decrypted here, secrets are opened when asked for
+      SecretKey key = encryptionService.deriveKey(masterPassword, readSalt);
+      String decryptedJson = new String(encryptionService.decrypt(readEncryptedData, key),
+          StandardCharsets.UTF_8);
       Vault decryptedVault = gson.fromJson(decryptedJson, Vault.class);
 
       decryptedVault.setSalt(readSalt);
+      decryptedVault.unlock(new SecretSealer(encryptionService, key));
 
       return decryptedVault;
 
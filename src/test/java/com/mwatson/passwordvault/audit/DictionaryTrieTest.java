@@ -0,0 +1,32 @@
+package com.mwatson.passwordvault.audit;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DictionaryTrieTest {
+
+  private static List<String> find(DictionaryTrie trie, String text, int start) {
+    List<String> found = new ArrayList<>();
+    char[] chars = text.toCharArray();
+    trie.findWords(chars, start, (end, rank) -> found.add(text.substring(start, end) + rank));
+    return found;
+  }
+
+  @Test
+  public void testFindsEveryWordAtPosition() throws IOException {
+    // Test 1 every word starting at a position is found with its rank, shortest first
+    String list = "# comment\npass\n\nPassword\npas\npass\nword\n";
+    DictionaryTrie trie = DictionaryTrie.load(
+        new ByteArrayInputStream(list.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(List.of("pas3", "pass1", "password2"), find(trie, "password1", 0));
+    assertEquals(List.of("word4"), find(trie, "password1", 4));
+    assertTrue(find(trie, "password1", 1).isEmpty());
+    assertTrue(find(trie, "", 0).isEmpty());
+  }
+}
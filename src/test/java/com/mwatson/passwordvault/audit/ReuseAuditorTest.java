@@ -0,0 +1,109 @@
+package com.mwatson.passwordvault.audit;
+
+import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+
+public class ReuseAuditorTest {
+  private EncryptionService encryptionService;
+  private SecretSealer sealer;
+  private Vault vault;
+
+  @BeforeEach
+  public void setUp() {
+    encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    encryptionService.clearPassword(master);
+    vault = new Vault();
+  }
+
+  private PasswordEntry add(String title, String password) {
+    PasswordEntry entry = new PasswordEntry(title, "user",
+        password == null ? null : password.toCharArray());
+    vault.addEntry(entry);
+    return entry;
+  }
+
+  @Test
+  public void testGroupsReusedPasswords() {
+    // Test 1 entries sharing a password are grouped in vault order, blank passwords ignored
+    PasswordEntry mail = add("Mail", "hunter2");
+    PasswordEntry bank = add("Bank", "unique");
+    PasswordEntry shop = add("Shop", "hunter2");
+    add("Empty", "");
+    add("Missing", null);
+    add("Empty again", "");
+    PasswordEntry forum = add("Forum", "unique");
+    vault.sealSecrets(sealer);
+
+    ReuseAuditor auditor = ReuseAuditor.forVault(vault);
+    assertEquals(List.of(List.of(mail, shop), List.of(bank, forum)), auditor.findReused(vault));
+  }
+
+  @Test
+  public void testHashesCachedUntilPasswordSet() {
+    // Test 2 a cached hash is reused until setPassword bumps the entry's revision
+    PasswordEntry mail = add("Mail", "hunter2");
+    PasswordEntry shop = add("Shop", "hunter2");
+    ReuseAuditor auditor = new ReuseAuditor(encryptionService.deriveSubkey(
+        encryptionService.deriveKey("k".toCharArray(), new byte[16]), "test"));
+    assertEquals(1, auditor.findReused(vault).size());
+
+    // Changing the array in place bypasses setPassword, so the old hash still counts
+    mail.getPassword()[0] = 'H';
+    assertEquals(1, auditor.findReused(vault).size());
+    mail.setPassword("Hunter2".toCharArray());
+    assertTrue(auditor.findReused(vault).isEmpty());
+    shop.setPassword("Hunter2".toCharArray());
+    assertEquals(List.of(List.of(mail, shop)), auditor.findReused(vault));
+
+    vault.removeEntry(shop.getId());
+    assertTrue(auditor.findReused(vault).isEmpty());
+  }
+
+  @Test
+  public void testLargeVaultInParallel() {
+    // Test 3 vaults past the threshold are hashed in parallel with the same result
+    int groups = 100;
+    for (int i = 0; i < ReuseAuditor.PARALLEL_THRESHOLD + groups; i++) {
+      add("Site" + i, "password" + (i % groups));
+    }
+    vault.sealSecrets(sealer);
+    List<List<PasswordEntry>> reused = ReuseAuditor.forVault(vault).findReused(vault);
+    assertEquals(groups, reused.size());
+    assertEquals("Site0", reused.get(0).get(0).getTitle());
+    assertEquals("Site100", reused.get(0).get(1).getTitle());
+  }
+
+  @Test
+  public void testNeedsVaultKey() {
+    // Test 4 an unsaved vault has no key to hash under
+    assertThrows(IllegalStateException.class, () -> ReuseAuditor.forVault(vault));
+    assertThrows(IllegalArgumentException.class, () -> new ReuseAuditor(null));
+  }
+
+  @Test
+  public void testSealedEntriesStayClosed() {
+    // Test 5 auditing opens passwords into wiped copies, sealed entries stay sealed
+    PasswordEntry mail = add("Mail", "hunter2");
+    PasswordEntry shop = add("Shop", "hunter2");
+    vault.sealSecrets(sealer);
+    vault.closeSecrets();
+
+    ReuseAuditor auditor = ReuseAuditor.forVault(vault);
+    assertEquals(List.of(List.of(mail, shop)), auditor.findReused(vault));
+    assertEquals(2, new StrengthAuditor().audit(vault).size());
+    assertFalse(mail.isSecretsOpen());
+    assertFalse(shop.isSecretsOpen());
+  }
+}
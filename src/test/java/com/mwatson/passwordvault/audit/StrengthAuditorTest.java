@@ -0,0 +1,55 @@
+package com.mwatson.passwordvault.audit;
+
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+import java.util.Map;
+
+public class StrengthAuditorTest {
+
+  private static PasswordEntry add(Vault vault, String title, String password) {
+    PasswordEntry entry = new PasswordEntry(title, "user", password.toCharArray());
+    vault.addEntry(entry);
+    return entry;
+  }
+
+  @Test
+  public void testReportsWeakestFirst() {
+    // Test 1 only weak entries are reported, the easiest to guess first
+    Vault vault = new Vault();
+    PasswordEntry ok = add(vault, "Bank", "xK9#mQ2$vL7p");
+    PasswordEntry weak = add(vault, "Forum", "Summer2024");
+    PasswordEntry weakest = add(vault, "Mail", "password");
+    StrengthAuditor auditor = new StrengthAuditor();
+    assertEquals(List.of(weakest, weak), auditor.findWeak(vault));
+
+    Map<PasswordEntry, PasswordStrength> report = auditor.audit(vault);
+    assertEquals(List.of(ok, weak, weakest), List.copyOf(report.keySet()));
+    assertEquals(4, report.get(ok).getScore());
+  }
+
+  @Test
+  public void testScoresCachedUntilPasswordSet() {
+    // Test 2 a score is reused until setPassword, across parallel audits of a large vault
+    Vault vault = new Vault();
+    for (int i = 0; i < StrengthAuditor.PARALLEL_THRESHOLD * 2; i++) {
+      add(vault, "Site" + i, "password" + i);
+    }
+    PasswordEntry entry = vault.snapshot().get(0);
+    StrengthAuditor auditor = new StrengthAuditor(StrengthEstimator.getDefault());
+    assertEquals(StrengthAuditor.PARALLEL_THRESHOLD * 2, auditor.findWeak(vault).size());
+    PasswordStrength first = auditor.getStrength(entry);
+    assertSame(first, auditor.audit(vault).get(entry));
+
+    entry.setPassword("xK9#mQ2$vL7p".toCharArray());
+    PasswordStrength second = auditor.getStrength(entry);
+    assertNotSame(first, second);
+    assertEquals(StrengthAuditor.PARALLEL_THRESHOLD * 2 - 1, auditor.findWeak(vault).size());
+    assertThrows(IllegalArgumentException.class, () -> new StrengthAuditor(null));
+  }
+}
@@ -0,0 +1,49 @@
+package com.mwatson.passwordvault.audit;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StrengthEstimatorTest {
+  private final StrengthEstimator estimator = StrengthEstimator.getDefault();
+
+  private int score(String password) {
+    return estimator.estimate(password.toCharArray()).getScore();
+  }
+
+  private double log10(String password) {
+    return estimator.estimate(password.toCharArray()).getGuessesLog10();
+  }
+
+  @Test
+  public void testCommonPatternsAreWeak() {
+    // Test 1 dictionary words, l33t, sequences, repeats, keyboard rows and years score low
+    for (String weak : new String[] {"password", "P4ssw0rd", "123456", "abcdef", "987654",
+        "aaaaaaaa", "abcabcabc", "qwerty123", "zxcvbnm", "Summer2024", "dragon1990"}) {
+      assertTrue(estimator.estimate(weak.toCharArray()).isWeak(), weak);
+    }
+    assertEquals(0, score(""));
+    assertEquals(0, estimator.estimate(null).getScore());
+  }
+
+  @Test
+  public void testRandomPasswordsAreStrong() {
+    // Test 2 long passwords without patterns get the top score
+    assertEquals(4, score("xK9#mQ2$vL7p"));
+    assertEquals(4, score("g7Hk2pLq"));
+    assertFalse(estimator.estimate("Tr0ub4dor&3".toCharArray()).isWeak());
+  }
+
+  @Test
+  public void testPatternsCostLessThanBruteForce() {
+    // Test 3 each pattern makes a password of the same length cheaper to guess
+    assertTrue(log10("password") < log10("pwsdraos"));
+    assertTrue(log10("Password") > log10("password"));
+    assertTrue(log10("PaSsWoRd") > log10("Password"));
+    assertTrue(log10("p4ssw0rd") > log10("password"));
+    assertTrue(log10("monkeymonkey") < log10("monkeydragon"));
+    assertTrue(log10("1990") < log10("5731"));
+    assertEquals(2, StrengthEstimator.upperVariations("PASS".toCharArray(), 0, 4));
+  }
+}
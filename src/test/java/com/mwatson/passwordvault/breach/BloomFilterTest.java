@@ -0,0 +1,51 @@
+package com.mwatson.passwordvault.breach;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+public class BloomFilterTest {
+  @TempDir
+  Path folder;
+
+  @Test
+  public void testNoFalseNegativesFewFalsePositives() throws Exception {
+    // Test 1 added hashes always match, about 1% of others do, the filter survives a reload
+    MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+    int added = 20_000;
+    BloomFilter filter = BloomFilter.forCount(added, 10);
+    for (int i = 0; i < added; i++) {
+      filter.add(sha1.digest(("in" + i).getBytes("UTF-8")));
+    }
+    Path file = folder.resolve("filter.bloom");
+    filter.writeTo(file);
+    BloomFilter loaded = BloomFilter.readFrom(file);
+
+    int falsePositives = 0;
+    for (int i = 0; i < added; i++) {
+      assertTrue(loaded.mightContain(sha1.digest(("in" + i).getBytes("UTF-8"))));
+      if (loaded.mightContain(sha1.digest(("out" + i).getBytes("UTF-8")))) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < added / 50, "false positives: " + falsePositives);
+  }
+
+  @Test
+  public void testRejectsBadInput() throws IOException {
+    // Test 2 sizes must be positive and only filter files can be read
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 3));
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(64, 0));
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(Long.MAX_VALUE, 3));
+    Path file = folder.resolve("bad.bloom");
+    Files.write(file, new byte[12]);
+    assertThrows(IOException.class, () -> BloomFilter.readFrom(file));
+    Files.write(file, new byte[] {0x50, 0x56, 0x42, 0x46, 0, 0, 0, 0, 0, 0, 0, 1});
+    assertThrows(IOException.class, () -> BloomFilter.readFrom(file));
+  }
+}
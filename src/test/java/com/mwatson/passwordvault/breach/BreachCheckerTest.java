@@ -0,0 +1,142 @@
+package com.mwatson.passwordvault.breach;
+
+import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+public class BreachCheckerTest {
+  private static final int BREACHED = 5_000;
+
+  @TempDir
+  Path folder;
+  private Path text;
+  private Path binary;
+
+  private static String sha1Hex(String password) throws NoSuchAlgorithmException {
+    byte[] hash = MessageDigest.getInstance("SHA-1")
+        .digest(password.getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (byte b : hash) {
+      hex.append(String.format("%02X", b));
+    }
+    return hex.toString();
+  }
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    TreeSet<String> hashes = new TreeSet<>();
+    for (int i = 0; i < BREACHED; i++) {
+      hashes.add(sha1Hex("leaked" + i));
+    }
+    hashes.add(sha1Hex("password"));
+    List<String> lines = new ArrayList<>();
+    for (String hash : hashes) {
+      lines.add(hash + ":" + (hash.length() % 7 + 1));
+    }
+    // Duplicates and blank lines are tolerated
+    lines.add(1, lines.get(0));
+    lines.add("");
+    text = folder.resolve("pwned.txt");
+    binary = folder.resolve("pwned.bin");
+    Files.write(text, lines, StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void testConvertAndCheck() throws IOException {
+    // Test 1 every listed password is found across several mapped chunks, others aren't
+    assertEquals(BREACHED + 1, BreachListConverter.convert(text, binary));
+    assertEquals(BreachChecker.HEADER_LENGTH + (BREACHED + 1L) * BreachChecker.HASH_LENGTH,
+        Files.size(binary));
+    assertTrue(Files.exists(BreachChecker.bloomFileFor(binary)));
+
+    try (BreachChecker checker = BreachChecker.open(binary, 1_000)) {
+      assertEquals(BREACHED + 1, checker.size());
+      for (int i = 0; i < BREACHED; i++) {
+        assertTrue(checker.isBreached(("leaked" + i).toCharArray()));
+        assertFalse(checker.isBreached(("safe" + i).toCharArray()));
+      }
+      assertFalse(checker.isBreached(null));
+
+      Vault vault = new Vault();
+      PasswordEntry weak = new PasswordEntry("Mail", "me", "password".toCharArray());
+      vault.addEntry(new PasswordEntry("Bank", "me", "x9#Lq2!vR".toCharArray()));
+      vault.addEntry(weak);
+      vault.addEntry(new PasswordEntry("Blank", "me", new char[0]));
+      vault.addEntry(new PasswordEntry("None", "me", null));
+      assertEquals(List.of(weak), checker.findBreached(vault));
+
+      // Sealed entries are checked through wiped copies and stay sealed
+      EncryptionService encryptionService = new EncryptionService();
+      vault.sealSecrets(new SecretSealer(encryptionService,
+          encryptionService.deriveKey("master".toCharArray(), new byte[16])));
+      vault.closeSecrets();
+      assertEquals(List.of(weak), checker.findBreached(vault));
+      assertFalse(weak.isSecretsOpen());
+    }
+  }
+
+  @Test
+  public void testWithoutBloomFilter() throws IOException {
+    // Test 2 the sidecar is optional, every lookup then goes to the file
+    BreachListConverter.convert(text, binary);
+    Files.delete(BreachChecker.bloomFileFor(binary));
+    try (BreachChecker checker = BreachChecker.open(binary)) {
+      assertTrue(checker.isBreached("leaked42".toCharArray()));
+      assertFalse(checker.isBreached("leaked-42".toCharArray()));
+    }
+  }
+
+  @Test
+  public void testEmptyList() throws IOException {
+    // Test 3 an empty list converts and never matches
+    Files.write(text, new byte[0]);
+    assertEquals(0, BreachListConverter.convert(text, binary));
+    try (BreachChecker checker = BreachChecker.open(binary)) {
+      assertFalse(checker.isBreached("password".toCharArray()));
+    }
+  }
+
+  @Test
+  public void testRejectsBadInput() throws Exception {
+    // Test 4 unsorted or malformed input and files that aren't converted lists are refused
+    Files.write(text, List.of(sha1Hex("b") + ":1", sha1Hex("a") + ":1"),
+        StandardCharsets.US_ASCII);
+    if (sha1Hex("b").compareTo(sha1Hex("a")) > 0) {
+      assertThrows(IOException.class, () -> BreachListConverter.convert(text, binary));
+    }
+    Files.write(text, List.of("not a hash:1"), StandardCharsets.US_ASCII);
+    assertThrows(IOException.class, () -> BreachListConverter.convert(text, binary));
+    Files.write(text, List.of("Z".repeat(40)), StandardCharsets.US_ASCII);
+    assertThrows(IOException.class, () -> BreachListConverter.convert(text, binary));
+
+    Files.write(binary, "PVBREACH but not really".getBytes(StandardCharsets.US_ASCII));
+    assertThrows(IOException.class, () -> BreachChecker.open(binary));
+    Files.write(binary, "short".getBytes(StandardCharsets.US_ASCII));
+    assertThrows(IOException.class, () -> BreachChecker.open(binary));
+  }
+
+  @Test
+  public void testCommandLine() throws IOException {
+    // Test 5 the converter runs from the command line
+    BreachListConverter.main(new String[] {text.toString(), binary.toString()});
+    assertTrue(Files.size(binary) > BreachChecker.HEADER_LENGTH);
+    BreachListConverter.main(new String[0]);
+  }
+}
@@ -5,8 +5,10 @@ import org.junit.jupiter.api.BeforeEach;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Base64;
+import javax.crypto.SecretKey;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -254,4 +256,59 @@ public class EncryptionServiceTests {
 
     assertEquals(message, exception.getMessage());
   }
+
+  @Test
+  public void testEncryptDecryptWithDerivedKey() {
+    // Test 19 test the key based overloads round trip and reject the wrong key
+    char[] password = "masterPassword".toCharArray();
+    byte[] salt = encryptionService.generateSalt();
+    SecretKey key = encryptionService.deriveKey(password, salt);
+    byte[] original = "Secret message".getBytes(StandardCharsets.UTF_8);
+
+    byte[] encrypted = encryptionService.encrypt(original, key);
+    assertArrayEquals(original, encryptionService.decrypt(encrypted, key));
+
+    SecretKey otherKey = encryptionService.deriveKey(password, encryptionService.generateSalt());
+    assertThrows(EncryptionService.EncryptionException.class,
+        () -> encryptionService.decrypt(encrypted, otherKey));
+    encryptionService.clearPassword(password);
+  }
+
+  @Test
+  public void testDerivedKeyNullAndShortData() {
+    // Test 20 test the key based overloads reject null and too short data
+    char[] password = "test".toCharArray();
+    byte[] salt = new byte[16];
+    SecretKey key = encryptionService.deriveKey(password, salt);
+
+    assertThrows(IllegalArgumentException.class, () -> encryptionService.deriveKey(null, salt));
+    assertThrows(IllegalArgumentException.class, () -> encryptionService.deriveKey(password, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.encrypt((byte[]) null, key));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.encrypt(new byte[1], (SecretKey) null));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.decrypt((byte[]) null, key));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.decrypt(new byte[1], (SecretKey) null));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.decrypt(new byte[5], key));
+    encryptionService.clearPassword(password);
+  }
+
+  @Test
+  public void testDeriveSubkey() {
+    // Test 21 subkeys depend on both the vault key and the purpose
+    SecretKey key = encryptionService.deriveKey("test".toCharArray(), new byte[16]);
+    SecretKey audit = encryptionService.deriveSubkey(key, "audit");
+    assertEquals("HmacSHA256", audit.getAlgorithm());
+    assertArrayEquals(audit.getEncoded(),
+        encryptionService.deriveSubkey(key, "audit").getEncoded());
+    assertFalse(Arrays.equals(audit.getEncoded(),
+        encryptionService.deriveSubkey(key, "other").getEncoded()));
+    assertFalse(Arrays.equals(audit.getEncoded(), key.getEncoded()));
+    assertThrows(IllegalArgumentException.class, () -> encryptionService.deriveSubkey(key, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> encryptionService.deriveSubkey(null, "audit"));
+  }
 }
@@ -0,0 +1,148 @@
+package com.mwatson.passwordvault.crypto;
+
+import com.mwatson.passwordvault.crypto.PasswordPolicy.CharClass;
+import com.mwatson.passwordvault.crypto.PasswordPolicy.Mode;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PasswordGeneratorTest {
+  private final PasswordGenerator generator = new PasswordGenerator();
+
+  private static boolean hasClass(char[] password, CharClass charClass) {
+    for (char c : password) {
+      if (charClass.getChars().indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testRandomPasswordsFollowPolicy() {
+    // Test 1 random passwords have the length, every class and none of the excluded characters
+    PasswordPolicy policy = PasswordPolicy.defaults().withLength(8).withExcludeAmbiguous(true)
+        .withExcluded('a', '#');
+    for (int i = 0; i < 500; i++) {
+      char[] password = generator.generate(policy);
+      assertEquals(8, password.length);
+      for (CharClass charClass : CharClass.values()) {
+        assertTrue(hasClass(password, charClass), new String(password));
+      }
+      for (char c : password) {
+        assertTrue(policy.isAllowed(c));
+        assertFalse(c == 'a' || c == '#' || c == 'l' || c == '0');
+      }
+    }
+    char[] digits = generator.generate(PasswordPolicy.defaults().withClasses(CharClass.DIGIT)
+        .withRequireEachClass(false).withLength(4));
+    assertTrue(new String(digits).matches("[0-9]{4}"));
+  }
+
+  @Test
+  public void testCharactersAreUniform() {
+    // Test 2 every digit is drawn about equally often
+    PasswordPolicy policy = PasswordPolicy.defaults().withClasses(CharClass.DIGIT)
+        .withLength(PasswordPolicy.MAX_LENGTH);
+    int[] counts = new int[10];
+    for (int i = 0; i < 100; i++) {
+      for (char c : generator.generate(policy)) {
+        counts[c - '0']++;
+      }
+    }
+    int expected = 100 * PasswordPolicy.MAX_LENGTH / 10;
+    for (int count : counts) {
+      assertTrue(Math.abs(count - expected) < expected / 10, "count " + count);
+    }
+  }
+
+  @Test
+  public void testPronounceable() {
+    // Test 3 pronounceable passwords alternate consonants and vowels around one added digit
+    PasswordPolicy policy = PasswordPolicy.defaults().withMode(Mode.PRONOUNCEABLE)
+        .withClasses(CharClass.LOWER, CharClass.UPPER, CharClass.DIGIT).withLength(12);
+    for (int i = 0; i < 200; i++) {
+      char[] password = generator.generate(policy);
+      assertEquals(12, password.length);
+      assertTrue(hasClass(password, CharClass.UPPER));
+      assertTrue(hasClass(password, CharClass.DIGIT));
+    }
+    char[] letters = generator.generate(policy.withRequireEachClass(false));
+    String text = new String(letters);
+    assertTrue(text.matches("[aeiou]?([^aeiou][aeiou])*[^aeiou]?"), text);
+  }
+
+  @Test
+  public void testDiceware() throws IOException {
+    // Test 4 passphrases join listed words with the separator, into a reused buffer
+    char[][] words = PasswordGenerator.loadWords(new ByteArrayInputStream(
+        "# words\nalpha\n\nbravo\ncharlie\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(3, words.length);
+    PasswordGenerator small = new PasswordGenerator(words);
+    PasswordPolicy policy = PasswordPolicy.defaults().withMode(Mode.DICEWARE).withLength(4)
+        .withSeparator(' ').withRequireEachClass(false);
+    char[] buffer = new char[small.maxLength(policy)];
+    int length = small.generate(policy, buffer);
+    String[] parts = new String(buffer, 0, length).split(" ");
+    assertEquals(4, parts.length);
+    for (String part : parts) {
+      assertTrue(Set.of("alpha", "bravo", "charlie").contains(part), part);
+    }
+
+    // The added symbol is never the separator, so phrases always split into their words
+    for (int i = 0; i < 200; i++) {
+      char[] phrase = generator.generate(PasswordPolicy.defaults().withMode(Mode.DICEWARE)
+          .withLength(5));
+      assertEquals(5, new String(phrase).split("-").length, new String(phrase));
+      for (CharClass charClass : CharClass.values()) {
+        assertTrue(hasClass(phrase, charClass), new String(phrase));
+      }
+    }
+    assertThrows(IOException.class,
+        () -> PasswordGenerator.loadWords(new ByteArrayInputStream(new byte[0])));
+  }
+
+  @Test
+  public void testBatch() {
+    // Test 5 a parallel batch gives the number asked for, all different
+    PasswordPolicy policy = PasswordPolicy.defaults();
+    char[][] batch = generator.generateBatch(policy, PasswordGenerator.PARALLEL_THRESHOLD * 4);
+    Set<String> distinct = new HashSet<>();
+    for (char[] password : batch) {
+      assertEquals(20, password.length);
+      distinct.add(new String(password));
+    }
+    assertEquals(batch.length, distinct.size());
+    assertEquals(0, generator.generateBatch(policy, 0).length);
+    assertThrows(IllegalArgumentException.class, () -> generator.generateBatch(policy, -1));
+  }
+
+  @Test
+  public void testInvalidPolicies() {
+    // Test 6 policies that can't be met are rejected when built
+    PasswordPolicy policy = PasswordPolicy.defaults();
+    assertThrows(IllegalArgumentException.class, () -> policy.withLength(0));
+    assertThrows(IllegalArgumentException.class, () -> policy.withLength(3));
+    assertThrows(IllegalArgumentException.class, () -> policy.withMode(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> policy.withExcluded(CharClass.DIGIT.getChars().toCharArray()));
+    assertThrows(IllegalArgumentException.class, () -> policy.withClasses(CharClass.DIGIT)
+        .withRequireEachClass(false).withExcluded(CharClass.DIGIT.getChars().toCharArray()));
+    assertThrows(IllegalArgumentException.class,
+        () -> policy.withMode(Mode.PRONOUNCEABLE).withExcluded('a', 'e', 'i', 'o', 'u'));
+    assertThrows(IllegalArgumentException.class,
+        () -> policy.withMode(Mode.DICEWARE).withExcluded('-'));
+    char[] otherSymbols = CharClass.SYMBOL.getChars().replace("-", "").toCharArray();
+    assertThrows(IllegalArgumentException.class,
+        () -> policy.withMode(Mode.DICEWARE).withExcluded(otherSymbols));
+    assertThrows(IllegalArgumentException.class, () -> generator.generate(policy, new char[4]));
+    assertThrows(IllegalArgumentException.class, () -> generator.generate(null, new char[4]));
+  }
+}
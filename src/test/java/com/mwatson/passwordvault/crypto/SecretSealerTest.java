@@ -0,0 +1,42 @@
+package com.mwatson.passwordvault.crypto;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.nio.charset.StandardCharsets;
+import javax.crypto.SecretKey;
+
+public class SecretSealerTest {
+  private EncryptionService encryptionService;
+  private SecretKey key;
+  private SecretSealer sealer;
+
+  @BeforeEach
+  public void setUp() {
+    encryptionService = new EncryptionService();
+    char[] password = "master".toCharArray();
+    key = encryptionService.deriveKey(password, encryptionService.generateSalt());
+    sealer = new SecretSealer(encryptionService, key);
+    encryptionService.clearPassword(password);
+  }
+
+  @Test
+  public void testSealAndOpen() {
+    // Test 1 sealed values open back to the same bytes, each seal uses a fresh IV
+    byte[] secret = "hunter2".getBytes(StandardCharsets.UTF_8);
+    String sealed = sealer.seal(secret);
+    assertArrayEquals(secret, sealer.open(sealed));
+    assertNotEquals(sealed, sealer.seal(secret));
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    // Test 2 null arguments are rejected
+    assertThrows(IllegalArgumentException.class, () -> new SecretSealer(null, key));
+    assertThrows(IllegalArgumentException.class,
+        () -> new SecretSealer(encryptionService, null));
+    assertThrows(IllegalArgumentException.class, () -> sealer.open(null));
+  }
+}
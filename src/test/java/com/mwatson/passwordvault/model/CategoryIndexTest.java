@@ -0,0 +1,49 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class CategoryIndexTest {
+
+  private static PasswordEntry entryIn(String category, long sequence) {
+    PasswordEntry entry = new PasswordEntry("Title", "user", "p".toCharArray(), null, null,
+        category);
+    entry.setVault(null, sequence);
+    return entry;
+  }
+
+  @Test
+  public void testCategoriesAndCounts() {
+    // Test 1 categories come back sorted with counts, entries in vault order
+    PasswordEntry mail = entryIn("Email", 2);
+    PasswordEntry bank = entryIn("Banking", 1);
+    PasswordEntry work = entryIn("Email", 0);
+    PasswordEntry none = entryIn(null, 3);
+    CategoryIndex index = new CategoryIndex();
+    for (PasswordEntry entry : Arrays.asList(mail, bank, work, none)) {
+      index.add(entry);
+    }
+
+    assertEquals(List.of("Banking", "Email"), index.categories());
+    assertEquals(Map.of("Banking", 1, "Email", 2), index.counts());
+    assertEquals(List.of(work, mail), index.entries("Email"));
+    assertEquals(List.of(none), index.entries(null));
+    assertTrue(index.entries("Missing").isEmpty());
+
+    // Moving the last entry out of a category drops the category
+    bank.setCategory("Email");
+    index.update(bank);
+    index.update(mail);
+    assertEquals(List.of("Email"), index.categories());
+    assertEquals(List.of(work, bank, mail), index.entries("Email"));
+    index.remove(none);
+    index.remove(none);
+    assertTrue(index.entries(null).isEmpty());
+    index.clear();
+    assertTrue(index.counts().isEmpty());
+  }
+}
@@ -0,0 +1,88 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class CompletionIndexTest {
+
+  private static PasswordEntry entry(String title, String username, String url) {
+    return new PasswordEntry(title, username, "p".toCharArray(), url, null, null);
+  }
+
+  @Test
+  public void testCompletesTitlesUsernamesAndHosts() {
+    // Test 1 completions come from every field, most used first, and follow edits
+    PasswordEntry github = entry("GitHub", "dev", "https://github.com/login");
+    PasswordEntry work = entry("GitHub Work", "dev", "https://www.github.com");
+    PasswordEntry gitlab = entry("GitLab", "devops", "gitlab.example.co.uk");
+    CompletionIndex index = new CompletionIndex();
+    index.add(github);
+    index.add(work);
+    index.add(gitlab);
+
+    assertEquals(List.of("github.com", "GitHub", "GitLab", "GitHub Work",
+        "gitlab.example.co.uk"), index.complete("GI", 10));
+    assertEquals(List.of("github.com", "GitHub"), index.complete("git", 2));
+    assertEquals(List.of("dev", "devops"), index.complete("de", 10));
+    assertEquals(List.of("www.github.com"), index.complete("www", 10));
+    assertEquals(List.of("example.co.uk"), index.complete("exa", 10));
+    assertTrue(index.complete("gitz", 10).isEmpty());
+    assertTrue(index.complete(" ", 10).isEmpty());
+
+    github.setUrl(null);
+    index.update(github);
+    gitlab.setTitle("Mirror");
+    index.update(gitlab);
+    index.remove(work);
+    assertEquals(List.of("GitHub", "gitlab.example.co.uk"), index.complete("git", 10));
+    index.clear();
+    assertTrue(index.complete("g", 10).isEmpty());
+  }
+
+  @Test
+  public void testMatchesBruteForceThroughChanges() {
+    // Test 2 kept completions stay the best of each subtree as terms come and go
+    Random random = new Random(7);
+    String[] stems = {"a", "ab", "abc", "abd", "b", "ba", "bab", "c"};
+    CompletionIndex index = new CompletionIndex();
+    List<PasswordEntry> live = new ArrayList<>();
+    for (int round = 0; round < 3000; round++) {
+      if (live.isEmpty() || random.nextInt(3) > 0) {
+        String title = stems[random.nextInt(stems.length)] + random.nextInt(30);
+        PasswordEntry entry = entry(title, null, null);
+        live.add(entry);
+        index.add(entry);
+      } else {
+        index.remove(live.remove(random.nextInt(live.size())));
+      }
+      if (round % 100 == 0) {
+        for (String prefix : List.of("a", "ab", "abc1", "b", "c2", "ba1")) {
+          for (int limit : List.of(3, CompletionIndex.CACHED, 25)) {
+            assertEquals(expected(live, prefix, limit), index.complete(prefix, limit));
+          }
+        }
+      }
+    }
+  }
+
+  private static List<String> expected(List<PasswordEntry> live, String prefix, int limit) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (PasswordEntry entry : live) {
+      if (entry.getTitle().startsWith(prefix)) {
+        counts.merge(entry.getTitle(), 1, Integer::sum);
+      }
+    }
+    return counts.keySet().stream()
+        .sorted(Comparator.<String>comparingInt(title -> -counts.get(title))
+            .thenComparingInt(String::length).thenComparing(title -> title))
+        .limit(limit).collect(Collectors.toList());
+  }
+}
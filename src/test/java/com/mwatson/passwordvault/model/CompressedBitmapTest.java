@@ -0,0 +1,85 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class CompressedBitmapTest {
+
+  private static List<Integer> values(CompressedBitmap bitmap) {
+    List<Integer> values = new ArrayList<>();
+    bitmap.forEach(values::add);
+    return values;
+  }
+
+  private static CompressedBitmap fill(TreeSet<Integer> expected, Random random, int count,
+      int range) {
+    CompressedBitmap bitmap = new CompressedBitmap();
+    for (int i = 0; i < count; i++) {
+      int value = random.nextInt(range);
+      bitmap.add(value);
+      expected.add(value);
+    }
+    return bitmap;
+  }
+
+  @Test
+  public void testSetOperationsMatchTreeSet() {
+    // Test 1 sparse and dense chunks give the same answers as a plain sorted set
+    Random random = new Random(7);
+    for (int[] shape : new int[][] {{500, 300_000}, {60_000, 200_000}, {9_000, 70_000}}) {
+      TreeSet<Integer> left = new TreeSet<>();
+      TreeSet<Integer> right = new TreeSet<>();
+      CompressedBitmap a = fill(left, random, shape[0], shape[1]);
+      CompressedBitmap b = fill(right, random, shape[0] / 2, shape[1]);
+      assertEquals(new ArrayList<>(left), values(a));
+      assertEquals(left.size(), a.cardinality());
+
+      TreeSet<Integer> both = new TreeSet<>(left);
+      both.retainAll(right);
+      assertEquals(new ArrayList<>(both), values(CompressedBitmap.and(a, b)));
+      TreeSet<Integer> either = new TreeSet<>(left);
+      either.addAll(right);
+      assertEquals(new ArrayList<>(either), values(CompressedBitmap.or(a, b)));
+      assertEquals(new ArrayList<>(either), values(CompressedBitmap.or(b, a)));
+      TreeSet<Integer> onlyLeft = new TreeSet<>(left);
+      onlyLeft.removeAll(right);
+      assertEquals(new ArrayList<>(onlyLeft), values(CompressedBitmap.andNot(a, b)));
+      TreeSet<Integer> onlyRight = new TreeSet<>(right);
+      onlyRight.removeAll(left);
+      assertEquals(new ArrayList<>(onlyRight), values(CompressedBitmap.andNot(b, a)));
+    }
+  }
+
+  @Test
+  public void testAddAndRemove() {
+    // Test 2 a chunk grows into a bitmap and shrinks back to an array as values come and go
+    CompressedBitmap bitmap = new CompressedBitmap();
+    for (int i = 0; i < 10_000; i += 2) {
+      bitmap.add(i);
+    }
+    bitmap.add(4);
+    assertEquals(5_000, bitmap.cardinality());
+    for (int i = 0; i < 10_000; i += 4) {
+      bitmap.remove(i);
+    }
+    bitmap.remove(1);
+    bitmap.remove(1 << 20);
+    assertEquals(2_500, bitmap.cardinality());
+    assertTrue(bitmap.contains(2));
+    assertFalse(bitmap.contains(4));
+    assertFalse(bitmap.contains(1 << 20));
+    for (int i = 2; i < 10_000; i += 4) {
+      bitmap.remove(i);
+    }
+    assertTrue(bitmap.isEmpty());
+    bitmap.add(70_000);
+    bitmap.add(5);
+    assertEquals(List.of(5, 70_000), values(bitmap));
+  }
+}
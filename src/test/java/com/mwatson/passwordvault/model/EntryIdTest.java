@@ -0,0 +1,67 @@
+package com.mwatson.passwordvault.model;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.UUID;
+
+public class EntryIdTest {
+
+  @Test
+  public void testNewIdsAreOrderedVersion7() {
+    // Test 1 ids come out in order, carry their creation time and read as version 7 UUIDs
+    long before = System.currentTimeMillis();
+    EntryId previous = EntryId.next();
+    for (int i = 0; i < 10_000; i++) {
+      EntryId id = EntryId.next();
+      assertTrue(previous.compareTo(id) < 0);
+      assertTrue(previous.toString().compareTo(id.toString()) < 0);
+      previous = id;
+    }
+    UUID uuid = UUID.fromString(previous.toString());
+    assertEquals(7, uuid.version());
+    assertEquals(2, uuid.variant());
+    assertTrue(previous.getTimestamp() >= before);
+    assertEquals(previous, EntryId.parse(previous.toString()));
+  }
+
+  @Test
+  public void testOlderIdsParse() {
+    // Test 2 random UUIDs round trip as two longs, other strings are kept as they are
+    String random = UUID.randomUUID().toString();
+    EntryId parsed = EntryId.parse(random);
+    assertEquals(random, parsed.toString());
+    assertEquals(parsed, EntryId.parse(random));
+    assertEquals(parsed.hashCode(), EntryId.parse(random).hashCode());
+    assertEquals(0, parsed.getTimestamp());
+
+    String upper = random.toUpperCase();
+    assertEquals(upper, EntryId.parse(upper).toString());
+    assertNotEquals(parsed, EntryId.parse(upper));
+    assertEquals("123", EntryId.parse("123").toString());
+    assertEquals(EntryId.parse("123"), EntryId.parse("123"));
+    assertEquals("x".repeat(36), EntryId.parse("x".repeat(36)).toString());
+    assertEquals("0".repeat(36), EntryId.parse("0".repeat(36)).toString());
+    assertTrue(EntryId.parse("123").compareTo(EntryId.parse("124")) < 0);
+    assertNull(EntryId.parse(null));
+    assertNotEquals(parsed, random);
+  }
+
+  @Test
+  public void testJsonForm() {
+    // Test 3 ids are stored as their text form
+    Gson gson = new Gson();
+    EntryId id = EntryId.next();
+    assertEquals("\"" + id + "\"", gson.toJson(id));
+    assertEquals(id, gson.fromJson(gson.toJson(id), EntryId.class));
+    assertNull(gson.fromJson("null", EntryId.class));
+
+    PasswordEntry entry = new PasswordEntry("Site", "user", "pw".toCharArray());
+    String json = gson.toJson(entry);
+    assertTrue(json.contains("\"id\":\"" + entry.getId() + "\""));
+    assertEquals(entry.getEntryId(), gson.fromJson(json, PasswordEntry.class).getEntryId());
+  }
+}
@@ -0,0 +1,54 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class FuzzyMatcherTest {
+
+  private static int distance(String query, PasswordEntry entry) {
+    return FuzzyMatcher.compile(query).distance(entry);
+  }
+
+  @Test
+  public void testEditDistanceToBestSubstring() {
+    // Test 1 distance is the fewest edits to some substring of the best field
+    PasswordEntry entry = new PasswordEntry("GitHub", "octocat", "p".toCharArray(),
+        "https://github.com/login", null, null);
+    assertEquals(0, distance("github", entry));
+    assertEquals(0, distance("HUB", entry));
+    assertEquals(2, distance("gihtub", entry));
+    assertEquals(1, distance("octcat", entry));
+    assertEquals(1, distance("loggin", entry));
+    assertEquals(2, distance("gitlab", entry));
+    assertEquals(FuzzyMatcher.NO_MATCH, distance("amazon", entry));
+    assertEquals(FuzzyMatcher.NO_MATCH, distance("zzzzzz", entry));
+    assertEquals(2, FuzzyMatcher.compile("gihtub").getMaxDistance());
+  }
+
+  @Test
+  public void testFieldsScoredSeparately() {
+    // Test 2 a match can't borrow characters across the end of a field
+    PasswordEntry entry = new PasswordEntry("abcdef", "ghijkl", "p".toCharArray());
+    assertEquals(FuzzyMatcher.NO_MATCH, distance("defghi", entry));
+    assertEquals(0, distance("ghij", entry));
+  }
+
+  @Test
+  public void testNonAsciiAndLongQueries() {
+    // Test 3 non ASCII characters and queries longer than a machine word
+    PasswordEntry entry = new PasswordEntry("Zürich Bank", "kunde", "p".toCharArray());
+    assertEquals(0, distance("zürich", entry));
+    assertEquals(1, distance("zurich", entry));
+
+    StringBuilder longTitle = new StringBuilder();
+    for (int i = 0; i < 80; i++) {
+      longTitle.append((char) ('a' + i % 26));
+    }
+    PasswordEntry longEntry =
+        new PasswordEntry(longTitle.toString(), "user", "p".toCharArray());
+    assertEquals(0, distance(longTitle.toString(), longEntry));
+    assertNull(FuzzyMatcher.compile(" "));
+    assertNull(FuzzyMatcher.compile(null));
+  }
+}
@@ -0,0 +1,73 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+
+public class HostIndexTest {
+
+  private static PasswordEntry entryAt(String url, long sequence) {
+    PasswordEntry entry = new PasswordEntry("Title", "user", "p".toCharArray(), url, null,
+        null);
+    entry.setVault(null, sequence);
+    return entry;
+  }
+
+  @Test
+  public void testNormalizesHosts() {
+    // Test 1 scheme, user info, port, path and case are dropped, unicode becomes punycode
+    assertEquals("login.example.com", HostName.of("https://bob@Login.Example.COM:8443/a?b#c"));
+    assertEquals("login.example.com", HostName.of("login.example.com."));
+    assertEquals("example.com", HostName.of("example.com/path"));
+    assertEquals("xn--bcher-kva.de", HostName.of("http://Bücher.de/"));
+    assertEquals("::1", HostName.of("http://[::1]:8080/"));
+    assertEquals("10.0.0.1", HostName.of("10.0.0.1:22"));
+    assertNull(HostName.of("https:///path"));
+    assertNull(HostName.of("a..b"));
+    assertNull(HostName.of(null));
+
+    assertArrayEquals(new String[] {"com", "example", "login"},
+        HostName.reversedLabels("login.example.com"));
+    assertArrayEquals(new String[] {"10.0.0.1"}, HostName.reversedLabels("10.0.0.1"));
+    assertEquals(2, HostName.registrableLength(HostName.reversedLabels("a.b.example.com")));
+    assertEquals(3, HostName.registrableLength(HostName.reversedLabels("a.example.co.uk")));
+    assertEquals(1, HostName.registrableLength(HostName.reversedLabels("localhost")));
+  }
+
+  @Test
+  public void testSiteLookups() {
+    // Test 2 own host first, then parents nearest first, then the rest of the domain
+    PasswordEntry other = entryAt("https://www.example.com", 0);
+    PasswordEntry parent = entryAt("example.com", 1);
+    PasswordEntry exact = entryAt("https://login.example.com/signin", 2);
+    PasswordEntry deeper = entryAt("https://eu.login.example.com", 3);
+    PasswordEntry unrelated = entryAt("https://example.org", 4);
+    PasswordEntry none = entryAt(null, 5);
+    HostIndex index = new HostIndex(new StringPool());
+    for (PasswordEntry entry : List.of(other, parent, exact, deeper, unrelated, none)) {
+      index.add(entry);
+    }
+
+    assertEquals(List.of(exact, parent, other, deeper), index.site("login.example.com"));
+    assertEquals(List.of(parent, other, exact, deeper), index.site("example.com"));
+    assertEquals(List.of(parent, other, exact, deeper), index.site("new.example.com"));
+    assertTrue(index.site("example.net").isEmpty());
+    assertEquals(List.of(other, exact, deeper), index.under("example.com", false));
+    assertEquals(4, index.count("example.com", true));
+    assertEquals(3, index.count("example.com", false));
+    assertEquals(0, index.count("example.net", true));
+
+    exact.setUrl("https://example.org/login");
+    index.update(exact);
+    index.remove(deeper);
+    index.remove(none);
+    assertEquals(List.of(parent, other), index.site("login.example.com"));
+    assertEquals(List.of(exact, unrelated), index.under("example.org", true));
+    assertTrue(index.under("login.example.com", true).isEmpty());
+    index.clear();
+    assertEquals(0, index.count("example.org", true));
+  }
+}
@@ -0,0 +1,43 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+public class ModifiedIndexTest {
+
+  private static PasswordEntry entryAt(String title, LocalDateTime updatedAt) {
+    PasswordEntry entry = new PasswordEntry(title, "user", "p".toCharArray());
+    entry.setUpdatedAt(updatedAt);
+    return entry;
+  }
+
+  @Test
+  public void testRangesAndNewest() {
+    // Test 1 entries are ordered by update time and range queries split on it
+    LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+    PasswordEntry old = entryAt("Old", base);
+    PasswordEntry middle = entryAt("Middle", base.plusDays(30));
+    PasswordEntry recent = entryAt("Recent", base.plusDays(60));
+    ModifiedIndex index = new ModifiedIndex();
+    index.add(recent);
+    index.add(old);
+    index.add(middle);
+
+    long cutoff = PasswordEntry.toMillis(base.plusDays(30));
+    assertEquals(Arrays.asList(middle, recent), index.since(cutoff));
+    assertEquals(Arrays.asList(old), index.before(cutoff));
+    assertEquals(Arrays.asList(recent, middle), index.newest(2));
+
+    // An edit moves the entry to the newest end, removal drops it
+    old.setUpdatedAt(base.plusDays(90));
+    index.update(old);
+    assertEquals(Arrays.asList(old, recent, middle), index.newest(5));
+    index.remove(recent);
+    assertEquals(Arrays.asList(middle, old), index.since(0));
+    index.clear();
+    assertTrue(index.newest(1).isEmpty());
+  }
+}
@@ -1,9 +1,14 @@
 package com.mwatson.passwordvault.model;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -12,6 +17,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
 public class PasswordEntryTest {
@@ -215,4 +221,204 @@ public class PasswordEntryTest {
     String formatted = testDate.format(PasswordEntry.getDateFormatter());
     assertEquals("25-12-2023 14:30:45", formatted);
   }
+
+  @Test
+  public void testSecretsOpenedOnDemand() {
+    // Test 17 sealed secrets stay closed until the password or notes are asked for
+    EncryptionService encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    SecretSealer sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    PasswordEntry original = new PasswordEntry("GitHub", "dev", "pässword".toCharArray(),
+        "https://github.com", "recovery codes", "Development");
+    original.sealSecrets(sealer);
+
+    String json = "{\"id\":\"abc\",\"title\":\"GitHub\",\"sealedSecrets\":\""
+        + sealerOutput(original) + "\"}";
+    PasswordEntry loaded = new Gson().fromJson(json, PasswordEntry.class);
+    loaded.attachSealer(sealer);
+    assertFalse(loaded.isSecretsOpen());
+    // Notes are searched through a temporary copy, leaving the entry sealed
+    assertTrue(loaded.matchesSearch("recovery"));
+    assertFalse(loaded.isSecretsOpen());
+
+    assertArrayEquals("pässword".toCharArray(), loaded.getPassword());
+    assertTrue(loaded.isSecretsOpen());
+    assertEquals("recovery codes", loaded.getNotes());
+    assertTrue(loaded.matchesSearch("recovery"));
+
+    // Changing notes keeps the password and marks the entry for resealing
+    loaded.setNotes(null);
+    loaded.sealSecrets(sealer);
+    PasswordEntry reloaded = new Gson().fromJson("{\"sealedSecrets\":\""
+        + sealerOutput(loaded) + "\"}", PasswordEntry.class);
+    reloaded.attachSealer(sealer);
+    assertArrayEquals("pässword".toCharArray(), reloaded.getPassword());
+    assertNull(reloaded.getNotes());
+    encryptionService.clearPassword(master);
+  }
+
+  @Test
+  public void testSealedSecretsWithoutSealer() {
+    // Test 18 a sealed entry from a locked vault can't be opened
+    PasswordEntry loaded =
+        new Gson().fromJson("{\"sealedSecrets\":\"AAAA\"}", PasswordEntry.class);
+    loaded.attachSealer(null);
+    assertFalse(loaded.isSecretsOpen());
+    assertThrows(IllegalStateException.class, () -> loaded.getPassword());
+  }
+
+  @Test
+  public void testPasswordHistory() {
+    // Test 19 replaced passwords are kept sealed and only opened when the history is read
+    EncryptionService encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    SecretSealer sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    PasswordEntry original = new PasswordEntry("GitHub", "dev", "first".toCharArray());
+    original.setPassword("first".toCharArray());
+    original.setPassword("second".toCharArray());
+    original.setPassword("third".toCharArray());
+    original.sealSecrets(sealer);
+
+    JsonObject json = new Gson().toJsonTree(original).getAsJsonObject();
+    json.remove("password");
+    assertFalse(json.toString().contains("second"));
+    // Saved as one string, read only when the history is opened
+    assertTrue(json.get("passwordHistory").isJsonPrimitive());
+    PasswordEntry loaded = new Gson().fromJson(json, PasswordEntry.class);
+    loaded.attachSealer(sealer);
+    assertFalse(loaded.isSecretsOpen());
+
+    List<PasswordVersion> history = loaded.getPasswordHistory();
+    assertEquals(2, history.size());
+    assertArrayEquals("second".toCharArray(), history.get(0).getPassword());
+    assertArrayEquals("first".toCharArray(), history.get(1).getPassword());
+    assertNotNull(history.get(0).getReplacedAt());
+    assertFalse(loaded.isSecretsOpen());
+
+    // Rolling back is just setting an old password, which records the current one
+    loaded.setPassword(history.get(1).getPassword());
+    assertArrayEquals("third".toCharArray(), loaded.getPasswordHistory().get(0).getPassword());
+    assertTrue(new PasswordEntry().getPasswordHistory().isEmpty());
+    encryptionService.clearPassword(master);
+  }
+
+  @Test
+  public void testTimestampsPersisted() {
+    // Test 20 timestamps survive a save as epoch millis instead of resetting on load
+    LocalDateTime created = LocalDateTime.of(2023, 5, 22, 12, 15, 50);
+    entry.setCreatedAt(created);
+    entry.setUpdatedAt(created.plusDays(1));
+    JsonObject json = new Gson().toJsonTree(entry).getAsJsonObject();
+    assertTrue(json.get("updatedAt").getAsJsonPrimitive().isNumber());
+
+    PasswordEntry loaded = new Gson().fromJson(json, PasswordEntry.class);
+    assertEquals(created, loaded.getCreatedAt());
+    assertEquals(created.plusDays(1), loaded.getUpdatedAt());
+
+    // Entries saved before timestamps were stored get the load time
+    PasswordEntry legacy = new Gson().fromJson("{\"title\":\"Old\"}", PasswordEntry.class);
+    assertNotNull(legacy.getUpdatedAt());
+  }
+
+  @Test
+  public void testTags() {
+    // Test 21 tags are trimmed, lower cased, sorted, de-duplicated and saved with the entry
+    entry.setTags(Arrays.asList(" Team:Payments", "env:prod", "", "ENV:PROD"));
+    assertEquals(List.of("env:prod", "team:payments"), entry.getTags());
+    entry.addTag("rotation:quarterly");
+    assertEquals(List.of("env:prod", "rotation:quarterly", "team:payments"), entry.getTags());
+    assertTrue(entry.removeTag("ENV:prod"));
+    assertFalse(entry.removeTag("missing"));
+    assertThrows(UnsupportedOperationException.class, () -> entry.getTags().add("x"));
+
+    PasswordEntry loaded = new Gson().fromJson(new Gson().toJson(entry), PasswordEntry.class);
+    assertEquals(List.of("rotation:quarterly", "team:payments"), loaded.getTags());
+    entry.setTags(null);
+    assertTrue(entry.getTags().isEmpty());
+    assertFalse(new Gson().toJson(entry).contains("tags"));
+  }
+
+  private static String sealerOutput(PasswordEntry entry) {
+    return new Gson().toJsonTree(entry).getAsJsonObject().get("sealedSecrets").getAsString();
+  }
+
+  @Test
+  public void testCloseSecrets() {
+    // Test 22 closing wipes opened secrets, sealing changed ones first, and they reopen on demand
+    EncryptionService encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    SecretSealer sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    PasswordEntry entry = new PasswordEntry("GitHub", "dev", "first".toCharArray(),
+        "https://github.com", "codes", "Development");
+    assertFalse(entry.closeSecrets());
+    assertTrue(entry.isSecretsOpen());
+
+    Vault vault = new Vault();
+    vault.addEntry(entry);
+    vault.unlock(sealer);
+    char[] held = entry.getPassword();
+    vault.closeSecrets();
+    assertFalse(entry.isSecretsOpen());
+    assertArrayEquals(new char[5], held);
+    assertArrayEquals("first".toCharArray(), entry.getPassword());
+    assertEquals("codes", entry.getNotes());
+
+    entry.setPassword("second".toCharArray());
+    assertTrue(entry.closeSecrets());
+    assertTrue(entry.closeSecrets());
+    assertFalse(entry.isSecretsOpen());
+    assertArrayEquals("second".toCharArray(), entry.getPassword());
+    encryptionService.clearPassword(master);
+  }
+
+  @Test
+  public void testSearchSealedNotes() {
+    // Test 23 notes are searched through their trigrams, sealed or not and even while locked
+    EncryptionService encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    SecretSealer sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    PasswordEntry entry = new PasswordEntry("GitHub", "dev", "p".toCharArray(),
+        "https://github.com", "abc bcd Ω", "Development");
+    assertTrue(entry.matchesSearch("ω"));
+    assertTrue(entry.matchesSearch("ab"));
+    assertTrue(entry.matchesSearch("C B"));
+    assertTrue(entry.matchesSearch("abc bc"));
+    // Every trigram of abcd is in the notes, but not next to each other
+    assertFalse(entry.matchesSearch("abcd"));
+    assertFalse(entry.matchesSearch("ca"));
+
+    Vault vault = new Vault();
+    vault.addEntry(entry);
+    vault.unlock(sealer);
+    assertTrue(entry.closeSecrets());
+    assertEquals(List.of(entry), vault.search("bcd"));
+    assertTrue(vault.search("abcd").isEmpty());
+    assertEquals(List.of(entry), vault.search("b"));
+    assertFalse(entry.isSecretsOpen());
+
+    // Saved trigrams answer on their own while the vault is locked
+    PasswordEntry locked = new Gson().fromJson(new Gson().toJson(entry), PasswordEntry.class);
+    assertTrue(locked.matchesSearch("bcd"));
+    assertTrue(locked.matchesSearch("abcd"));
+    assertFalse(locked.matchesSearch("xyz"));
+
+    // Entries saved before notes had trigrams are indexed once the vault is unlocked
+    JsonObject json = new Gson().toJsonTree(entry).getAsJsonObject();
+    json.remove("noteGrams");
+    PasswordEntry older = new Gson().fromJson(json, PasswordEntry.class);
+    Vault reopened = new Vault();
+    reopened.addEntry(older);
+    assertTrue(reopened.search("bcd").isEmpty());
+    reopened.unlock(sealer);
+    assertEquals(List.of(older), reopened.search("bcd"));
+    assertFalse(older.isSecretsOpen());
+    entry.setNotes("x");
+    assertTrue(entry.matchesSearch("x"));
+    assertFalse(entry.matchesSearch("bcd"));
+    encryptionService.clearPassword(master);
+  }
 }
@@ -0,0 +1,96 @@
+package com.mwatson.passwordvault.model;
+
+import com.google.gson.Gson;
+import com.mwatson.passwordvault.crypto.EncryptionService;
+import com.mwatson.passwordvault.crypto.SecretSealer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+
+public class PasswordHistoryTest {
+
+  @Test
+  public void testDeltaRoundTrip() {
+    // Test 1 a delta rebuilds the older password from the newer one
+    String[][] pairs = {
+        {"hunter2", "hunter3"}, {"Spring2024!", "Summer2024!"}, {"pässwörd", "pass"},
+        {"", "abc"}, {"abc", ""}, {"same", "same"}, {"aaa", "aaaa"}, {"x", null}};
+    for (String[] pair : pairs) {
+      char[] newer = pair[0].toCharArray();
+      char[] older = pair[1] == null ? null : pair[1].toCharArray();
+      byte[] delta = PasswordHistory.encodeDelta(newer, older);
+      assertArrayEquals(older, PasswordHistory.applyDelta(newer, delta), pair[0]);
+    }
+    // Only the changed middle is stored
+    byte[] delta = PasswordHistory.encodeDelta("Spring2024!".toCharArray(),
+        "Summer2024!".toCharArray());
+    assertEquals(8 + "ummer".length(), delta.length);
+  }
+
+  @Test
+  public void testChainAndTrim() {
+    // Test 2 versions rebuild back through the chain, trimming drops the oldest ones
+    PasswordHistory history = new PasswordHistory();
+    long now = System.currentTimeMillis();
+    char[] current = "v0".toCharArray();
+    for (int i = 1; i <= PasswordHistory.MAX_VERSIONS + 2; i++) {
+      char[] next = ("v" + i).toCharArray();
+      history.add(next, current, now);
+      current = next;
+    }
+    List<PasswordVersion> versions = history.versions(current, null);
+    assertEquals(PasswordHistory.MAX_VERSIONS, versions.size());
+    assertArrayEquals("v11".toCharArray(), versions.get(0).getPassword());
+    assertArrayEquals("v2".toCharArray(), versions.get(9).getPassword());
+
+    history.trim(now + PasswordHistory.MAX_AGE.toMillis() + 1);
+    assertTrue(history.isEmpty());
+  }
+
+  @Test
+  public void testSealedWithoutSealer() {
+    // Test 3 a sealed record can't be read once the vault is locked
+    PasswordHistory history = new PasswordHistory();
+    history.add("new".toCharArray(), null, System.currentTimeMillis());
+    assertNull(history.versions("new".toCharArray(), null).get(0).getPassword());
+    PasswordHistory loaded = new Gson().fromJson(
+        "{\"records\":[{\"replacedAt\":1,\"sealed\":\"AAAA\"}]}", PasswordHistory.class);
+    assertEquals(1, loaded.size());
+    assertThrows(IllegalStateException.class, () -> loaded.versions(new char[0], null));
+  }
+
+  @Test
+  public void testReadOnFirstUse() {
+    // Test 4 the saved string is only split into records once the history is needed
+    EncryptionService encryptionService = new EncryptionService();
+    char[] master = "master".toCharArray();
+    SecretSealer sealer = new SecretSealer(encryptionService,
+        encryptionService.deriveKey(master, encryptionService.generateSalt()));
+    PasswordHistory history = new PasswordHistory();
+    long now = System.currentTimeMillis();
+    history.add("b".toCharArray(), "a".toCharArray(), now);
+    history.add("c".toCharArray(), "b".toCharArray(), now);
+    history.seal(sealer);
+
+    String json = new Gson().toJson(history);
+    PasswordHistory loaded = new Gson().fromJson(json, PasswordHistory.class);
+    assertFalse(loaded.isLoaded());
+    // Untouched, it is written back as read
+    assertEquals(json, new Gson().toJson(loaded));
+    assertEquals(2, loaded.size());
+    assertTrue(loaded.isLoaded());
+    assertArrayEquals("a".toCharArray(), loaded.versions("c".toCharArray(), sealer).get(1)
+        .getPassword());
+    assertEquals(json, new Gson().toJson(loaded));
+
+    assertTrue(new Gson().fromJson("\"\"", PasswordHistory.class).isEmpty());
+    PasswordHistory broken = new Gson().fromJson("\"12\"", PasswordHistory.class);
+    assertThrows(IllegalStateException.class, broken::size);
+    encryptionService.clearPassword(master);
+  }
+}
@@ -0,0 +1,38 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchMatcherTest {
+
+  @Test
+  public void testFoldsCaseAndNormalises() {
+    // Test 1 case folding and NFKC normalisation apply to both query and fields
+    PasswordEntry entry = new PasswordEntry("Straße", "ＡＤＭＩＮ", "p".toCharArray());
+    assertTrue(SearchMatcher.compile("STRASSE").matches(entry));
+    assertTrue(SearchMatcher.compile("admin").matches(entry));
+    assertFalse(SearchMatcher.compile("strase").matches(entry));
+  }
+
+  @Test
+  public void testFieldsDoNotRunTogether() {
+    // Test 2 a query can't match the end of one field and the start of the next
+    PasswordEntry entry = new PasswordEntry("abc", "def", "p".toCharArray());
+    assertFalse(SearchMatcher.compile("cd").matches(entry));
+    assertFalse(SearchMatcher.compile("c\0d").isMatchAll());
+    assertFalse(SearchMatcher.compile("c\0d").matches(entry));
+  }
+
+  @Test
+  public void testCachedKeyRefreshedBySetters() {
+    // Test 3 the cached search key is rebuilt after a setter changes a field
+    PasswordEntry entry = new PasswordEntry("Old", "user", "p".toCharArray());
+    SearchMatcher matcher = SearchMatcher.compile("new title");
+    assertFalse(matcher.matches(entry));
+    entry.setTitle("New Title");
+    assertTrue(matcher.matches(entry));
+    assertTrue(SearchMatcher.compile(" ").isMatchAll());
+    assertTrue(SearchMatcher.compile(null).matches(entry));
+  }
+}
@@ -0,0 +1,93 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+
+public class SearchQueryTest {
+  private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+  private static PasswordEntry entry(String title, String username, String url,
+      String category, int daysOld) {
+    PasswordEntry entry = new PasswordEntry(title, username, "p".toCharArray(), url, null,
+        category);
+    entry.setUpdatedAt(NOW.minusDays(daysOld));
+    entry.setCreatedAt(NOW.minusDays(daysOld + 100));
+    return entry;
+  }
+
+  private static boolean matches(String query, PasswordEntry entry) {
+    return SearchQuery.parse(query, PasswordEntry.toMillis(NOW)).matches(entry);
+  }
+
+  @Test
+  public void testFieldsAndOperators() {
+    // Test 1 field, wildcard, negated, grouped and OR terms match the fields they name
+    PasswordEntry api = entry("Deploy API", "svc-deploy", "https://api.example.com:8443/v1",
+        "Prod", 10);
+    api.setTags(List.of("team:payments", "legacy"));
+
+    assertTrue(matches("category:prod url:*.example.com user:svc-", api));
+    assertTrue(matches("CATEGORY:PROD title:\"deploy api\" tag:Team:Payments", api));
+    assertFalse(matches("category:pro", api));
+    assertTrue(matches("category:pr*", api));
+    assertFalse(matches("-tag:legacy", api));
+    assertTrue(matches("url:example.com:8443/v1 user:svc-d?ploy", api));
+    assertFalse(matches("url:*.example.org", api));
+    assertTrue(matches("site:example.com site:API.example.com.", api));
+    assertFalse(matches("site:ample.com", api));
+    assertFalse(matches("url:*.example.com/v2", api));
+    assertTrue(matches("tag:missing OR deploy", api));
+    assertTrue(matches("(tag:missing OR title:deploy) AND -(user:bob OR user:alice)", api));
+    assertFalse(matches("-(category:prod OR category:dev)", api));
+    assertTrue(matches("id:" + api.getId(), api));
+    assertTrue(matches("id:" + api.getId().toUpperCase(Locale.ROOT), api));
+    assertFalse(matches("id:other", api));
+    PasswordEntry legacy = entry("Old", "u", null, null, 0);
+    legacy.setId("Legacy-1");
+    assertTrue(matches("id:Legacy-1", legacy));
+    assertFalse(matches("id:legacy-1", legacy));
+    assertTrue(matches("unknown:deploy", entry("unknown:deploy", "u", null, null, 0)));
+    assertTrue(matches("", api));
+  }
+
+  @Test
+  public void testTimeTerms() {
+    // Test 2 ages count back from now and dates compare with the start of that day
+    PasswordEntry recent = entry("Recent", "u", null, null, 10);
+    PasswordEntry stale = entry("Stale", "u", null, null, 200);
+
+    assertTrue(matches("updated<90d", recent));
+    assertFalse(matches("updated<90d", stale));
+    assertTrue(matches("updated>90d", stale));
+    assertTrue(matches("updated>12w", stale));
+    assertFalse(matches("updated>1y", stale));
+    assertTrue(matches("updated<300h", recent));
+    assertTrue(matches("created>100d", recent));
+    assertTrue(matches("updated>2024-05-01", recent));
+    assertTrue(matches("updated<2024-01-01", stale));
+    assertFalse(matches("updated<2024-01-01", recent));
+  }
+
+  @Test
+  public void testParsing() {
+    // Test 3 queries print in a normal form, mistakes are rejected, plain text is spotted
+    assertEquals("category:prod -tag:legacy (a OR \"b c\") updated<90d",
+        SearchQuery.parse("category:prod  -tag:Legacy (a OR \"b c\") Updated<90D").toString());
+    assertTrue(SearchQuery.parse("gmail work").isPlainText());
+    assertTrue(SearchQuery.parse("gmail").isPlainText());
+    assertFalse(SearchQuery.parse("gmail user:bob").isPlainText());
+    assertFalse(SearchQuery.parse("a OR b").isPlainText());
+
+    for (String bad : List.of("title:\"open", "(a b", "a b)", "OR a", "a OR", "title:",
+        "updated<soon", "updated>2024-13-01",
+        "site:http://")) {
+      assertThrows(IllegalArgumentException.class, () -> SearchQuery.parse(bad), bad);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class TopKTest {
+
+  @Test
+  public void testKeepsBestItems() {
+    // Test 1 only the k best items are kept, returned best first
+    TopK<Integer> top = new TopK<>(3, Comparator.<Integer>naturalOrder());
+    for (int value : new int[] {9, 4, 7, 1, 8, 3}) {
+      top.offer(value);
+    }
+    assertEquals(Arrays.asList(1, 3, 4), top.toList());
+
+    TopK<Integer> other = new TopK<>(3, Comparator.<Integer>naturalOrder());
+    other.offer(2);
+    other.offer(0);
+    assertEquals(Arrays.asList(0, 1, 2), top.merge(other).toList());
+  }
+
+  @Test
+  public void testInvalidLimit() {
+    // Test 2 the limit must be positive
+    assertThrows(IllegalArgumentException.class,
+        () -> new TopK<Integer>(0, Comparator.naturalOrder()));
+  }
+}
@@ -0,0 +1,62 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class TrigramIndexTest {
+  private final Comparator<PasswordEntry> byTitle =
+      Comparator.comparing(PasswordEntry::getTitle);
+  private TrigramIndex index;
+  private PasswordEntry amazon;
+  private PasswordEntry azure;
+
+  @BeforeEach
+  public void setUp() {
+    index = new TrigramIndex();
+    amazon = new PasswordEntry("Amazon", "shopper", "p".toCharArray(), "https://amazon.com",
+        null, "Shopping");
+    azure = new PasswordEntry("Azure", "admin", "p".toCharArray(), "https://portal.azure.com",
+        "subscription owner", "Cloud");
+    index.add(amazon);
+    index.add(azure);
+  }
+
+  @Test
+  public void testIntersectsAndVerifies() {
+    // Test 1 candidates must hold every trigram and really contain the query
+    assertEquals(Arrays.asList(amazon, azure), find("https://", 10));
+    assertEquals(Arrays.asList(azure), find("Owner", 10));
+    // Only amazon holds every trigram of "mazo"
+    assertEquals(Arrays.asList(amazon), find("mazo", 10));
+    assertTrue(find("zzz", 10).isEmpty());
+    // All trigrams present but never adjacent in one field
+    assertTrue(find("amazure", 10).isEmpty());
+    // Too many candidates to be worth it
+    assertNull(find("https", 1));
+  }
+
+  @Test
+  public void testUpdateRemoveAndClear() {
+    // Test 2 updates drop the old trigrams, removes and clear drop everything
+    azure.setNotes(null);
+    index.update(azure);
+    assertTrue(find("owner", 10).isEmpty());
+
+    index.remove(amazon);
+    index.remove(amazon);
+    assertEquals(Arrays.asList(azure), find("https", 10));
+
+    index.clear();
+    assertTrue(find("https", 10).isEmpty());
+  }
+
+  private List<PasswordEntry> find(String searchText, int maxCandidates) {
+    return index.search(SearchMatcher.compile(searchText), byTitle, maxCandidates);
+  }
+}
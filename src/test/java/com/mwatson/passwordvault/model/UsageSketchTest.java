@@ -0,0 +1,89 @@
+package com.mwatson.passwordvault.model;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class UsageSketchTest {
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+  private static final long HALF_LIFE = UsageSketch.HALF_LIFE_DAYS * DAY;
+
+  @Test
+  public void testCountsDecayAndRankUses() {
+    // Test 1 counts halve every half life, survive rescaling and keep the most used in order
+    UsageSketch sketch = new UsageSketch(0);
+    EntryId first = EntryId.next();
+    EntryId second = EntryId.next();
+    sketch.record(first, 0);
+    sketch.record(first, 0);
+    assertEquals(2, sketch.count(first, 0), 1e-9);
+    assertEquals(1, sketch.count(first, HALF_LIFE), 1e-9);
+    assertEquals(0, sketch.count(second, 0), 1e-9);
+
+    sketch.record(second, HALF_LIFE / 2);
+    assertEquals(List.of(first, second), sketch.top(5));
+    sketch.record(second, HALF_LIFE / 2);
+    assertEquals(List.of(second, first), sketch.top(5));
+    assertEquals(List.of(second), sketch.top(1));
+
+    // Far enough on that the weights are scaled back down
+    long later = HALF_LIFE * 100;
+    sketch.record(first, later);
+    assertEquals(1, sketch.count(first, later), 1e-9);
+    assertEquals(List.of(first, second), sketch.top(5));
+    sketch.forget(first);
+    assertEquals(List.of(second), sketch.top(5));
+    sketch.forget(first);
+    assertEquals(1, sketch.top(5).size());
+  }
+
+  @Test
+  public void testTopMatchesExactCounts() {
+    // Test 2 with skewed use of many entries the kept list agrees with exact counts
+    Random random = new Random(11);
+    List<EntryId> ids = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      ids.add(EntryId.next());
+    }
+    int[] uses = new int[ids.size()];
+    UsageSketch sketch = new UsageSketch(0);
+    for (int round = 0; round < 20000; round++) {
+      // Zipf like, a few entries take most of the uses
+      int index = (int) Math.min(ids.size() - 1, Math.pow(random.nextDouble(), 4) * ids.size());
+      uses[index]++;
+      sketch.record(ids.get(index), 0);
+    }
+    for (int i = 0; i < ids.size(); i++) {
+      assertTrue(sketch.count(ids.get(i), 0) >= uses[i]);
+    }
+    List<EntryId> top = sketch.top(5);
+    for (int rank = 0; rank < top.size(); rank++) {
+      assertEquals(ids.get(rank), top.get(rank));
+    }
+    assertEquals(uses[0], sketch.count(ids.get(0), 0), uses[0] * 0.01);
+  }
+
+  @Test
+  public void testJsonForm() {
+    // Test 3 counts round trip through JSON, a sketch that doesn't fit is dropped
+    Gson gson = new Gson();
+    UsageSketch sketch = new UsageSketch(1000);
+    EntryId id = EntryId.next();
+    sketch.record(id, 1000);
+    UsageSketch loaded = gson.fromJson(gson.toJson(sketch), UsageSketch.class);
+    assertEquals(List.of(id), loaded.top(5));
+    assertEquals(1, loaded.count(id, 1000), 1e-9);
+
+    UsageSketch wrongShape = gson.fromJson(
+        "{\"origin\":0,\"cells\":[[1]],\"top\":[{\"id\":\"a\",\"score\":1,\"x\":0}],\"y\":1}",
+        UsageSketch.class);
+    assertTrue(wrongShape.top(5).isEmpty());
+    assertNull(gson.fromJson("null", UsageSketch.class));
+    assertEquals("null", gson.toJson(null, UsageSketch.class));
+  }
+}
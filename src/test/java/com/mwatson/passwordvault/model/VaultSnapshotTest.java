@@ -0,0 +1,97 @@
+package com.mwatson.passwordvault.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class VaultSnapshotTest {
+
+  private static PasswordEntry entry(long sequence) {
+    return new PasswordEntry("Site" + sequence, "user", "pw".toCharArray());
+  }
+
+  @Test
+  public void testOrderAndPosition() {
+    // Test 1 entries come back in sequence order whatever order they were stored in
+    PasswordEntry first = entry(1);
+    PasswordEntry second = entry(2);
+    PasswordEntry third = entry(3);
+    VaultSnapshot snapshot = VaultSnapshot.EMPTY.with(3, third).with(1, first).with(2, second);
+    assertEquals(List.of(first, second, third), snapshot);
+    assertSame(second, snapshot.get(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(3));
+    assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(-1));
+  }
+
+  @Test
+  public void testOlderSnapshotsUnchanged() {
+    // Test 2 later changes never show through an earlier snapshot
+    PasswordEntry first = entry(1);
+    PasswordEntry second = entry(2);
+    VaultSnapshot before = VaultSnapshot.EMPTY.with(1, first);
+    VaultSnapshot after = before.with(2, second).without(1);
+    assertEquals(List.of(first), before);
+    assertEquals(List.of(second), after);
+    assertSame(after, after.without(99));
+    assertTrue(VaultSnapshot.EMPTY.isEmpty());
+  }
+
+  @Test
+  public void testRandomEditsMatchSortedMap() {
+    // Test 3 a long run of random inserts, replaces and deletes stays in step with a TreeMap
+    Random random = new Random(34);
+    TreeMap<Long, PasswordEntry> expected = new TreeMap<>();
+    VaultSnapshot snapshot = VaultSnapshot.EMPTY;
+    for (int i = 0; i < 5_000; i++) {
+      long key = random.nextInt(1_000);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        snapshot = snapshot.without(key);
+      } else {
+        PasswordEntry value = entry(key);
+        expected.put(key, value);
+        snapshot = snapshot.with(key, value);
+      }
+    }
+    List<PasswordEntry> values = new ArrayList<>(expected.values());
+    assertEquals(values, snapshot);
+    for (int i = 0; i < values.size(); i += 37) {
+      assertSame(values.get(i), snapshot.get(i));
+    }
+  }
+
+  @Test
+  public void testIteratorEnd() {
+    // Test 4 the iterator throws once it runs out
+    Iterator<PasswordEntry> iterator = VaultSnapshot.EMPTY.with(1, entry(1)).iterator();
+    iterator.next();
+    assertThrows(NoSuchElementException.class, iterator::next);
+  }
+
+  @Test
+  public void testIteratorFromIndex() {
+    // Test 5 iterating from any index gives the rest of the entries in order
+    VaultSnapshot snapshot = VaultSnapshot.EMPTY;
+    List<PasswordEntry> expected = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      PasswordEntry entry = entry(i);
+      expected.add(entry);
+      snapshot = snapshot.with(i, entry);
+    }
+    for (int from = 0; from <= 101; from++) {
+      List<PasswordEntry> rest = new ArrayList<>();
+      snapshot.iterator(from).forEachRemaining(rest::add);
+      assertEquals(expected.subList(Math.min(from, 100), 100), rest);
+    }
+    VaultSnapshot full = snapshot;
+    assertThrows(IndexOutOfBoundsException.class, () -> full.iterator(-1));
+  }
+}
@@ -9,9 +9,19 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class VaultTest {
   private Vault vault;
@@ -210,4 +220,634 @@ public class VaultTest {
     Arrays.fill(password1, '\0');
     Arrays.fill(password2, '\0');
   }
+
+  @Test
+  public void testAddAllAndRemoveAll() {
+    // Test 12 batch add and remove keep the index and insertion order consistent
+    char[] password3 = "pass3".toCharArray();
+    PasswordEntry entry3 = new PasswordEntry("GitLab", "dev@gitlab.com", password3);
+    vault.addAll(Arrays.asList(entry1, entry2, entry3));
+    assertEquals(3, vault.getEntryCount());
+
+    assertEquals(2, vault.removeAll(Arrays.asList(entry1.getId(), "missing", entry3.getId())));
+    assertEquals(1, vault.getEntryCount());
+    assertNull(vault.getEntry(entry1.getId()));
+    assertEquals(entry2, vault.getEntry(entry2.getId()));
+
+    vault.addEntry(entry3);
+    vault.addEntry(entry1);
+    List<PasswordEntry> ordered = vault.getAllEntries();
+    assertEquals(Arrays.asList(entry2, entry3, entry1), ordered);
+    Arrays.fill(password3, '\0');
+  }
+
+  @Test
+  public void testAddEntryWithSameIdReplaces() {
+    // Test 13 adding an entry with an id already in the vault replaces it in place
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    PasswordEntry replacement = new PasswordEntry("GitHub 2", "other", "p".toCharArray());
+    replacement.setId(entry2.getId());
+    vault.addEntry(replacement);
+
+    assertEquals(2, vault.getEntryCount());
+    assertEquals(Arrays.asList(entry1, replacement), vault.getAllEntries());
+    assertEquals(replacement, vault.getEntry(entry2.getId()));
+    assertEquals(entry1, vault.getEntry(entry1.getId()));
+
+    // Adding the same entry again keeps its place too
+    vault.addEntry(replacement);
+    assertEquals(Arrays.asList(entry1, replacement), vault.getAllEntries());
+  }
+
+  @Test
+  public void testSearchIndexFollowsEdits() {
+    // Test 14 the search index is updated when entries are edited, removed or cleared
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+
+    entry2.setTitle("Bitbucket");
+    entry2.setUrl("https://bitbucket.org");
+    entry2.setUsername("dev@bitbucket.org");
+    assertTrue(vault.search("github").isEmpty());
+    assertEquals(Arrays.asList(entry2), vault.search("bitbucket"));
+
+    entry1.setNotes("bitbucket mirror");
+    assertEquals(Arrays.asList(entry1, entry2), vault.search("BITBUCKET"));
+
+    vault.removeEntry(entry1.getId());
+    entry1.setTitle("Bitbucket again");
+    assertEquals(Arrays.asList(entry2), vault.search("bitbucket"));
+
+    vault.clear();
+    entry2.setTitle("Bitbucket");
+    assertTrue(vault.search("bitbucket").isEmpty());
+  }
+
+  @Test
+  public void testSearchShortAndReplacedEntries() {
+    // Test 15 short queries scan, replaced entries keep their position in results
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    assertEquals(2, vault.search("g").size());
+    assertEquals(Arrays.asList(entry2), vault.search("gi"));
+
+    PasswordEntry replacement = new PasswordEntry("GitHub work", "a@b.com", "p".toCharArray());
+    replacement.setId(entry2.getId());
+    vault.addEntry(replacement);
+    entry2.setTitle("GitHub personal");
+    assertEquals(Arrays.asList(replacement), vault.search("github"));
+    assertEquals(Arrays.asList(entry1), vault.search("gmail"));
+    assertEquals(Arrays.asList(entry1, replacement), vault.search("com"));
+  }
+
+  @Test
+  public void testParallelScanKeepsOrder() {
+    // Test 16 large vaults scan in parallel and still return results in vault order
+    List<PasswordEntry> expectedWork = new ArrayList<>();
+    for (int i = 0; i < Vault.PARALLEL_SCAN_THRESHOLD + 100; i++) {
+      String category = i % 3 == 0 ? "Work" : "Home";
+      PasswordEntry entry = new PasswordEntry("Site " + i, "user" + i, "p".toCharArray(),
+          "https://site" + i + ".com", null, category);
+      vault.addEntry(entry);
+      if (i % 3 == 0) {
+        expectedWork.add(entry);
+      }
+    }
+
+    assertEquals(expectedWork, vault.getEntriesByCategory("Work"));
+    // Matches every entry, so the index falls back to the parallel scan
+    assertEquals(vault.getAllEntries(), vault.search(".com"));
+    assertEquals(1, vault.search("user8190").size());
+  }
+
+  @Test
+  public void testSearchSessionRefines() {
+    // Test 17 a session refines its last hits while typing and starts over when needed
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    Vault.SearchSession session = vault.newSearchSession();
+
+    assertEquals(2, session.search("").size());
+    assertEquals(Arrays.asList(entry1, entry2), session.search("g"));
+    assertEquals(Arrays.asList(entry2), session.search("gi"));
+    assertEquals(Arrays.asList(entry2), session.search("git"));
+    // Deleting characters widens the query, so it runs in full again
+    assertEquals(Arrays.asList(entry1, entry2), session.search("g"));
+
+    // Edits to the vault invalidate the cached hits
+    assertEquals(Arrays.asList(entry2), session.search("gith"));
+    entry1.setTitle("Github mirror");
+    assertEquals(Arrays.asList(entry1, entry2), session.search("githu"));
+    vault.removeEntry(entry2.getId());
+    assertEquals(Arrays.asList(entry1), session.search("github"));
+
+    // Returned lists are copies, changing them doesn't affect the next refinement
+    List<PasswordEntry> results = session.search("github x");
+    assertTrue(results.isEmpty());
+    results.add(entry2);
+    assertTrue(session.search("github xy").isEmpty());
+  }
+
+  @Test
+  public void testFuzzySearchRanksClosestFirst() {
+    // Test 18 fuzzy search tolerates typos and ranks by edit distance
+    char[] password3 = "pass3".toCharArray();
+    PasswordEntry entry3 = new PasswordEntry("Gthub", "dev", password3);
+    vault.addEntry(entry3);
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+
+    assertEquals(Arrays.asList(entry2, entry3), vault.fuzzySearch("github", 10));
+    // Equal distances keep vault order
+    assertEquals(Arrays.asList(entry3, entry2), vault.fuzzySearch("gihtub", 10));
+    assertEquals(Arrays.asList(entry2), vault.fuzzySearch("github", 1));
+    assertEquals(Arrays.asList(entry3, entry2), vault.fuzzySearch("gthub", 5));
+    assertTrue(vault.fuzzySearch("amazon", 5).isEmpty());
+    assertEquals(Arrays.asList(entry3, entry1), vault.fuzzySearch("", 2));
+    assertThrows(IllegalArgumentException.class, () -> vault.fuzzySearch("git", 0));
+    Arrays.fill(password3, '\0');
+  }
+
+  @Test
+  public void testFuzzySearchLargeVault() {
+    // Test 19 large vaults are scored in parallel chunks and merged
+    for (int i = 0; i < Vault.PARALLEL_SCAN_THRESHOLD; i++) {
+      vault.addEntry(new PasswordEntry("Service " + i, "svc" + i, "p".toCharArray()));
+    }
+    vault.addEntry(entry2);
+    assertEquals(entry2, vault.fuzzySearch("gihtub", 3).get(0));
+    assertEquals(3, vault.fuzzySearch("service 12", 3).size());
+  }
+
+  @Test
+  public void testConcurrentReadsAndWrites() throws Exception {
+    // Test 20 writers and readers on different threads leave the vault consistent
+    int writers = 4;
+    int perWriter = 500;
+    ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+    List<Future<?>> tasks = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      tasks.add(pool.submit(() -> {
+        for (int i = 0; i < perWriter; i++) {
+          PasswordEntry entry = new PasswordEntry("Site " + writer + "-" + i, "user",
+              "p".toCharArray(), null, null, "Cat" + writer);
+          vault.addEntry(entry);
+          entry.setUrl("https://site" + writer + "-" + i + ".com");
+          if (i % 5 == 0) {
+            vault.removeEntry(entry.getId());
+          }
+        }
+      }));
+    }
+    for (int r = 0; r < 2; r++) {
+      tasks.add(pool.submit(() -> {
+        for (int i = 0; i < 200; i++) {
+          for (PasswordEntry found : vault.search("site")) {
+            assertNotNull(found.getId());
+          }
+          vault.getCategories();
+          vault.getEntriesByCategory("Cat1");
+        }
+      }));
+    }
+    for (Future<?> task : tasks) {
+      task.get(30, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+
+    int expected = writers * (perWriter - perWriter / 5);
+    assertEquals(expected, vault.getEntryCount());
+    assertEquals(expected, vault.search("site").size());
+    assertEquals(expected / writers, vault.search("https://site2-").size());
+  }
+
+  @Test
+  public void testSnapshotIsStable() {
+    // Test 21 a snapshot keeps the entries it was taken with while the vault changes
+    vault.addEntry(entry1);
+    VaultSnapshot snapshot = vault.snapshot();
+    vault.addEntry(entry2);
+    vault.removeEntry(entry1.getId());
+    assertEquals(List.of(entry1), snapshot);
+    assertEquals(List.of(entry2), vault.snapshot());
+    assertEquals(List.of(entry2), vault.getAllEntries());
+
+    vault.clear();
+    assertTrue(vault.snapshot().isEmpty());
+    assertEquals(1, snapshot.size());
+  }
+
+  @Test
+  public void testListenerRowEvents() {
+    // Test 22 adds, edits and removals each arrive as one event with the entry's row
+    List<List<VaultEvent>> received = new ArrayList<>();
+    vault.addListener(received::add);
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    entry2.setTitle("GitHub work");
+    vault.removeEntry(entry1.getId());
+
+    assertEquals(4, received.size());
+    assertEquals("[ADDED@0]", received.get(0).toString());
+    assertEquals("[ADDED@1]", received.get(1).toString());
+    assertEquals("[UPDATED@1]", received.get(2).toString());
+    VaultEvent removed = received.get(3).get(0);
+    assertEquals(VaultEvent.Type.REMOVED, removed.getType());
+    assertEquals(0, removed.getIndex());
+    assertEquals(entry1, removed.getEntry());
+    assertEquals(List.of(entry2), removed.getSnapshot());
+  }
+
+  @Test
+  public void testListenerBatches() {
+    // Test 23 a batch delivers its events together, repeated edits of one entry fold into one
+    vault.addEntry(entry1);
+    List<List<VaultEvent>> received = new ArrayList<>();
+    VaultListener listener = received::add;
+    vault.addListener(listener);
+    vault.batch(() -> {
+      entry1.setTitle("Mail");
+      entry1.setUsername("me@gmail.com");
+      vault.batch(() -> vault.addEntry(entry2));
+    });
+    assertEquals(1, received.size());
+    assertEquals("[UPDATED@0, ADDED@1]", received.get(0).toString());
+
+    List<PasswordEntry> many = new ArrayList<>();
+    for (int i = 0; i <= Vault.MAX_ROW_EVENTS; i++) {
+      many.add(new PasswordEntry("Site" + i, "user", "pw".toCharArray()));
+    }
+    vault.addAll(many);
+    vault.clear();
+    assertEquals(3, received.size());
+    assertEquals(VaultEvent.Type.BULK_CHANGED, received.get(1).get(0).getType());
+    assertEquals(Vault.MAX_ROW_EVENTS + 3, received.get(1).get(0).getSnapshot().size());
+    assertTrue(received.get(2).get(0).getSnapshot().isEmpty());
+
+    vault.removeListener(listener);
+    vault.addEntry(entry1);
+    assertEquals(3, received.size());
+    assertThrows(IllegalArgumentException.class, () -> vault.addListener(null));
+  }
+
+  @Test
+  public void testModifiedQueries() {
+    // Test 24 changed since, stale and most recent come from the update time index
+    LocalDateTime now = LocalDateTime.now();
+    entry1.setUpdatedAt(now.minusDays(120));
+    entry2.setUpdatedAt(now.minusDays(10));
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+
+    assertEquals(List.of(entry2), vault.getModifiedSince(now.minusDays(30)));
+    assertEquals(List.of(entry1), vault.getNotModifiedSince(now.minusDays(90)));
+    assertEquals(List.of(entry2, entry1), vault.getRecentlyModified(5));
+
+    // Editing refreshes the timestamp and re-orders the index
+    entry1.setTitle("Mail");
+    assertEquals(List.of(entry2, entry1), vault.getModifiedSince(now.minusDays(30)));
+    assertEquals(List.of(entry1), vault.getRecentlyModified(1));
+    assertTrue(vault.getNotModifiedSince(now.minusDays(90)).isEmpty());
+    vault.removeEntry(entry1.getId());
+    assertEquals(List.of(entry2), vault.getRecentlyModified(5));
+    assertThrows(IllegalArgumentException.class, () -> vault.getRecentlyModified(0));
+  }
+
+  @Test
+  public void testSharedValuesArePooled() {
+    // Test 25 equal categories, usernames and urls end up as one string across entries
+    entry1.setCategory(new String("Work"));
+    entry1.setUsername(new String("me@example.com"));
+    entry2.setUrl(new String("https://example.com"));
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    entry2.setCategory(new String("Work"));
+    entry2.setUsername(new String("me@example.com"));
+    PasswordEntry entry3 = new PasswordEntry("Three", "x", "p".toCharArray(),
+        new String("https://example.com"), null, null);
+    vault.addEntry(entry3);
+
+    assertSame(entry1.getCategory(), entry2.getCategory());
+    assertSame(entry1.getUsername(), entry2.getUsername());
+    assertSame(entry2.getUrl(), entry3.getUrl());
+    assertNull(entry3.getCategory());
+    assertEquals(List.of(entry1, entry2), vault.getEntriesByCategory("Work"));
+  }
+
+  @Test
+  public void testCategoryIndex() {
+    // Test 26 category lists, counts and filters follow adds, edits and removals
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    assertEquals(List.of("Development", "Email"), vault.getCategories());
+    assertEquals(Map.of("Development", 1, "Email", 1), vault.getCategoryCounts());
+
+    entry2.setCategory("Social");
+    assertEquals(List.of("Email", "Social"), vault.getCategories());
+    assertEquals(List.of(entry2), vault.getEntriesByCategory("Social"));
+    assertEquals(Map.of("Email", 1, "Social", 1), vault.getCategoryCounts());
+
+    vault.removeEntry(entry1.getId());
+    assertEquals(List.of("Social"), vault.getCategories());
+    assertTrue(vault.getEntriesByCategory("Email").isEmpty());
+    vault.clear();
+    assertTrue(vault.getCategoryCounts().isEmpty());
+  }
+
+  @Test
+  public void testLazyQueries() {
+    // Test 27 queries page through matches and count them without listing them
+    List<PasswordEntry> work = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      PasswordEntry entry = new PasswordEntry("Site" + i, "user" + i, "pw".toCharArray(),
+          "https://site" + i + ".com", null, i % 3 == 0 ? "Work" : "Home");
+      vault.addEntry(entry);
+      if (i % 3 == 0) {
+        work.add(entry);
+      }
+    }
+    List<PasswordEntry> all = vault.getAllEntries();
+    assertEquals(all.subList(10, 15), vault.query().offset(10).limit(5).list());
+    assertEquals(30, vault.query().count());
+    assertEquals(5, vault.query().offset(25).limit(10).count());
+    assertEquals(0, vault.query().offset(40).count());
+    assertTrue(vault.query().offset(40).list().isEmpty());
+
+    assertEquals(work.subList(2, 4), vault.query().inCategory("Work").offset(2).limit(2).list());
+    assertEquals(10, vault.query().inCategory("Work").count());
+    assertEquals(0, vault.query().inCategory(null).count());
+    assertEquals(List.of(work.get(4)), vault.query().inCategory("Work").matching("site12").list());
+
+    assertEquals(vault.search("site1"), vault.query().matching("site1").list());
+    assertEquals(11, vault.query().matching("site1").count());
+    assertEquals(3, vault.query().matching("site1").offset(8).count());
+    assertEquals(vault.search("e2"), vault.query().matching("e2").list());
+    assertEquals(1, vault.query().matching("site25").count());
+    assertEquals(List.of("Site0", "Site1"), vault.query().limit(2).stream()
+        .map(PasswordEntry::getTitle).collect(Collectors.toList()));
+    assertThrows(IllegalArgumentException.class, () -> vault.query().offset(-1));
+    assertThrows(IllegalArgumentException.class, () -> vault.query().limit(-1));
+  }
+
+  @Test
+  public void testTagFilters() {
+    // Test 28 AND, OR and NOT tag filters come from the tag bitmaps and follow edits
+    entry1.setTags(List.of("env:prod", "team:payments"));
+    entry2.setTags(List.of("env:dev", "team:payments", "legacy"));
+    PasswordEntry entry3 = new PasswordEntry("Three", "x", "p".toCharArray());
+    entry3.setTags(List.of("env:prod", "team:billing"));
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    vault.addEntry(entry3);
+
+    assertEquals(List.of(entry1, entry3),
+        vault.findByTags(TagFilter.create().allOf("env:prod")));
+    assertEquals(List.of(entry1),
+        vault.findByTags(TagFilter.create().allOf("env:prod", "team:payments")));
+    assertEquals(List.of(entry1, entry3), vault.findByTags(TagFilter.create()
+        .anyOf("team:billing", "team:payments").noneOf("legacy")));
+    assertEquals(List.of(entry3), vault.findByTags(TagFilter.create().noneOf("team:payments")));
+    assertEquals(3, vault.countByTags(TagFilter.create()));
+    assertEquals(0, vault.countByTags(TagFilter.create().allOf("missing")));
+    assertEquals(Map.of("env:dev", 1, "env:prod", 2, "legacy", 1, "team:billing", 1,
+        "team:payments", 2), vault.getTagCounts());
+
+    entry2.removeTag("legacy");
+    entry3.addTag("team:payments");
+    assertEquals(List.of(entry1, entry2, entry3),
+        vault.findByTags(TagFilter.create().allOf("Team:Payments")));
+    vault.removeEntry(entry1.getId());
+    assertEquals(List.of(entry3), vault.findByTags(TagFilter.create().allOf("env:prod")));
+    assertTrue(TagFilter.create().allOf("env:prod").matches(entry3));
+    assertFalse(TagFilter.create().anyOf("env:dev").matches(entry3));
+    assertThrows(IllegalArgumentException.class, () -> TagFilter.create().allOf(" "));
+    vault.clear();
+    assertTrue(vault.getTagCounts().isEmpty());
+  }
+
+  @Test
+  public void testQueryPlanner() {
+    // Test 29 queries use the narrowest index, check the rest on its candidates alone and
+    // find what a full scan would
+    LocalDateTime now = LocalDateTime.now();
+    List<PasswordEntry> added = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      PasswordEntry entry = new PasswordEntry("Site" + i, (i % 3 == 0 ? "svc-" : "user") + i,
+          "p".toCharArray(), "https://host" + (i % 7) + ".example.com/login", null,
+          i % 10 == 0 ? "Prod" : "Other");
+      entry.setTags(i % 4 == 0 ? List.of("legacy") : List.of("team:" + (i % 5)));
+      entry.setUpdatedAt(now.minusDays(i));
+      added.add(entry);
+    }
+    vault.addAll(added);
+
+    String plan = vault.explain(SearchQuery.parse(
+        "category:prod url:*.example.com user:svc- -tag:legacy updated<90d"));
+    assertTrue(plan.startsWith("Query: category:prod url:*.example.com user:svc- -tag:legacy"));
+    assertTrue(plan.contains("Plan: category index (category:prod), 20 entries of 200"), plan);
+    assertTrue(plan.contains("Filter: url:*.example.com user:svc- -tag:legacy updated<90d"));
+    assertTrue(plan.contains("Skipped: tag index (-tag:legacy), 150 entries"), plan);
+    assertTrue(plan.contains("Skipped: modified index (updated<90d), at least 20 entries"));
+
+    assertTrue(vault.explain(SearchQuery.parse("updated<5d site")).contains(
+        "Plan: modified index (updated<5d), 5 entries of 200"));
+    assertTrue(vault.explain(SearchQuery.parse("id:" + added.get(3).getId() + " tag:team:3"))
+        .contains("Plan: id index"));
+    assertEquals(List.of(added.get(4)), vault.find(
+        SearchQuery.parse("id:" + added.get(4).getId().toUpperCase(Locale.ROOT))));
+    assertTrue(vault.explain(SearchQuery.parse("tag:team:1 OR site19"))
+        .contains("Plan: union of tag index (tag:team:1), trigram index (site19), 41 entries"));
+    assertTrue(vault.explain(SearchQuery.parse("user:svc")).contains("Plan: full scan"));
+    assertTrue(vault.explain(SearchQuery.parse("")).contains("Filter: none"));
+
+    for (String text : List.of("category:prod url:*.example.com user:svc- -tag:legacy "
+        + "updated<90d", "updated>150d tag:team:1", "site19", "tag:team:1 OR site19",
+        "(category:prod OR tag:team:2) -updated>20d", "id:" + added.get(3).getId(),
+        "id:" + added.get(4).getId().toUpperCase(Locale.ROOT),
+        "-tag:legacy -tag:team:1", "category:o* updated<10d", "user:svc", "",
+        "tag:team:1 OR user:svc-3")) {
+      SearchQuery query = SearchQuery.parse(text);
+      List<PasswordEntry> expected = vault.getAllEntries().stream().filter(query::matches)
+          .collect(Collectors.toList());
+      assertEquals(expected, vault.find(query), text);
+    }
+  }
+
+  @Test
+  public void testFindBySite() {
+    // Test 30 site lookups and host queries come from the host trie and follow url edits
+    PasswordEntry login = new PasswordEntry("Login", "u", "p".toCharArray(),
+        "https://login.example.com/x", null, null);
+    vault.addEntry(entry1);
+    vault.addEntry(login);
+    vault.addEntry(entry2);
+
+    assertEquals(List.of(login), vault.findBySite("https://LOGIN.example.com:443/"));
+    assertEquals(List.of(login), vault.findBySite("www.example.com"));
+    assertEquals(List.of(entry2), vault.findBySite("https://github.com/settings"));
+    assertTrue(vault.findBySite("https://").isEmpty());
+
+    entry1.setUrl("https://mail.example.com");
+    assertEquals(List.of(login, entry1), vault.findBySite("login.example.com"));
+    assertEquals(List.of(entry1, login), vault.find(SearchQuery.parse("site:example.com")));
+    assertTrue(vault.explain(SearchQuery.parse("url:*.example.com title:log"))
+        .contains("Plan: host index (url:*.example.com), 2 entries of 3"));
+    assertEquals(List.of(login), vault.find(SearchQuery.parse("url:*.example.com title:log")));
+    vault.removeEntry(login.getId());
+    assertEquals(List.of(entry1), vault.findBySite("login.example.com"));
+  }
+
+  @Test
+  public void testComplete() {
+    // Test 31 completions follow adds, edits and removals made through the vault
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+
+    assertEquals(List.of("GitHub", "github.com"), vault.complete("git", 5));
+    assertEquals(List.of("gmail.com"), vault.complete("gmail.", 5));
+    entry2.setTitle("Gitea");
+    assertEquals(List.of("Gitea", "github.com"), vault.complete("GIT", 5));
+    vault.removeEntry(entry2.getId());
+    assertTrue(vault.complete("git", 5).isEmpty());
+    assertTrue(vault.complete(null, 5).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> vault.complete("g", 0));
+  }
+
+  @Test
+  public void testFrequentEntries() {
+    // Test 32 most used entries come first, fade with time and leave with their entry
+    vault.addEntry(entry1);
+    vault.addEntry(entry2);
+    long day = 24 * 60 * 60 * 1000L;
+    long now = System.currentTimeMillis();
+
+    assertTrue(vault.getFrequentEntries(5).isEmpty());
+    vault.recordUse(entry1, now);
+    vault.recordUse(entry2, now);
+    vault.recordUse(entry2, now);
+    assertEquals(List.of(entry2, entry1), vault.getFrequentEntries(5));
+    assertEquals(List.of(entry2), vault.getFrequentEntries(1));
+
+    // Uses two months on outweigh the older ones
+    for (int i = 0; i < 3; i++) {
+      vault.recordUse(entry1, now + 60 * day);
+    }
+    assertEquals(List.of(entry1, entry2), vault.getFrequentEntries(5));
+
+    vault.recordUse(new PasswordEntry("Other", "o", "p".toCharArray()));
+    UsageSketch saved = vault.getUsage();
+    vault.removeEntry(entry1.getId());
+    assertEquals(List.of(entry2), vault.getFrequentEntries(5));
+    vault.clear();
+    assertTrue(vault.getFrequentEntries(5).isEmpty());
+
+    vault.addEntry(entry1);
+    vault.setUsage(saved);
+    assertEquals(List.of(entry1), vault.getFrequentEntries(5));
+    vault.setUsage(null);
+    assertTrue(vault.getFrequentEntries(5).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> vault.getFrequentEntries(0));
+  }
+
+  @Test
+  public void testEventSequences() throws Exception {
+    // Test 33 changes are numbered as made, so out of order deliveries can be told apart
+    vault.addEntry(entry1);
+    List<List<VaultEvent>> received = new ArrayList<>();
+    vault.addListener(received::add);
+    vault.batch(() -> {
+      entry1.setTitle("Mail");
+      Thread other = new Thread(() -> vault.addEntry(entry2));
+      other.start();
+      try {
+        other.join();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      entry1.setTitle("Webmail");
+    });
+    vault.removeEntry(entry2.getId());
+
+    // The other thread's add was made second but delivered first
+    assertEquals("[ADDED@1]", received.get(0).toString());
+    assertEquals(2, received.get(0).get(0).getSequence());
+    assertEquals("[UPDATED@0, UPDATED@0]", received.get(1).toString());
+    assertEquals(3, received.get(1).get(1).getSequence());
+    assertFalse(VaultEvent.follows(received.get(0), 0));
+    assertFalse(VaultEvent.follows(received.get(1), 2));
+    assertTrue(VaultEvent.follows(received.get(2), 3));
+    assertFalse(VaultEvent.follows(received.get(2), -1));
+
+    // A view loaded from the latest change takes the next delivery row by row
+    VaultEvent current = vault.latestChange();
+    assertEquals(4, current.getSequence());
+    assertSame(vault.snapshot(), current.getSnapshot());
+    vault.addEntry(entry2);
+    assertTrue(VaultEvent.follows(received.get(3), current.getSequence()));
+    assertEquals(0, new Vault().latestChange().getSequence());
+  }
+
+  @Test
+  public void testCompleteByUse() {
+    // Test 34 terms of lately used entries complete ahead of the index's ranking
+    PasswordEntry gitea = new PasswordEntry("Gitea", "me", "p".toCharArray());
+    gitea.setUrl("https://gitea.io");
+    vault.addEntry(entry2);
+    vault.addEntry(gitea);
+    long day = 24 * 60 * 60 * 1000L;
+    long now = System.currentTimeMillis();
+
+    assertEquals(List.of("Gitea", "GitHub", "gitea.io", "github.com"),
+        vault.complete("git", 5, now));
+    vault.recordUse(entry2, now);
+    vault.recordUse(entry2, now);
+    assertEquals(List.of("GitHub", "github.com", "Gitea", "gitea.io"),
+        vault.complete("git", 5, now));
+    assertEquals(List.of("GitHub"), vault.complete("GIT", 1, now));
+    assertEquals(List.of("github.com"), vault.complete("github.", 5, now));
+
+    // Uses two months on outweigh the older ones
+    vault.recordUse(gitea, now + 60 * day);
+    assertEquals(List.of("Gitea", "gitea.io", "GitHub", "github.com"),
+        vault.complete("git", 5, now + 60 * day));
+    assertTrue(vault.complete(" ", 5, now).isEmpty());
+  }
+
+  @Test
+  public void testReplaceMiddleEntry() {
+    // Test 35 replacing a middle entry keeps its slot in the list and every index
+    PasswordEntry one = new PasswordEntry("One", "a", "p".toCharArray(), "https://one.com",
+        null, "Home");
+    PasswordEntry two = new PasswordEntry("Two", "b", "p".toCharArray(), "https://two.com",
+        null, "Home");
+    PasswordEntry three = new PasswordEntry("Three", "c", "p".toCharArray(),
+        "https://three.com", null, "Work");
+    one.addTag("env:prod");
+    two.addTag("env:prod");
+    vault.addAll(List.of(one, two, three));
+    List<List<VaultEvent>> received = new ArrayList<>();
+    vault.addListener(received::add);
+
+    PasswordEntry replacement = new PasswordEntry("Two-b", "b", "p".toCharArray(),
+        "https://two.org", null, "Work");
+    replacement.addTag("env:dev");
+    replacement.setId(two.getId());
+    vault.addEntry(replacement);
+    vault.addEntry(three);
+
+    assertEquals(List.of(one, replacement, three), vault.getAllEntries());
+    assertEquals(one, vault.getEntry(one.getId()));
+    assertEquals(replacement, vault.getEntry(two.getId()));
+    assertEquals(List.of(one), vault.search("one"));
+    assertEquals(List.of(replacement), vault.search("two"));
+    assertEquals(List.of(one), vault.findByTags(TagFilter.create().allOf("env:prod")));
+    assertEquals(List.of(replacement), vault.findByTags(TagFilter.create().allOf("env:dev")));
+    assertEquals(Map.of("Home", 1, "Work", 2), vault.getCategoryCounts());
+    assertEquals(List.of(replacement), vault.findBySite("https://two.org"));
+    assertTrue(vault.findBySite("https://two.com").isEmpty());
+    assertEquals("[UPDATED@1]", received.get(0).toString());
+    assertEquals("[UPDATED@2]", received.get(1).toString());
+  }
 }
@@ -0,0 +1,61 @@
+package com.mwatson.passwordvault.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.mwatson.passwordvault.model.PasswordEntry;
+import com.mwatson.passwordvault.model.Vault;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VaultJsonAdapterTest {
+  private final Gson gson =
+      new GsonBuilder().registerTypeAdapter(Vault.class, new VaultJsonAdapter()).create();
+
+  @Test
+  public void testRoundTripKeepsOrder() {
+    // Test 1 entries are written as an ordered list and read back in the same order
+    Vault vault = new Vault();
+    vault.addEntry(new PasswordEntry("b", "user-b", "pb".toCharArray()));
+    vault.addEntry(new PasswordEntry("a", "user-a", "pa".toCharArray()));
+
+    JsonObject json = gson.toJsonTree(vault).getAsJsonObject();
+    assertTrue(json.get("entries").isJsonArray());
+
+    Vault loaded = gson.fromJson(json, Vault.class);
+    assertEquals(vault.getId(), loaded.getId());
+    assertEquals(vault.getName(), loaded.getName());
+    assertEquals("b", loaded.getAllEntries().get(0).getTitle());
+    assertEquals("a", loaded.getAllEntries().get(1).getTitle());
+  }
+
+  @Test
+  public void testMissingMembers() {
+    // Test 2 missing entries and id give an empty vault, non objects are rejected
+    Vault loaded = gson.fromJson("{\"name\":\"Empty\"}", Vault.class);
+    assertNull(loaded.getId());
+    assertEquals("Empty", loaded.getName());
+    assertEquals(0, loaded.getEntryCount());
+
+    assertThrows(JsonParseException.class, () -> gson.fromJson("[]", Vault.class));
+  }
+
+  @Test
+  public void testUsageRoundTrip() {
+    // Test 3 usage counts are saved with the vault, older files without them still load
+    Vault vault = new Vault();
+    PasswordEntry entry = new PasswordEntry("a", "user-a", "pa".toCharArray());
+    vault.addEntry(entry);
+    vault.recordUse(entry);
+
+    Vault loaded = gson.fromJson(gson.toJson(vault), Vault.class);
+    assertEquals(entry.getId(), loaded.getFrequentEntries(5).get(0).getId());
+
+    Vault old = gson.fromJson("{\"name\":\"Old\",\"entries\":[]}", Vault.class);
+    assertTrue(old.getFrequentEntries(5).isEmpty());
+  }
+}
@@ -3,6 +3,7 @@ package com.mwatson.passwordvault.storage;
 import com.mwatson.passwordvault.model.PasswordEntry;
 import com.mwatson.passwordvault.model.Vault;
 import com.google.gson.Gson;
+import com.mwatson.passwordvault.crypto.EncryptionService;
 import com.google.gson.JsonObject;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -157,4 +158,72 @@ public class VaultStorageTest {
     // Returned vault is null when file doesn't exist
     assertNull(result);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSecretsSealedSeparately() throws Exception {
+    // Test 7
+    // Passwords and notes are not in the metadata tier and are only opened when asked for
+    String testFileName = "test_vaultstorage_tiers.dat";
+    VaultStorage storage = new VaultStorage(testFileName);
+    try {
+      Vault vault = new Vault();
+      vault.addEntry(new PasswordEntry("example.com", "user1", "pass123".toCharArray(),
+          "https://example.com", "secret note", "Web"));
+      storage.saveVault(vault, "password123".toCharArray());
+
+      String fileContent =
+          new String(Files.readAllBytes(Paths.get(testFileName)), StandardCharsets.UTF_8);
+      JsonObject json = new Gson().fromJson(fileContent, JsonObject.class);
+      byte[] salt = Base64.getDecoder().decode(json.get("saltBase64").getAsString());
+      String metadata = new EncryptionService().decryptFromBase64(
+          json.get("encryptedDataBase64").getAsString(), "password123".toCharArray(), salt);
+      assertFalse(metadata.contains("secret note"));
+      assertFalse(metadata.contains("\"password\""));
+      assertTrue(metadata.contains("sealedSecrets"));
+
+      Vault loadedVault = storage.loadVault("password123".toCharArray());
+      PasswordEntry loadedEntry = loadedVault.getAllEntries().get(0);
+      assertEquals("user1", loadedEntry.getUsername());
+      assertFalse(loadedEntry.isSecretsOpen());
+      assertEquals(List.of(loadedEntry), loadedVault.search("secret note"));
+      assertFalse(loadedEntry.isSecretsOpen());
+      assertArrayEquals("pass123".toCharArray(), loadedEntry.getPassword());
+      assertEquals("secret note", loadedEntry.getNotes());
+
+      // Saving again keeps unopened entries sealed and reseals edited ones
+      loadedVault.addEntry(new PasswordEntry("b.com", "user2", "pass456".toCharArray()));
+      storage.saveVault(loadedVault, "password123".toCharArray());
+      Vault reloaded = storage.loadVault("password123".toCharArray());
+      assertArrayEquals("pass456".toCharArray(), reloaded.getAllEntries().get(1).getPassword());
+    } finally {
+      storage.deleteVaultFile();
+    }
+  }
+
+  @Test
+  public void testLoadLegacyPlaintextSecrets() throws Exception {
+    // Test 8
+    // Vault files written before secrets were sealed still load
+    String testFileName = "test_vaultstorage_legacy.dat";
+    VaultStorage storage = new VaultStorage(testFileName);
+    try {
+      EncryptionService encryptionService = new EncryptionService();
+      byte[] salt = encryptionService.generateSalt();
+      String legacyJson = "{\"id\":\"v1\",\"name\":\"Old\",\"entries\":[{\"id\":\"e1\","
+          + "\"username\":\"old\",\"password\":[\"p\",\"w\"],\"notes\":\"n\"}]}";
+      String encrypted =
+          encryptionService.encryptToBase64(legacyJson, "password123".toCharArray(), salt);
+      String content = String.format("{\"saltBase64\":\"%s\",\"encryptedDataBase64\":\"%s\"}",
+          Base64.getEncoder().encodeToString(salt), encrypted);
+      Files.write(Paths.get(testFileName), content.getBytes(StandardCharsets.UTF_8));
+
+      Vault loaded = storage.loadVault("password123".toCharArray());
+      PasswordEntry entry = loaded.getEntry("e1");
+      assertArrayEquals("pw".toCharArray(), entry.getPassword());
+      assertEquals("n", entry.getNotes());
+    } finally {
+      storage.deleteVaultFile();
+    }
+  }
+}
+